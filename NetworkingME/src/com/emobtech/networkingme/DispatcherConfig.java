@@ -0,0 +1,511 @@
+/* DispatcherConfig.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ * <p>
+ * This class represents the configuration of the thread pool used to run
+ * request operations asynchronously.
+ * </p>
+ * <p>
+ * The queue of pending operations has a fixed capacity. When it is full, the
+ * rejection policy decides what happens to a new operation.
+ * </p>
+ * <p>
+ * The number of operations running at the same time against a single host
+ * can be limited, so a slow host does not hold every thread. Hosts with
+ * queued operations are served in turns.
+ * </p>
+ * <p>
+ * The pool is elastic when its maximum size is greater than its size. Extra
+ * threads are started while operations pile up or wait too long in the
+ * queue, and they are retired after staying idle for the keep-alive time.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see RequestOperation#setDispatcherConfig(DispatcherConfig)
+ */
+public final class DispatcherConfig {
+	/**
+	 * <p>
+	 * This class defines a list of policies applied when an operation is
+	 * dispatched and the queue is full.
+	 * </p>
+	 */
+	public static final class RejectionPolicy {
+		/**
+		 * <p>
+		 * The new operation is rejected and its listener's
+		 * {@link RequestOperation.Listener#onFailure(Request, RequestException)}
+		 * is called.
+		 * </p>
+		 */
+		public static final int ABORT = 0;
+
+		/**
+		 * <p>
+		 * The new operation is run right away by the thread that started it.
+		 * </p>
+		 */
+		public static final int CALLER_RUNS = 1;
+
+		/**
+		 * <p>
+		 * The new operation is silently discarded.
+		 * </p>
+		 */
+		public static final int DISCARD = 2;
+
+		/**
+		 * <p>
+		 * The oldest queued operation of the busiest host in the lowest
+		 * priority lane is discarded, failing it, and the new one is queued.
+		 * Operations of a higher priority than the new one are never
+		 * discarded, so in case only those are queued, the new one is
+		 * rejected as with {@link #ABORT}.
+		 * </p>
+		 */
+		public static final int DISCARD_OLDEST = 3;
+
+		/**
+		 * <p>
+		 * Private constructor to avoid object instantiation.
+		 * </p>
+		 */
+		private RejectionPolicy() {}
+	}
+
+	/**
+	 * <p>
+	 * Default pool size.
+	 * </p>
+	 */
+	public static final int DEFAULT_POOL_SIZE = 2;
+
+	/**
+	 * <p>
+	 * Default queue capacity.
+	 * </p>
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	/**
+	 * <p>
+	 * Default keep-alive time of extra threads, in milliseconds.
+	 * </p>
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_TIME = 30000;
+
+	/**
+	 * <p>
+	 * Default queue depth above which an extra thread is started.
+	 * </p>
+	 */
+	public static final int DEFAULT_GROW_QUEUE_DEPTH = 4;
+
+	/**
+	 * <p>
+	 * Default queue wait time, in milliseconds, above which an extra thread
+	 * is started.
+	 * </p>
+	 */
+	public static final long DEFAULT_GROW_QUEUE_WAIT = 1000;
+
+	/**
+	 * <p>
+	 * Pool size.
+	 * </p>
+	 */
+	private int poolSize = DEFAULT_POOL_SIZE;
+
+	/**
+	 * <p>
+	 * Maximum pool size.
+	 * </p>
+	 */
+	private int maxPoolSize;
+
+	/**
+	 * <p>
+	 * Keep-alive time.
+	 * </p>
+	 */
+	private long keepAliveTime = DEFAULT_KEEP_ALIVE_TIME;
+
+	/**
+	 * <p>
+	 * Queue depth above which the pool grows.
+	 * </p>
+	 */
+	private int growQueueDepth = DEFAULT_GROW_QUEUE_DEPTH;
+
+	/**
+	 * <p>
+	 * Queue wait time above which the pool grows.
+	 * </p>
+	 */
+	private long growQueueWait = DEFAULT_GROW_QUEUE_WAIT;
+
+	/**
+	 * <p>
+	 * Queue capacity.
+	 * </p>
+	 */
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	/**
+	 * <p>
+	 * Rejection policy.
+	 * </p>
+	 */
+	private int rejectionPolicy = RejectionPolicy.ABORT;
+
+	/**
+	 * <p>
+	 * Maximum number of running operations per host.
+	 * </p>
+	 */
+	private int maxRequestsPerHost;
+
+	/**
+	 * <p>
+	 * Maximum number of running operations of specific hosts.
+	 * </p>
+	 */
+	private Hashtable hostLimits = new Hashtable();
+
+	/**
+	 * <p>
+	 * Creates a DispatcherConfig with the default values.
+	 * </p>
+	 */
+	public DispatcherConfig() {
+	}
+
+	/**
+	 * <p>
+	 * Creates a copy of a given DispatcherConfig.
+	 * </p>
+	 * @param config Configuration.
+	 */
+	DispatcherConfig(DispatcherConfig config) {
+		poolSize = config.poolSize;
+		maxPoolSize = config.maxPoolSize;
+		keepAliveTime = config.keepAliveTime;
+		growQueueDepth = config.growQueueDepth;
+		growQueueWait = config.growQueueWait;
+		queueCapacity = config.queueCapacity;
+		rejectionPolicy = config.rejectionPolicy;
+		maxRequestsPerHost = config.maxRequestsPerHost;
+		//
+		Object key;
+		Enumeration keys = config.hostLimits.keys();
+		//
+		while (keys.hasMoreElements()) {
+			key = keys.nextElement();
+			//
+			hostLimits.put(key, config.hostLimits.get(key));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of threads kept in the pool, even when idle.
+	 * </p>
+	 * @return Pool size.
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * <p>
+	 * Sets the number of threads kept in the pool, even when idle.
+	 * </p>
+	 * @param poolSize Pool size.
+	 * @throws IllegalArgumentException Pool size must be greater than zero!
+	 */
+	public void setPoolSize(int poolSize) {
+		if (poolSize <= 0) {
+			throw new IllegalArgumentException(
+				"Pool size must be greater than zero!");
+		}
+		//
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of threads in the pool. It is never lower
+	 * than the pool size.
+	 * </p>
+	 * @return Maximum pool size.
+	 */
+	public int getMaxPoolSize() {
+		return Math.max(maxPoolSize, poolSize);
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum number of threads in the pool. A value greater than 
+	 * the pool size makes the pool elastic. By default, it is the same as
+	 * the pool size.
+	 * </p>
+	 * @param maxPoolSize Maximum pool size.
+	 * @throws IllegalArgumentException Max pool size must be greater than
+	 *         zero!
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		if (maxPoolSize <= 0) {
+			throw new IllegalArgumentException(
+				"Max pool size must be greater than zero!");
+		}
+		//
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time, in milliseconds, an extra thread stays idle before
+	 * it is retired.
+	 * </p>
+	 * @return Keep-alive time.
+	 */
+	public long getKeepAliveTime() {
+		return keepAliveTime;
+	}
+
+	/**
+	 * <p>
+	 * Sets the time, in milliseconds, an extra thread stays idle before it
+	 * is retired.
+	 * </p>
+	 * @param keepAliveTime Keep-alive time.
+	 * @throws IllegalArgumentException Keep-alive time must be greater than
+	 *         zero!
+	 */
+	public void setKeepAliveTime(long keepAliveTime) {
+		if (keepAliveTime <= 0) {
+			throw new IllegalArgumentException(
+				"Keep-alive time must be greater than zero!");
+		}
+		//
+		this.keepAliveTime = keepAliveTime;
+	}
+
+	/**
+	 * <p>
+	 * Returns the queue depth above which an extra thread is started.
+	 * </p>
+	 * @return Queue depth.
+	 */
+	public int getGrowQueueDepth() {
+		return growQueueDepth;
+	}
+
+	/**
+	 * <p>
+	 * Sets the queue depth above which an extra thread is started, as long
+	 * as no thread is idle and the maximum pool size is not reached.
+	 * </p>
+	 * @param growQueueDepth Queue depth.
+	 * @throws IllegalArgumentException Queue depth must not be negative!
+	 */
+	public void setGrowQueueDepth(int growQueueDepth) {
+		if (growQueueDepth < 0) {
+			throw new IllegalArgumentException(
+				"Queue depth must not be negative!");
+		}
+		//
+		this.growQueueDepth = growQueueDepth;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time, in milliseconds, an operation can wait in the queue
+	 * before an extra thread is started.
+	 * </p>
+	 * @return Queue wait time.
+	 */
+	public long getGrowQueueWait() {
+		return growQueueWait;
+	}
+
+	/**
+	 * <p>
+	 * Sets the time, in milliseconds, an operation can wait in the queue
+	 * before an extra thread is started, as long as operations are still
+	 * queued and the maximum pool size is not reached.
+	 * </p>
+	 * @param growQueueWait Queue wait time.
+	 * @throws IllegalArgumentException Queue wait time must not be negative!
+	 */
+	public void setGrowQueueWait(long growQueueWait) {
+		if (growQueueWait < 0) {
+			throw new IllegalArgumentException(
+				"Queue wait time must not be negative!");
+		}
+		//
+		this.growQueueWait = growQueueWait;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of operations waiting in the queue.
+	 * </p>
+	 * @return Queue capacity.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum number of operations waiting in the queue.
+	 * </p>
+	 * @param queueCapacity Queue capacity.
+	 * @throws IllegalArgumentException Queue capacity must be greater than
+	 *         zero!
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException(
+				"Queue capacity must be greater than zero!");
+		}
+		//
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * <p>
+	 * Returns the rejection policy.
+	 * </p>
+	 * @return Policy.
+	 * @see RejectionPolicy
+	 */
+	public int getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	/**
+	 * <p>
+	 * Sets the rejection policy.
+	 * </p>
+	 * @param rejectionPolicy Policy.
+	 * @throws IllegalArgumentException Rejection policy invalid!
+	 * @see RejectionPolicy
+	 */
+	public void setRejectionPolicy(int rejectionPolicy) {
+		if (rejectionPolicy < RejectionPolicy.ABORT
+				|| rejectionPolicy > RejectionPolicy.DISCARD_OLDEST) {
+			throw new IllegalArgumentException("Rejection policy invalid!");
+		}
+		//
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of operations running at the same time 
+	 * against a single host. Zero means no limit.
+	 * </p>
+	 * @return Maximum.
+	 */
+	public int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum number of operations running at the same time
+	 * against a single host. Zero means no limit, which is the default.
+	 * </p>
+	 * @param max Maximum.
+	 * @throws IllegalArgumentException Max must not be negative!
+	 */
+	public void setMaxRequestsPerHost(int max) {
+		if (max < 0) {
+			throw new IllegalArgumentException("Max must not be negative!");
+		}
+		//
+		maxRequestsPerHost = max;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of operations running at the same time
+	 * against the host of a given URL. Zero means no limit.
+	 * </p>
+	 * @param url URL.
+	 * @return Maximum.
+	 * @throws IllegalArgumentException URL null!
+	 */
+	public int getMaxRequestsPerHost(URL url) {
+		if (url == null) {
+			throw new IllegalArgumentException("URL null!");
+		}
+		//
+		return getMaxRequestsPerHost(url.getAuthority());
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum number of operations running at the same time
+	 * against the host of a given URL, e.g. "http://cdn.emobtech.com". It 
+	 * overrides the limit for all hosts.
+	 * </p>
+	 * @param url URL.
+	 * @param max Maximum. Zero means no limit.
+	 * @throws IllegalArgumentException URL null or max negative!
+	 * @see URL#getAuthority()
+	 */
+	public void setMaxRequestsPerHost(URL url, int max) {
+		if (url == null) {
+			throw new IllegalArgumentException("URL null!");
+		}
+		if (max < 0) {
+			throw new IllegalArgumentException("Max must not be negative!");
+		}
+		//
+		hostLimits.put(url.getAuthority(), new Integer(max));
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of operations running at the same time
+	 * against a given host authority.
+	 * </p>
+	 * @param authority Authority, e.g. "www.emobtech.com:80".
+	 * @return Maximum. Zero means no limit.
+	 */
+	int getMaxRequestsPerHost(String authority) {
+		Integer max = (Integer)hostLimits.get(authority);
+		//
+		return max != null ? max.intValue() : maxRequestsPerHost;
+	}
+}
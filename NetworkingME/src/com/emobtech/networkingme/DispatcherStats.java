@@ -0,0 +1,390 @@
+/* DispatcherStats.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+/**
+ * <p>
+ * This class represents a snapshot of the metrics of the thread pool used to
+ * run request operations asynchronously. It tells how long operations wait
+ * in the queue before they start and how long they take to run, so the pool
+ * can be sized accordingly.
+ * </p>
+ * <p>
+ * Times are in milliseconds. All counters are accumulated since the pool was
+ * created or the metrics were last reset.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see RequestOperation#getDispatcherStats()
+ */
+public final class DispatcherStats {
+	/**
+	 * <p>
+	 * This class represents a histogram of times, in milliseconds. Each
+	 * bucket counts the samples up to its upper bound, and the last one
+	 * counts the samples above all bounds.
+	 * </p>
+	 */
+	public static final class Histogram {
+		/**
+		 * <p>
+		 * Upper bounds of the buckets, in milliseconds.
+		 * </p>
+		 */
+		private static final long[] BOUNDS = {
+			10, 50, 100, 250, 500, 1000, 2500, 5000, 10000
+		};
+
+		/**
+		 * <p>
+		 * Bucket counts.
+		 * </p>
+		 */
+		private int[] counts = new int[BOUNDS.length +1];
+
+		/**
+		 * <p>
+		 * Number of samples.
+		 * </p>
+		 */
+		private int samples;
+
+		/**
+		 * <p>
+		 * Sum of all samples.
+		 * </p>
+		 */
+		private long total;
+
+		/**
+		 * <p>
+		 * Highest sample.
+		 * </p>
+		 */
+		private long max;
+
+		/**
+		 * <p>
+		 * Creates an empty Histogram.
+		 * </p>
+		 */
+		Histogram() {
+		}
+
+		/**
+		 * <p>
+		 * Creates a Histogram as a copy of a given one.
+		 * </p>
+		 * @param histogram Histogram.
+		 */
+		Histogram(Histogram histogram) {
+			System.arraycopy(
+				histogram.counts, 0, counts, 0, counts.length);
+			samples = histogram.samples;
+			total = histogram.total;
+			max = histogram.max;
+		}
+
+		/**
+		 * <p>
+		 * Returns the number of buckets.
+		 * </p>
+		 * @return Number of buckets.
+		 */
+		public int getBucketCount() {
+			return counts.length;
+		}
+
+		/**
+		 * <p>
+		 * Returns the upper bound of a given bucket. -1 is returned for the
+		 * last bucket, which has no bound.
+		 * </p>
+		 * @param bucket Bucket index.
+		 * @return Upper bound in milliseconds.
+		 * @throws ArrayIndexOutOfBoundsException Invalid bucket index.
+		 */
+		public long getBucketBound(int bucket) {
+			if (bucket == BOUNDS.length) {
+				return -1;
+			}
+			//
+			return BOUNDS[bucket];
+		}
+
+		/**
+		 * <p>
+		 * Returns the number of samples in a given bucket.
+		 * </p>
+		 * @param bucket Bucket index.
+		 * @return Count.
+		 * @throws ArrayIndexOutOfBoundsException Invalid bucket index.
+		 */
+		public int getBucketCount(int bucket) {
+			return counts[bucket];
+		}
+
+		/**
+		 * <p>
+		 * Returns the number of samples.
+		 * </p>
+		 * @return Count.
+		 */
+		public int getSampleCount() {
+			return samples;
+		}
+
+		/**
+		 * <p>
+		 * Returns the sum of all samples.
+		 * </p>
+		 * @return Total time in milliseconds.
+		 */
+		public long getTotal() {
+			return total;
+		}
+
+		/**
+		 * <p>
+		 * Returns the average sample, rounded down.
+		 * </p>
+		 * @return Average time in milliseconds.
+		 */
+		public long getAverage() {
+			return samples > 0 ? total / samples : 0;
+		}
+
+		/**
+		 * <p>
+		 * Returns the highest sample.
+		 * </p>
+		 * @return Max time in milliseconds.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * <p>
+		 * Adds a sample.
+		 * </p>
+		 * @param time Time in milliseconds.
+		 */
+		void add(long time) {
+			int bucket = 0;
+			//
+			while (bucket < BOUNDS.length && time > BOUNDS[bucket]) {
+				bucket++;
+			}
+			//
+			counts[bucket]++;
+			samples++;
+			total += time;
+			//
+			if (time > max) {
+				max = time;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Number of queued operations.
+	 * </p>
+	 */
+	private int queueDepth;
+
+	/**
+	 * <p>
+	 * Highest number of queued operations.
+	 * </p>
+	 */
+	private int peakQueueDepth;
+
+	/**
+	 * <p>
+	 * Number of threads running operations.
+	 * </p>
+	 */
+	private int busyThreads;
+
+	/**
+	 * <p>
+	 * Number of threads waiting for operations.
+	 * </p>
+	 */
+	private int idleThreads;
+
+	/**
+	 * <p>
+	 * Number of rejected operations.
+	 * </p>
+	 */
+	private int rejectedCount;
+
+	/**
+	 * <p>
+	 * Number of operations that threw an exception.
+	 * </p>
+	 */
+	private int failedCount;
+
+	/**
+	 * <p>
+	 * Times between queuing and start.
+	 * </p>
+	 */
+	private Histogram waitTimes;
+
+	/**
+	 * <p>
+	 * Times to run.
+	 * </p>
+	 */
+	private Histogram runTimes;
+
+	/**
+	 * <p>
+	 * Creates a DispatcherStats.
+	 * </p>
+	 * @param queueDepth Number of queued operations.
+	 * @param peakQueueDepth Highest number of queued operations.
+	 * @param busyThreads Number of busy threads.
+	 * @param idleThreads Number of idle threads.
+	 * @param rejectedCount Number of rejected operations.
+	 * @param failedCount Number of operations that threw an exception.
+	 * @param waitTimes Wait times, copied.
+	 * @param runTimes Run times, copied.
+	 */
+	DispatcherStats(int queueDepth, int peakQueueDepth, int busyThreads,
+		int idleThreads, int rejectedCount, int failedCount,
+		Histogram waitTimes, Histogram runTimes) {
+		this.queueDepth = queueDepth;
+		this.peakQueueDepth = peakQueueDepth;
+		this.busyThreads = busyThreads;
+		this.idleThreads = idleThreads;
+		this.rejectedCount = rejectedCount;
+		this.failedCount = failedCount;
+		this.waitTimes = new Histogram(waitTimes);
+		this.runTimes = new Histogram(runTimes);
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of operations waiting in the queue.
+	 * </p>
+	 * @return Queue depth.
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * <p>
+	 * Returns the highest number of operations waiting in the queue at once.
+	 * </p>
+	 * @return Peak queue depth.
+	 */
+	public int getPeakQueueDepth() {
+		return peakQueueDepth;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of threads running operations.
+	 * </p>
+	 * @return Busy threads.
+	 */
+	public int getBusyThreads() {
+		return busyThreads;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of threads waiting for operations.
+	 * </p>
+	 * @return Idle threads.
+	 */
+	public int getIdleThreads() {
+		return idleThreads;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of operations rejected because the queue was full,
+	 * regardless of the rejection policy.
+	 * </p>
+	 * @return Count.
+	 */
+	public int getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of operations that threw an exception out of their
+	 * run.
+	 * </p>
+	 * @return Count.
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * <p>
+	 * Returns the histogram of times operations waited in the queue before
+	 * they started.
+	 * </p>
+	 * @return Histogram.
+	 */
+	public Histogram getWaitTimes() {
+		return waitTimes;
+	}
+
+	/**
+	 * <p>
+	 * Returns the histogram of times operations took to run. Its sample count
+	 * is the number of completed operations.
+	 * </p>
+	 * @return Histogram.
+	 */
+	public Histogram getRunTimes() {
+		return runTimes;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "queue=" + queueDepth + " peak=" + peakQueueDepth
+			+ " busy=" + busyThreads + " idle=" + idleThreads
+			+ " rejected=" + rejectedCount + " failed=" + failedCount
+			+ " wait(avg/max)=" + waitTimes.getAverage() + '/'
+			+ waitTimes.getMax()
+			+ " run(avg/max)=" + runTimes.getAverage() + '/'
+			+ runTimes.getMax();
+	}
+}
@@ -0,0 +1,59 @@
+/* Executor.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+/**
+ * <p>
+ * This interface represents an executor of request operations. It can be
+ * implemented to run the operations on something other than the built-in
+ * thread pool, e.g. a platform-specific thread pool or the caller's thread
+ * in tests.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see RequestOperation#setDefaultExecutor(Executor)
+ * @see RequestOperation#setExecutor(Executor)
+ */
+public interface Executor {
+	/**
+	 * <p>
+	 * Runs a given task at some time, on any thread. An executor that cannot
+	 * accept the task must throw a runtime exception, which fails the
+	 * operation.
+	 * </p>
+	 * @param task Task.
+	 */
+	void execute(Runnable task);
+
+	/**
+	 * <p>
+	 * Removes a given task that is waiting to be run, so it is not run 
+	 * anymore. An executor that cannot remove tasks must return false.
+	 * </p>
+	 * @param task Task.
+	 * @return Removed (true).
+	 */
+	boolean remove(Runnable task);
+}
@@ -23,6 +23,7 @@
  */
 package com.emobtech.networkingme;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
@@ -30,10 +31,109 @@ import java.io.IOException;
  * This class represents a request.
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public abstract class Request {
+	/**
+	 * <p>
+	 * This class defines a list of priorities used to order the dispatch of
+	 * requests. Requests with higher priority are run first, but those with 
+	 * lower priority are never starved.
+	 * </p>
+	 */
+	public static final class Priority {
+		/**
+		 * <p>
+		 * Interactive, e.g. a request triggered by a user action.
+		 * </p>
+		 */
+		public static final int INTERACTIVE = 0;
+
+		/**
+		 * <p>
+		 * Normal. It is the default one.
+		 * </p>
+		 */
+		public static final int NORMAL = 1;
+
+		/**
+		 * <p>
+		 * Background, e.g. prefetch of images.
+		 * </p>
+		 */
+		public static final int BACKGROUND = 2;
+		
+		/**
+		 * <p>
+		 * Private constructor to avoid object instantiation.
+		 * </p>
+		 */
+		private Priority() {}
+	}
+	
+	/**
+	 * <p>
+	 * Priority.
+	 * </p>
+	 */
+	private int priority = Priority.NORMAL;
+	
+	/**
+	 * <p>
+	 * Returns the priority.
+	 * </p>
+	 * @return Priority.
+	 * @see Priority
+	 */
+	public int getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the priority.
+	 * </p>
+	 * @param priority Priority.
+	 * @throws IllegalArgumentException Priority invalid!
+	 * @see Priority
+	 */
+	public void setPriority(int priority) {
+		if (priority < Priority.INTERACTIVE || priority > Priority.BACKGROUND) {
+			throw new IllegalArgumentException("Priority invalid!");
+		}
+		//
+		this.priority = priority;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the authority of the host the request is sent to, e.g.
+	 * "www.emobtech.com:80". It is used to limit the number of requests
+	 * running against a same host. <code>null</code> is returned by default.
+	 * </p>
+	 * @return Authority.
+	 * @see URL#getAuthority()
+	 * @see DispatcherConfig#setMaxRequestsPerHost(URL, int)
+	 */
+	protected String getAuthority() {
+		return null;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the key that identifies the request among identical ones, so
+	 * they can share a single run while in flight. Only idempotent requests
+	 * must have one. <code>null</code>, the default, means the request is
+	 * never shared.
+	 * </p>
+	 * @return Key.
+	 * @see RequestOperation#setCoalesce(boolean)
+	 */
+	protected String getCoalescingKey() {
+		return null;
+	}
+	
 	/**
 	 * <p>
 	 * Sends the request.
@@ -43,4 +143,44 @@ public abstract class Request {
 	 * @throws SecurityException If any security violation occurs.
 	 */
 	protected abstract Response send() throws IOException, SecurityException;
+	
+	/**
+	 * <p>
+	 * Sends the request, handing the content of a successful response over
+	 * to a given listener as a stream. The default implementation sends the
+	 * request as usual and hands its buffered content over. Subclasses
+	 * override it to stream the content while the connection is open.
+	 * </p>
+	 * @param listener Listener.
+	 * @return Response.
+	 * @throws IOException If any I/O error occurs.
+	 * @throws SecurityException If any security violation occurs.
+	 */
+	protected Response send(StreamListener listener) throws IOException,
+		SecurityException {
+		Response response = send();
+		//
+		if (response.wasSuccessful()) {
+			listener.onStream(
+				this,
+				response,
+				new ByteArrayInputStream(response.getPayload().getBytes()));
+		}
+		//
+		return response;
+	}
+	
+	/**
+	 * <p>
+	 * Aborts the request, releasing its resources, e.g. closing the 
+	 * connection. In case it is being sent, the sending fails with an 
+	 * exception. Once aborted, a request cannot be sent anymore.
+	 * </p>
+	 * <p>
+	 * It is called by a thread other than the one sending the request. The
+	 * default implementation does nothing.
+	 * </p>
+	 */
+	protected void abort() {
+	}
 }
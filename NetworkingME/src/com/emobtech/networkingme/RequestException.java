@@ -31,7 +31,7 @@ import com.emobtech.networkingme.util.Util;
  * because of either an exception or unsuccessful response.
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class RequestException extends Exception {
@@ -93,6 +93,41 @@ public final class RequestException extends Exception {
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Returns whether the request failed because it exceeded its deadline.
+	 * </p>
+	 * @return Timeout (true).
+	 * @see RequestTimeoutException
+	 */
+	public boolean isTimeout() {
+		return cause instanceof RequestTimeoutException;
+	}
+	
+	/**
+	 * <p>
+	 * Returns whether the request failed because its response was larger
+	 * than the maximum length allowed.
+	 * </p>
+	 * @return Too large (true).
+	 * @see ResponseTooLargeException
+	 */
+	public boolean isResponseTooLarge() {
+		return cause instanceof ResponseTooLargeException;
+	}
+	
+	/**
+	 * <p>
+	 * Returns whether the request failed because its response did not fit
+	 * in the memory budget.
+	 * </p>
+	 * @return Over budget (true).
+	 * @see MemoryBudgetException
+	 */
+	public boolean isOverBudget() {
+		return cause instanceof MemoryBudgetException;
+	}
+	
 	/**
 	 * <p>
 	 * Returns the exception cause.
@@ -23,12 +23,27 @@
  */
 package com.emobtech.networkingme;
 
+import java.util.Hashtable;
+import java.util.Vector;
+
 /**
  * <p>
  * This class implements an operation that is used to run a request.
  * </p>
+ * <p>
+ * Every start returns a {@link RequestOperation.Handle}, which can be used
+ * to cancel the run when its result is not needed anymore.
+ * </p>
+ * <p>
+ * Operations are run by a built-in thread pool, unless an {@link Executor}
+ * is set, either globally or to the operation.
+ * </p>
+ * <p>
+ * Coalescing operations of identical requests share a single run while it is
+ * in flight, and all of them receive its response.
+ * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class RequestOperation {
@@ -68,6 +83,116 @@ public final class RequestOperation {
 		void onFailure(Request request, RequestException exception);
 	}
 
+	/**
+	 * <p>
+	 * This class represents a handle to a started run of a request.
+	 * </p>
+	 * @since 1.2
+	 */
+	public final class Handle {
+		/**
+		 * <p>
+		 * Task.
+		 * </p>
+		 */
+		private Task task;
+		
+		/**
+		 * <p>
+		 * Creates a Handle to a given task.
+		 * </p>
+		 * @param task Task.
+		 */
+		private Handle(Task task) {
+			this.task = task;
+		}
+		
+		/**
+		 * <p>
+		 * Cancels the run. A queued run is removed from the queue. A running
+		 * one is aborted, e.g. its connection is closed. No listener method 
+		 * is called after the cancellation.
+		 * </p>
+		 * @return Cancelled (true) or already finished or cancelled (false).
+		 */
+		public boolean cancel() {
+			return task.cancel();
+		}
+		
+		/**
+		 * <p>
+		 * Returns whether the run was cancelled.
+		 * </p>
+		 * @return Cancelled (true).
+		 */
+		public boolean isCancelled() {
+			synchronized (task) {
+				return task.state == Task.CANCELLED;
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Returns whether the run is over, either finished or cancelled.
+		 * </p>
+		 * @return Done (true).
+		 */
+		public boolean isDone() {
+			synchronized (task) {
+				return task.state == Task.FINISHED
+					|| task.state == Task.CANCELLED;
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Waits for the run to be over and returns its response.
+		 * </p>
+		 * @return Response.
+		 * @throws RequestException If the request failed, was cancelled or
+		 *         the wait was interrupted.
+		 */
+		public Response get() throws RequestException {
+			return get(0);
+		}
+		
+		/**
+		 * <p>
+		 * Waits, at most a given time, for the run to be over and returns its
+		 * response. In case the time is exceeded, the run goes on and the
+		 * exception thrown has a {@link RequestTimeoutException} as cause.
+		 * </p>
+		 * @param timeout Time in milliseconds. Zero means no limit.
+		 * @return Response.
+		 * @throws RequestException If the request failed, was cancelled, the
+		 *         time was exceeded or the wait was interrupted.
+		 * @throws IllegalArgumentException Timeout must not be negative!
+		 */
+		public Response get(long timeout) throws RequestException {
+			if (timeout < 0) {
+				throw new IllegalArgumentException(
+					"Timeout must not be negative!");
+			}
+			//
+			return task.await(timeout);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Executor of all operations. <code>null</code> means the built-in
+	 * thread pool.
+	 * </p>
+	 */
+	private static Executor defaultExecutor;
+	
+	/**
+	 * <p>
+	 * Shared runs in flight, by coalescing key.
+	 * </p>
+	 */
+	private static final Hashtable flights = new Hashtable();
+	
 	/**
 	 * <p>
 	 * Request.
@@ -77,10 +202,17 @@ public final class RequestOperation {
 	
 	/**
 	 * <p>
-	 * Listener.
+	 * Executor of this operation.
 	 * </p>
 	 */
-	private Listener listener;
+	private Executor executor;
+	
+	/**
+	 * <p>
+	 * Coalesce flag.
+	 * </p>
+	 */
+	private boolean coalesce;
 	
 	/**
 	 * <p>
@@ -97,47 +229,607 @@ public final class RequestOperation {
 		this.request = request;
 	}
 	
+	/**
+	 * <p>
+	 * Applies a given configuration to the thread pool that runs all
+	 * request operations.
+	 * </p>
+	 * @param config Configuration.
+	 * @throws IllegalArgumentException Config null!
+	 */
+	public static void setDispatcherConfig(DispatcherConfig config) {
+		ThreadDispatcher.configure(config);
+	}
+	
+	/**
+	 * <p>
+	 * Returns a snapshot of the metrics of the thread pool that runs all
+	 * request operations, e.g. queue depth and wait times. Operations run by
+	 * a custom executor are not counted.
+	 * </p>
+	 * @return Metrics.
+	 */
+	public static DispatcherStats getDispatcherStats() {
+		return ThreadDispatcher.getInstance().getStats();
+	}
+	
+	/**
+	 * <p>
+	 * Resets the metrics of the thread pool that runs all request
+	 * operations.
+	 * </p>
+	 * @see RequestOperation#getDispatcherStats()
+	 */
+	public static void resetDispatcherStats() {
+		ThreadDispatcher.getInstance().resetStats();
+	}
+	
+	/**
+	 * <p>
+	 * Sets the executor of all operations that do not have their own.
+	 * <code>null</code> restores the built-in thread pool.
+	 * </p>
+	 * @param executor Executor.
+	 * @see RequestOperation#setDispatcherConfig(DispatcherConfig)
+	 */
+	public static synchronized void setDefaultExecutor(Executor executor) {
+		defaultExecutor = executor;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the executor of all operations that do not have their own.
+	 * <code>null</code> means the built-in thread pool.
+	 * </p>
+	 * @return Executor.
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		return defaultExecutor;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the executor of this operation. <code>null</code>, the default,
+	 * means the default executor.
+	 * </p>
+	 * @param executor Executor.
+	 * @see RequestOperation#setDefaultExecutor(Executor)
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * <p>
+	 * Sets whether the run is shared with identical requests in flight. In
+	 * case another operation is already running an identical request, this
+	 * one attaches to it and receives the same response. Only requests with
+	 * a coalescing key, e.g. HTTP GET and HEAD, are shared. It is disabled by
+	 * default.
+	 * </p>
+	 * @param enabled Enabled (true).
+	 * @see Request#getCoalescingKey()
+	 */
+	public void setCoalesce(boolean enabled) {
+		coalesce = enabled;
+	}
+	
 	/**
 	 * <p>
 	 * Starts the run of the request.
 	 * </p>
-	 * @param listener Listener.
+	 * @param listener Listener. It can be <code>null</code>, in case the
+	 *        handle is used to get the response.
+	 * @return Handle, used to cancel the run or wait for its response.
 	 * @see TextListener
 	 * @see BinaryListener
+	 * @see StreamListener
+	 */
+	public Handle start(Listener listener) {
+		Executor executor =
+			this.executor != null ? this.executor : getDefaultExecutor();
+		Task task = new Task(listener, executor);
+		String key =
+			coalesce && !(listener instanceof StreamListener)
+				? request.getCoalescingKey() : null;
+		//
+		if (key != null) {
+			attach(task, key);
+		} else {
+			dispath(task);
+		}
+		//
+		return new Handle(task);
+	}
+
+	/**
+	 * <p>
+	 * Attaches a task to the shared run of a given key, which is dispatched
+	 * in case none is in flight.
+	 * </p>
+	 * @param task Task.
+	 * @param key Coalescing key.
 	 */
-	public void start(Listener listener) {
-		this.listener = listener;
+	private void attach(Task task, String key) {
+		Task leader;
+		boolean created = false;
 		//
-		dispath();
+		synchronized (flights) {
+			leader = (Task)flights.get(key);
+			//
+			if (leader == null) {
+				leader = new Task(null, task.executor);
+				leader.key = key;
+				leader.followers = new Vector(4);
+				//
+				flights.put(key, leader);
+				created = true;
+			}
+			//
+			task.leader = leader;
+			leader.followers.addElement(task);
+		}
+		//
+		if (created) {
+			dispath(leader);
+		}
 	}
 
 	/**
 	 * <p>
-	 * Dispatches the request.
+	 * Runs the request on the current thread and returns its response. No
+	 * dispatcher or executor is used, so it suits code that already runs on
+	 * a background thread.
 	 * </p>
+	 * @return Response.
+	 * @throws RequestException If the request failed or its response is
+	 *         unsuccessful.
 	 */
-	private void dispath() {
-		ThreadDispatcher.getInstance().dispatch(new Runnable() {
-			public void run() {
+	public Response execute() throws RequestException {
+		Response response;
+		//
+		try {
+			response = request.send();
+		} catch (Exception e) {
+			throw new RequestException(e);
+		}
+		//
+		if (!response.wasSuccessful()) {
+			throw new RequestException(response);
+		}
+		//
+		return response;
+	}
+
+	/**
+	 * <p>
+	 * Dispatches a task to its executor. The built-in thread pool takes the
+	 * request's priority and host into account.
+	 * </p>
+	 * @param task Task.
+	 */
+	private void dispath(Task task) {
+		if (task.executor == null) {
+			Runnable rejected =
+				ThreadDispatcher.getInstance().dispatch(
+					task, request.getPriority(), request.getAuthority());
+			//
+			if (rejected instanceof Task) {
+				((Task)rejected).reject(
+					new IllegalStateException("Dispatcher queue is full!"));
+			}
+		} else {
+			try {
+				task.executor.execute(task);
+			} catch (RuntimeException e) {
+				task.reject(e);
+			}
+		}
+	}
+	
+	/**
+	 * <p>
+	 * This class implements the task dispatched to run the request.
+	 * </p>
+	 */
+	private final class Task
+		implements Runnable, ThreadDispatcher.Discardable {
+		/**
+		 * <p>
+		 * Queued state.
+		 * </p>
+		 */
+		private static final int QUEUED = 0;
+		
+		/**
+		 * <p>
+		 * Running state.
+		 * </p>
+		 */
+		private static final int RUNNING = 1;
+		
+		/**
+		 * <p>
+		 * Finished state.
+		 * </p>
+		 */
+		private static final int FINISHED = 2;
+		
+		/**
+		 * <p>
+		 * Cancelled state.
+		 * </p>
+		 */
+		private static final int CANCELLED = 3;
+		
+		/**
+		 * <p>
+		 * Listener.
+		 * </p>
+		 */
+		private Listener listener;
+		
+		/**
+		 * <p>
+		 * Executor. <code>null</code> means the built-in thread pool.
+		 * </p>
+		 */
+		private Executor executor;
+		
+		/**
+		 * <p>
+		 * State.
+		 * </p>
+		 */
+		private int state = QUEUED;
+		
+		/**
+		 * <p>
+		 * Response.
+		 * </p>
+		 */
+		private Response response;
+		
+		/**
+		 * <p>
+		 * Failure.
+		 * </p>
+		 */
+		private RequestException failure;
+		
+		/**
+		 * <p>
+		 * Coalescing key of the shared run it leads.
+		 * </p>
+		 */
+		private String key;
+		
+		/**
+		 * <p>
+		 * Tasks attached to the shared run it leads.
+		 * </p>
+		 */
+		private Vector followers;
+		
+		/**
+		 * <p>
+		 * Leader of the shared run it is attached to.
+		 * </p>
+		 */
+		private Task leader;
+		
+		/**
+		 * <p>
+		 * Creates a Task.
+		 * </p>
+		 * @param listener Listener.
+		 * @param executor Executor.
+		 */
+		private Task(Listener listener, Executor executor) {
+			this.listener = listener;
+			this.executor = executor;
+		}
+		
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			if (!moveTo(QUEUED, RUNNING)) {
+				return;
+			}
+			//
+			Response response = null;
+			RequestException failure = null;
+			//
+			try {
+				if (listener instanceof StreamListener) {
+					response = request.send((StreamListener)listener);
+				} else {
+					response = request.send();
+				}
+				//
+				if (!response.wasSuccessful()) {
+					failure = new RequestException(response);
+				}
+			} catch (Exception e) {
+				failure = new RequestException(e);
+			} catch (Throwable e) {
+				// e.g. OutOfMemoryError, which must still finish the task and
+				// the ones attached to it.
+				failure =
+					new RequestException(new RuntimeException(e.toString()));
+			}
+			//
+			Vector followers = detach();
+			//
+			try {
+				if (finish(RUNNING, response, failure)) {
+					deliver(response, failure);
+				}
+			} finally {
+				complete(followers, response, failure);
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Cancels the task, removing it from the queue or aborting the
+		 * request.
+		 * </p>
+		 * @return Cancelled (true) or already finished or cancelled (false).
+		 */
+		boolean cancel() {
+			int previous;
+			//
+			synchronized (this) {
+				previous = state;
+				//
+				if (previous == FINISHED || previous == CANCELLED) {
+					return false;
+				}
+				//
+				state = CANCELLED;
+				notifyAll();
+			}
+			//
+			if (leader != null) {
+				leader.leave(this);
+			} else if (previous == QUEUED) {
+				if (executor == null) {
+					ThreadDispatcher.getInstance().remove(this);
+				} else {
+					executor.remove(this);
+				}
+			} else {
+				request.abort();
+			}
+			//
+			return true;
+		}
+		
+		/**
+		 * <p>
+		 * Notifies the listener that the task was rejected by its executor.
+		 * </p>
+		 * @param cause Cause.
+		 */
+		void reject(Exception cause) {
+			RequestException failure = new RequestException(cause);
+			Vector followers = detach();
+			//
+			if (finish(QUEUED, null, failure)) {
+				deliver(null, failure);
+			}
+			//
+			complete(followers, null, failure);
+		}
+		
+		/**
+		 * <p>
+		 * Cancels the task, and the ones attached to it, without notifying
+		 * the listeners.
+		 * </p>
+		 * @see ThreadDispatcher.Discardable#discard()
+		 */
+		public void discard() {
+			Vector followers = detach();
+			//
+			synchronized (this) {
+				if (state != QUEUED) {
+					return;
+				}
+				//
+				state = CANCELLED;
+				notifyAll();
+			}
+			//
+			if (followers != null) {
+				for (int i = 0; i < followers.size(); i++) {
+					((Task)followers.elementAt(i)).discard();
+				}
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Notifies the listener of the result.
+		 * </p>
+		 * @param response Response. <code>null</code> in case of exception.
+		 * @param failure Failure. <code>null</code> in case of success.
+		 */
+		private void deliver(Response response, RequestException failure) {
+			if (listener == null) {
+				return;
+			}
+			//
+			if (response == null) {
+				listener.onFailure(request, failure);
+			} else {
 				try {
-					Response response = request.send();
+					listener.onComplete(request, response);
 					//
-					if (listener != null) {
-						listener.onComplete(request, response);
-						//
-						if (response.wasSuccessful()) {
-							listener.onSuccess(request, response);
-						} else {
-							listener.onFailure(
-								request, new RequestException(response));
-						}
+					if (failure == null) {
+						listener.onSuccess(request, response);
+					} else {
+						listener.onFailure(request, failure);
 					}
 				} catch (Exception e) {
-					if (listener != null) {
-						listener.onFailure(request, new RequestException(e));
+					listener.onFailure(request, new RequestException(e));
+				}
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Finishes the tasks attached to a shared run with its result.
+		 * </p>
+		 * @param followers Tasks. It can be <code>null</code>.
+		 * @param response Response.
+		 * @param failure Failure.
+		 */
+		private void complete(Vector followers, Response response,
+			RequestException failure) {
+			if (followers != null) {
+				Task follower;
+				//
+				for (int i = 0; i < followers.size(); i++) {
+					follower = (Task)followers.elementAt(i);
+					//
+					if (follower.finish(QUEUED, response, failure)) {
+						follower.deliver(response, failure);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Ends the shared run it leads, so no other task attaches to it.
+		 * </p>
+		 * @return Attached tasks or <code>null</code> if it leads none.
+		 */
+		private Vector detach() {
+			if (key == null) {
+				return null;
+			}
+			//
+			synchronized (flights) {
+				if (flights.get(key) == this) {
+					flights.remove(key);
+				}
+				//
+				Vector attached = followers;
+				followers = new Vector(0);
+				//
+				return attached;
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Detaches a cancelled task from the shared run it leads. The run is
+		 * cancelled once no task is attached to it anymore.
+		 * </p>
+		 * @param follower Task.
+		 */
+		private void leave(Task follower) {
+			boolean idle;
+			//
+			synchronized (flights) {
+				followers.removeElement(follower);
+				//
+				idle = followers.isEmpty() && flights.get(key) == this;
+				//
+				if (idle) {
+					flights.remove(key);
+				}
+			}
+			//
+			if (idle) {
+				cancel();
+			}
+		}
+		
+		/**
+		 * <p>
+		 * Waits, at most a given time, for the task to be over and returns
+		 * its response.
+		 * </p>
+		 * @param timeout Time in milliseconds. Zero means no limit.
+		 * @return Response.
+		 * @throws RequestException If the request failed, was cancelled, the
+		 *         time was exceeded or the wait was interrupted.
+		 */
+		synchronized Response await(long timeout) throws RequestException {
+			final long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			//
+			try {
+				while (state == QUEUED || state == RUNNING) {
+					if (timeout > 0 && remaining <= 0) {
+						throw new RequestException(
+							new RequestTimeoutException("Result timed out!"));
 					}
+					//
+					wait(timeout > 0 ? remaining : 0);
+					//
+					remaining = deadline - System.currentTimeMillis();
 				}
+			} catch (InterruptedException e) {
+				throw new RequestException(e);
+			}
+			//
+			if (state == CANCELLED) {
+				throw new RequestException(
+					new IllegalStateException("Request cancelled!"));
+			}
+			if (failure != null) {
+				throw failure;
 			}
-		});
+			//
+			return response;
+		}
+		
+		/**
+		 * <p>
+		 * Finishes the task with its result, in case the current state is the
+		 * expected one, and wakes up the threads waiting for it.
+		 * </p>
+		 * @param expected Expected state.
+		 * @param response Response.
+		 * @param failure Failure.
+		 * @return Finished (true).
+		 */
+		private synchronized boolean finish(int expected, Response response,
+			RequestException failure) {
+			if (!moveTo(expected, FINISHED)) {
+				return false;
+			}
+			//
+			this.response = response;
+			this.failure = failure;
+			//
+			notifyAll();
+			//
+			return true;
+		}
+		
+		/**
+		 * <p>
+		 * Changes the state, in case the current one is the expected one.
+		 * </p>
+		 * @param expected Expected state.
+		 * @param newState New state.
+		 * @return Changed (true).
+		 */
+		private synchronized boolean moveTo(int expected, int newState) {
+			if (state != expected) {
+				return false;
+			}
+			//
+			state = newState;
+			//
+			return true;
+		}
 	}
 }
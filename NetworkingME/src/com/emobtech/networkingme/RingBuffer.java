@@ -0,0 +1,234 @@
+/* RingBuffer.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+/**
+ * <p>
+ * This class implements a fixed-capacity circular array queue. Elements are
+ * added to the tail and removed from the head in constant time, with no
+ * element shifting. Only the removal of an element from the middle shifts
+ * the elements after it.
+ * </p>
+ * <p>
+ * This class is not thread-safe. Callers must synchronize on their own.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+final class RingBuffer {
+	/**
+	 * <p>
+	 * Elements.
+	 * </p>
+	 */
+	private Object[] elements;
+
+	/**
+	 * <p>
+	 * Index of the head element.
+	 * </p>
+	 */
+	private int head;
+
+	/**
+	 * <p>
+	 * Number of elements.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Creates a RingBuffer with a given capacity.
+	 * </p>
+	 * @param capacity Capacity.
+	 * @throws IllegalArgumentException Capacity must be greater than zero!
+	 */
+	RingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+				"Capacity must be greater than zero!");
+		}
+		//
+		elements = new Object[capacity];
+	}
+
+	/**
+	 * <p>
+	 * Adds an element to the tail.
+	 * </p>
+	 * @param element Element.
+	 * @return Added (true) or full (false).
+	 */
+	boolean offer(Object element) {
+		if (size == elements.length) {
+			return false;
+		}
+		//
+		elements[(head + size) % elements.length] = element;
+		size++;
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Removes and returns the head element. <code>null</code> is returned in
+	 * case it is empty.
+	 * </p>
+	 * @return Element.
+	 */
+	Object poll() {
+		if (size == 0) {
+			return null;
+		}
+		//
+		Object element = elements[head];
+		//
+		elements[head] = null;
+		head = (head +1) % elements.length;
+		size--;
+		//
+		return element;
+	}
+
+	/**
+	 * <p>
+	 * Returns the head element without removing it. <code>null</code> is
+	 * returned in case it is empty.
+	 * </p>
+	 * @return Element.
+	 */
+	Object peek() {
+		return size > 0 ? elements[head] : null;
+	}
+
+	/**
+	 * <p>
+	 * Returns the element at a given position, counting from the head.
+	 * </p>
+	 * @param index Position.
+	 * @return Element.
+	 * @throws ArrayIndexOutOfBoundsException Index out of bounds.
+	 */
+	Object get(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		//
+		return elements[(head + index) % elements.length];
+	}
+
+	/**
+	 * <p>
+	 * Removes the element at a given position, counting from the head. The
+	 * elements after it are shifted towards the head.
+	 * </p>
+	 * @param index Position.
+	 * @return Element.
+	 * @throws ArrayIndexOutOfBoundsException Index out of bounds.
+	 */
+	Object removeAt(int index) {
+		Object element = get(index);
+		//
+		for (int i = index; i < size -1; i++) {
+			elements[(head + i) % elements.length] =
+				elements[(head + i +1) % elements.length];
+		}
+		//
+		elements[(head + size -1) % elements.length] = null;
+		size--;
+		//
+		return element;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of elements.
+	 * </p>
+	 * @return Size.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * <p>
+	 * Returns the capacity.
+	 * </p>
+	 * @return Capacity.
+	 */
+	int capacity() {
+		return elements.length;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether it is empty.
+	 * </p>
+	 * @return Empty (true).
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether it is full.
+	 * </p>
+	 * @return Full (true).
+	 */
+	boolean isFull() {
+		return size == elements.length;
+	}
+
+	/**
+	 * <p>
+	 * Changes the capacity, keeping the elements in order. It never drops
+	 * elements, so the new capacity is never lower than the current size.
+	 * </p>
+	 * @param capacity Capacity.
+	 * @throws IllegalArgumentException Capacity must be greater than zero!
+	 */
+	void setCapacity(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+				"Capacity must be greater than zero!");
+		}
+		//
+		capacity = Math.max(capacity, size);
+		//
+		if (capacity != elements.length) {
+			Object[] newElements = new Object[capacity];
+			//
+			for (int i = 0; i < size; i++) {
+				newElements[i] = elements[(head + i) % elements.length];
+			}
+			//
+			elements = newElements;
+			head = 0;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/* StreamListener.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * This class represents a listener to request events, which reads the
+ * content of a successful response as a stream, straight from the
+ * connection. It is called on the thread that runs the request, before the
+ * connection is closed, so the content can be parsed as it arrives, in
+ * constant memory.
+ * </p>
+ * <p>
+ * The response's payload is empty once its content is streamed. Requests
+ * run by this listener are never shared with identical ones in flight.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see Request#send(StreamListener)
+ */
+public abstract class StreamListener implements RequestOperation.Listener {
+	/**
+	 * <p>
+	 * Called when a successful response arrives, with its content still to
+	 * be read. The connection is closed once it returns.
+	 * </p>
+	 * @param request Request.
+	 * @param response Response, with its code and header.
+	 * @param in Content stream. It does not need to be closed.
+	 * @throws IOException If any I/O error occurs, which fails the request.
+	 */
+	public abstract void onStream(Request request, Response response,
+		InputStream in) throws IOException;
+	
+	/**
+	 * <p>
+	 * Called after the content is streamed. It does nothing by default.
+	 * </p>
+	 * @see com.emobtech.networkingme.RequestOperation.Listener#onSuccess(com.emobtech.networkingme.Request, com.emobtech.networkingme.Response)
+	 */
+	public void onSuccess(Request request, Response response) {}
+	
+	/**
+	 * <p>
+	 * It does nothing by default.
+	 * </p>
+	 * @see com.emobtech.networkingme.RequestOperation.Listener#onComplete(com.emobtech.networkingme.Request, com.emobtech.networkingme.Response)
+	 */
+	public void onComplete(Request request, Response response) {}
+}
@@ -0,0 +1,53 @@
+/* StreamingPayload.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * This interface represents a payload that writes its data to a stream by
+ * itself. Requests send it through a small buffer, instead of holding all
+ * its data in memory at once, as {@link Payload#getBytes()} requires.
+ * </p>
+ * <p>
+ * Its length may be unknown, in which case {@link Payload#getLength()}
+ * returns -1. Such a body is sent with chunked encoding by the transports
+ * that support it, so it starts being sent right away.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public interface StreamingPayload extends Payload {
+	/**
+	 * <p>
+	 * Writes the data to a given stream, which is not closed.
+	 * </p>
+	 * @param out Stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void writeTo(OutputStream out) throws IOException;
+}
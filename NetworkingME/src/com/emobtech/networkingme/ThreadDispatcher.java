@@ -23,17 +23,134 @@
  */
 package com.emobtech.networkingme;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
 /**
  * <p>
  * This class implements a thread pool used to run runnable objects.
  * </p>
+ * <p>
+ * Pending objects wait in priority lanes. Higher lanes are always served
+ * first, except when a lower lane has been passed over too many times in a
+ * row, so it is never starved. Once the queue capacity is reached, the
+ * configured rejection policy is applied.
+ * </p>
+ * <p>
+ * Inside a lane, each host has its own circular queue and hosts are served
+ * in turns. A host that reached its limit of running objects is skipped
+ * until one of them finishes, so a slow host does not stall the others.
+ * </p>
+ * <p>
+ * In case the pool is elastic, extra threads are started while objects pile
+ * up or wait too long in the queue, up to the maximum pool size. Extra 
+ * threads idle for longer than the keep-alive time are retired.
+ * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.1
+ * @version 1.2
  * @since 1.0
+ * @see DispatcherConfig
+ * @see Request.Priority
  */
 final class ThreadDispatcher implements Runnable {
+	/**
+	 * <p>
+	 * This interface represents a runnable object that wants to know when it
+	 * is silently discarded by the rejection policy.
+	 * </p>
+	 * @see DispatcherConfig.RejectionPolicy#DISCARD
+	 */
+	static interface Discardable {
+		/**
+		 * <p>
+		 * Called when the object is discarded without being ran.
+		 * </p>
+		 */
+		void discard();
+	}
+
+	/**
+	 * <p>
+	 * This class represents a queued runnable object and the host it runs
+	 * against.
+	 * </p>
+	 */
+	private static final class Entry {
+		/**
+		 * <p>
+		 * Runnable object.
+		 * </p>
+		 */
+		private Runnable runnable;
+
+		/**
+		 * <p>
+		 * Host authority. Empty for objects not bound to a host.
+		 * </p>
+		 */
+		private String host;
+
+		/**
+		 * <p>
+		 * Time it was queued.
+		 * </p>
+		 */
+		private long time;
+
+		/**
+		 * <p>
+		 * Creates an Entry.
+		 * </p>
+		 * @param runnable Runnable object.
+		 * @param host Host authority.
+		 */
+		private Entry(Runnable runnable, String host) {
+			this.runnable = runnable;
+			this.host = host;
+			//
+			time = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * <p>
+	 * This class represents the queue of a host inside a lane.
+	 * </p>
+	 */
+	private static final class HostQueue {
+		/**
+		 * <p>
+		 * Host authority.
+		 * </p>
+		 */
+		private String host;
+
+		/**
+		 * <p>
+		 * Entries.
+		 * </p>
+		 */
+		private RingBuffer entries = new RingBuffer(4);
+
+		/**
+		 * <p>
+		 * Creates a HostQueue.
+		 * </p>
+		 * @param host Host authority.
+		 */
+		private HostQueue(String host) {
+			this.host = host;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Number of times in a row a lane with runnable objects can be passed
+	 * over by higher lanes, before it is served.
+	 * </p>
+	 */
+	private static final int STARVATION_LIMIT = 4;
+
 	/**
 	 * <p>
 	 * Singleton instance.
@@ -43,16 +160,117 @@ final class ThreadDispatcher implements Runnable {
 
 	/**
 	 * <p>
-	 * Queue.
+	 * Host queues of each priority lane, in the order they take turns.
 	 * </p>
 	 */
-	private Vector queue;
-	
+	private Vector[] lanes;
+
+	/**
+	 * <p>
+	 * Host queues of each priority lane, by host authority.
+	 * </p>
+	 */
+	private Hashtable[] laneHosts;
+
+	/**
+	 * <p>
+	 * Index of the host queue whose turn is next, in each lane.
+	 * </p>
+	 */
+	private int[] turns;
+
+	/**
+	 * <p>
+	 * Number of times in a row each lane has been passed over.
+	 * </p>
+	 */
+	private int[] skips;
+
+	/**
+	 * <p>
+	 * Index of the first host under its limit in each lane, reused by every
+	 * dequeue.
+	 * </p>
+	 */
+	private int[] ready;
+
+	/**
+	 * <p>
+	 * Number of queued objects in all lanes.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Number of running objects, by host authority.
+	 * </p>
+	 */
+	private Hashtable running;
+
 	/**
 	 * Thread pool.
 	 */
 	private Vector threadPool;
 
+	/**
+	 * <p>
+	 * Number of idle threads, waiting for runnable objects.
+	 * </p>
+	 */
+	private int idleCount;
+
+	/**
+	 * <p>
+	 * Number of threads created so far, used to name new threads.
+	 * </p>
+	 */
+	private int threadCount;
+
+	/**
+	 * <p>
+	 * Configuration.
+	 * </p>
+	 */
+	private DispatcherConfig config;
+
+	/**
+	 * <p>
+	 * Highest number of queued objects.
+	 * </p>
+	 */
+	private int peakSize;
+
+	/**
+	 * <p>
+	 * Number of rejected objects.
+	 * </p>
+	 */
+	private int rejectedCount;
+
+	/**
+	 * <p>
+	 * Number of objects that threw an exception.
+	 * </p>
+	 */
+	private int failedCount;
+
+	/**
+	 * <p>
+	 * Times between queuing and start.
+	 * </p>
+	 */
+	private DispatcherStats.Histogram waitTimes =
+		new DispatcherStats.Histogram();
+
+	/**
+	 * <p>
+	 * Times to run.
+	 * </p>
+	 */
+	private DispatcherStats.Histogram runTimes =
+		new DispatcherStats.Histogram();
+
 	/**
 	 * <p>
 	 * Returns the ThreadDispatcher singleton instance.
@@ -61,39 +279,218 @@ final class ThreadDispatcher implements Runnable {
 	 */
 	public synchronized static ThreadDispatcher getInstance() {
 		if (singleton == null) {
-			singleton = new ThreadDispatcher();
+			singleton = new ThreadDispatcher(new DispatcherConfig());
 		}
 		//
 		return singleton;
 	}
-	
+
+	/**
+	 * <p>
+	 * Applies a copy of a given configuration to the singleton instance.
+	 * Queued objects are kept, even if they exceed the new queue capacity.
+	 * </p>
+	 * @param config Configuration.
+	 * @throws IllegalArgumentException Config null!
+	 */
+	public synchronized static void configure(DispatcherConfig config) {
+		if (config == null) {
+			throw new IllegalArgumentException("Config null!");
+		}
+		//
+		if (singleton == null) {
+			singleton = new ThreadDispatcher(config);
+		} else {
+			singleton.setConfig(config);
+		}
+	}
+
 	/**
 	 * <p>
-	 * Adds a runnable object into the queue to be ran.
+	 * Adds a runnable object into the normal priority lane to be ran.
 	 * </p>
 	 * @param runnable Object.
+	 * @return Rejected object.
+	 * @see ThreadDispatcher#dispatch(Runnable, int, String)
+	 */
+	public Runnable dispatch(Runnable runnable) {
+		return dispatch(runnable, Request.Priority.NORMAL, null);
+	}
+
+	/**
+	 * <p>
+	 * Adds a runnable object into the queue of a given priority lane and
+	 * host to be ran.
+	 * </p>
+	 * <p>
+	 * In case the queue is full, the rejection policy is applied. The object
+	 * that must be failed, either the given one or the oldest queued one of
+	 * the busiest host in the lowest non-empty lane not higher than the given
+	 * priority, is returned. Otherwise, <code>null</code> is returned.
+	 * </p>
+	 * @param runnable Object.
+	 * @param priority Priority.
+	 * @param host Host authority, e.g. "www.emobtech.com:80". It can be
+	 *        <code>null</code>.
+	 * @return Rejected object.
+	 * @see Request.Priority
+	 * @see URL#getAuthority()
+	 */
+	public Runnable dispatch(Runnable runnable, int priority, String host) {
+		Entry entry = new Entry(runnable, host != null ? host : "");
+		int policy;
+		//
+		synchronized (lanes) {
+			if (size < config.getQueueCapacity()) {
+				enqueue(entry, priority);
+				//
+				return null;
+			}
+			//
+			rejectedCount++;
+			policy = config.getRejectionPolicy();
+			//
+			switch (policy) {
+			case DispatcherConfig.RejectionPolicy.DISCARD:
+			case DispatcherConfig.RejectionPolicy.CALLER_RUNS:
+				break;
+			case DispatcherConfig.RejectionPolicy.DISCARD_OLDEST:
+				Entry oldest = evict(priority);
+				//
+				if (oldest == null) {
+					return runnable;
+				}
+				//
+				enqueue(entry, priority);
+				//
+				return oldest.runnable;
+			default:
+				return runnable;
+			}
+		}
+		//
+		if (policy == DispatcherConfig.RejectionPolicy.CALLER_RUNS) {
+			runnable.run();
+		} else if (runnable instanceof Discardable) {
+			((Discardable)runnable).discard();
+		}
+		//
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Returns a snapshot of the metrics.
+	 * </p>
+	 * @return Metrics.
 	 */
-	public void dispatch(Runnable runnable) {
-		synchronized (queue) {
-			queue.addElement(runnable);
-			queue.notifyAll();
+	public DispatcherStats getStats() {
+		synchronized (lanes) {
+			return new DispatcherStats(
+				size, peakSize, threadPool.size() - idleCount, idleCount,
+				rejectedCount, failedCount, waitTimes, runTimes);
 		}
 	}
+
+	/**
+	 * <p>
+	 * Resets the metrics. The peak queue depth restarts from the current
+	 * one.
+	 * </p>
+	 */
+	public void resetStats() {
+		synchronized (lanes) {
+			peakSize = size;
+			rejectedCount = 0;
+			failedCount = 0;
+			waitTimes = new DispatcherStats.Histogram();
+			runTimes = new DispatcherStats.Histogram();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes a queued runnable object, so it is not ran anymore.
+	 * </p>
+	 * @param runnable Object.
+	 * @return Removed (true) or not found, e.g. already running (false).
+	 */
+	public boolean remove(Runnable runnable) {
+		synchronized (lanes) {
+			HostQueue queue;
+			//
+			for (int i = 0; i < lanes.length; i++) {
+				for (int j = lanes[i].size() -1; j >= 0; j--) {
+					queue = (HostQueue)lanes[i].elementAt(j);
+					//
+					for (int k = queue.entries.size() -1; k >= 0; k--) {
+						if (((Entry)queue.entries.get(k)).runnable == runnable) {
+							queue.entries.removeAt(k);
+							size--;
+							//
+							if (queue.entries.isEmpty()) {
+								removeHostQueue(i, j);
+							}
+							//
+							return true;
+						}
+					}
+				}
+			}
+		}
+		//
+		return false;
+	}
 	
 	/**
 	 * @see java.lang.Runnable#run()
 	 */
 	public void run() {
-		Runnable process = null;
+		Entry process = null;
+		long idleSince = 0;
 		//
         while (true) {
         	try {
-                synchronized (queue) {
-                    if (queue.size() > 0) {
-                    	process = (Runnable)queue.elementAt(0);
-                    	queue.removeElementAt(0);
+                synchronized (lanes) {
+                	if (threadPool.size() > config.getMaxPoolSize()) {
+                		threadPool.removeElement(Thread.currentThread());
+                		//
+                		return;
+                	}
+                	//
+                	process = dequeue();
+                	//
+                	final long now = System.currentTimeMillis();
+                	//
+                    if (process != null) {
+                    	idleSince = 0;
+                    	waitTimes.add(now - process.time);
+                    	//
+                    	if (size > 0
+                    			&& now - process.time
+                    				>= config.getGrowQueueWait()) {
+                    		grow();
+                    	}
+                    } else if (threadPool.size() > config.getPoolSize()) {
+                    	final long keepAlive = config.getKeepAliveTime();
+                    	//
+                    	if (idleSince == 0) {
+                    		idleSince = now;
+                    	} else if (now - idleSince >= keepAlive) {
+                    		threadPool.removeElement(Thread.currentThread());
+                    		//
+                    		return;
+                    	}
+                    	//
+                    	idleCount++;
+                    	lanes.wait(keepAlive - (now - idleSince));
+                    	idleCount--;
                     } else {
-                    	queue.wait();
+                    	idleSince = 0;
+                    	//
+                    	idleCount++;
+                    	lanes.wait();
+                    	idleCount--;
                     }
                 }
                 //
@@ -101,26 +498,316 @@ final class ThreadDispatcher implements Runnable {
                     continue;
                 }
                 //
-                process.run();
+                final long start = System.currentTimeMillis();
+                boolean failed = true;
+                //
+                try {
+                	process.runnable.run();
+                	failed = false;
+                } finally {
+                	release(
+                		process.host, System.currentTimeMillis() - start, failed);
+                }
                 //
                 process = null;
 			} catch (Throwable e) {
+				process = null;
+				//
 				e.printStackTrace();
 			}
         }
 	}
-	
+
 	/**
 	 * <p>
 	 * Private constructor to avoid object instantiation.
 	 * </p>
+	 * @param config Configuration.
 	 */
-	private ThreadDispatcher() {
-		queue = new Vector(5);
-		threadPool = new Vector(2);
+	private ThreadDispatcher(DispatcherConfig config) {
+		lanes = new Vector[Request.Priority.BACKGROUND +1];
+		laneHosts = new Hashtable[lanes.length];
+		turns = new int[lanes.length];
+		skips = new int[lanes.length];
+		ready = new int[lanes.length];
+		//
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Vector(4);
+			laneHosts[i] = new Hashtable(4);
+		}
 		//
-		addNewThreadToPool();
-		addNewThreadToPool();
+		running = new Hashtable(4);
+		threadPool = new Vector(config.getPoolSize());
+		//
+		setConfig(config);
+	}
+
+	/**
+	 * <p>
+	 * Applies a copy of a given configuration, starting new threads or
+	 * retiring surplus ones as they become idle.
+	 * </p>
+	 * @param config Configuration.
+	 */
+	private void setConfig(DispatcherConfig config) {
+		synchronized (lanes) {
+			this.config = new DispatcherConfig(config);
+			//
+			while (threadPool.size() < this.config.getPoolSize()) {
+				addNewThreadToPool();
+			}
+			//
+			lanes.notifyAll();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds an entry to the tail of its host queue in a given lane and wakes
+	 * up a thread. It must be called holding the lock.
+	 * </p>
+	 * @param entry Entry.
+	 * @param priority Priority.
+	 */
+	private void enqueue(Entry entry, int priority) {
+		HostQueue queue = (HostQueue)laneHosts[priority].get(entry.host);
+		//
+		if (queue == null) {
+			queue = new HostQueue(entry.host);
+			//
+			laneHosts[priority].put(entry.host, queue);
+			lanes[priority].addElement(queue);
+		}
+		//
+		if (!queue.entries.offer(entry)) {
+			queue.entries.setCapacity(queue.entries.capacity() * 2);
+			queue.entries.offer(entry);
+		}
+		//
+		size++;
+		//
+		if (size > peakSize) {
+			peakSize = size;
+		}
+		//
+		lanes.notify();
+		//
+		if (size > config.getGrowQueueDepth()) {
+			grow();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes the next entry to be ran, marking its host as running one more
+	 * object. It must be called holding the lock.
+	 * </p>
+	 * <p>
+	 * The highest lane with a host under its limit is chosen, unless a lower
+	 * one reached the starvation limit. Inside the lane, the first host under
+	 * its limit, starting from the one whose turn is next, is chosen.
+	 * </p>
+	 * @return Entry or <code>null</code> if no host can run now.
+	 */
+	private Entry dequeue() {
+		if (size == 0) {
+			return null;
+		}
+		//
+		int lane = -1;
+		int hostIndex = -1;
+		//
+		for (int i = 0; i < lanes.length; i++) {
+			ready[i] = nextReadyHost(i);
+			//
+			if (ready[i] != -1
+					&& (lane == -1 || skips[i] >= STARVATION_LIMIT)) {
+				lane = i;
+				hostIndex = ready[i];
+			}
+		}
+		//
+		if (lane == -1) {
+			return null;
+		}
+		//
+		skips[lane] = 0;
+		//
+		for (int i = lane +1; i < lanes.length; i++) {
+			if (ready[i] != -1) {
+				skips[i]++;
+			}
+		}
+		//
+		HostQueue queue = (HostQueue)lanes[lane].elementAt(hostIndex);
+		Entry entry = (Entry)queue.entries.poll();
+		//
+		turns[lane] = hostIndex +1;
+		//
+		if (queue.entries.isEmpty()) {
+			removeHostQueue(lane, hostIndex);
+		}
+		//
+		size--;
+		//
+		int[] count = (int[])running.get(entry.host);
+		//
+		if (count == null) {
+			count = new int[1];
+			running.put(entry.host, count);
+		}
+		//
+		count[0]++;
+		//
+		return entry;
+	}
+
+	/**
+	 * <p>
+	 * Returns the index of the first host under its limit in a given lane,
+	 * starting from the one whose turn is next. It must be called holding
+	 * the lock.
+	 * </p>
+	 * @param lane Lane.
+	 * @return Index or -1 if none.
+	 */
+	private int nextReadyHost(int lane) {
+		final int count = lanes[lane].size();
+		//
+		HostQueue queue;
+		int index;
+		//
+		for (int i = 0; i < count; i++) {
+			index = (turns[lane] + i) % count;
+			queue = (HostQueue)lanes[lane].elementAt(index);
+			//
+			if (isUnderLimit(queue.host)) {
+				return index;
+			}
+		}
+		//
+		return -1;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether a given host can run one more object. It must be
+	 * called holding the lock.
+	 * </p>
+	 * @param host Host authority.
+	 * @return Under limit (true).
+	 */
+	private boolean isUnderLimit(String host) {
+		if (host.length() == 0) {
+			return true;
+		}
+		//
+		final int max = config.getMaxRequestsPerHost(host);
+		int[] count = (int[])running.get(host);
+		//
+		return max == 0 || count == null || count[0] < max;
+	}
+
+	/**
+	 * <p>
+	 * Marks a given host as running one less object, records the run and
+	 * wakes up a thread, in case there are queued objects waiting for it.
+	 * </p>
+	 * @param host Host authority.
+	 * @param runTime Time it took to run.
+	 * @param failed Whether it threw an exception.
+	 */
+	private void release(String host, long runTime, boolean failed) {
+		synchronized (lanes) {
+			int[] count = (int[])running.get(host);
+			//
+			if (--count[0] == 0) {
+				running.remove(host);
+			}
+			//
+			runTimes.add(runTime);
+			//
+			if (failed) {
+				failedCount++;
+			}
+			//
+			if (size > 0) {
+				lanes.notify();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes the oldest entry of the busiest host in the lowest non-empty
+	 * lane, as long as it is not higher than a given priority. It must be
+	 * called holding the lock.
+	 * </p>
+	 * @param priority Priority of the entry to be queued.
+	 * @return Entry or <code>null</code> if only higher lanes have entries.
+	 */
+	private Entry evict(int priority) {
+		int lane = lanes.length -1;
+		//
+		while (lanes[lane].isEmpty()) {
+			if (--lane < priority) {
+				return null;
+			}
+		}
+		//
+		int busiest = 0;
+		HostQueue queue = (HostQueue)lanes[lane].elementAt(0);
+		HostQueue candidate;
+		//
+		for (int i = 1; i < lanes[lane].size(); i++) {
+			candidate = (HostQueue)lanes[lane].elementAt(i);
+			//
+			if (candidate.entries.size() > queue.entries.size()) {
+				busiest = i;
+				queue = candidate;
+			}
+		}
+		//
+		Entry entry = (Entry)queue.entries.poll();
+		//
+		if (queue.entries.isEmpty()) {
+			removeHostQueue(lane, busiest);
+		}
+		//
+		size--;
+		//
+		return entry;
+	}
+
+	/**
+	 * <p>
+	 * Removes an empty host queue from a given lane, keeping the turn with
+	 * the same host. It must be called holding the lock.
+	 * </p>
+	 * @param lane Lane.
+	 * @param index Index of the host queue.
+	 */
+	private void removeHostQueue(int lane, int index) {
+		HostQueue queue = (HostQueue)lanes[lane].elementAt(index);
+		//
+		lanes[lane].removeElementAt(index);
+		laneHosts[lane].remove(queue.host);
+		//
+		if (turns[lane] > index) {
+			turns[lane]--;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Starts an extra thread, in case no thread is idle and the maximum pool
+	 * size is not reached. It must be called holding the lock.
+	 * </p>
+	 */
+	private void grow() {
+		if (idleCount == 0 && threadPool.size() < config.getMaxPoolSize()) {
+			addNewThreadToPool();
+		}
 	}
 	
 	/**
@@ -128,7 +815,7 @@ final class ThreadDispatcher implements Runnable {
 	 */
 	private void addNewThreadToPool() {
 		Thread thread =
-			new Thread(this, "Thread Dispatcher #" + (threadPool.size() +1));
+			new Thread(this, "Thread Dispatcher #" + (++threadCount));
 		//
 		threadPool.addElement(thread);
 		//
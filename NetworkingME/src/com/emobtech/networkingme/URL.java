@@ -38,7 +38,7 @@ import com.emobtech.networkingme.util.Util;
  * </a>
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class URL {
@@ -277,6 +277,19 @@ public final class URL {
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Returns the authority, which is the domain and port, in lower case.
+	 * </p>
+	 * <p>
+	 * e.g., "www.emobtech.com:80" from "http://www.EMobTech.com/page.html".
+	 * </p>
+	 * @return Authority.
+	 */
+	public String getAuthority() {
+		return getDomain().toLowerCase() + ':' + getPort();
+	}
+	
 	/**
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
@@ -0,0 +1,401 @@
+/* ConnectionPool.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * <p>
+ * This class implements a pool of persistent HTTP/1.1 connections, which are
+ * kept open after a response and reused by the next requests to the same
+ * host, saving the TCP and TLS handshakes.
+ * </p>
+ * <p>
+ * Requests use the pool once they are sent through a socket transport that
+ * holds it. Otherwise, they are sent through the platform's HTTP connection,
+ * which is opened and closed every time.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see SocketTransport#SocketTransport(ConnectionPool)
+ * @see HttpClient#setConnectionPool(ConnectionPool)
+ */
+public final class ConnectionPool {
+	/**
+	 * <p>
+	 * Default maximum number of idle connections per host.
+	 * </p>
+	 */
+	public static final int DEFAULT_MAX_IDLE = 2;
+
+	/**
+	 * <p>
+	 * Default maximum number of idle connections of all hosts.
+	 * </p>
+	 */
+	public static final int DEFAULT_MAX_TOTAL_IDLE = 5;
+
+	/**
+	 * <p>
+	 * Default idle timeout.
+	 * </p>
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 15000;
+
+	/**
+	 * <p>
+	 * Maximum number of idle connections per host.
+	 * </p>
+	 */
+	private int maxIdle;
+
+	/**
+	 * <p>
+	 * Maximum number of idle connections of all hosts.
+	 * </p>
+	 */
+	private int maxTotalIdle;
+
+	/**
+	 * <p>
+	 * Idle timeout.
+	 * </p>
+	 */
+	private long idleTimeout;
+
+	/**
+	 * <p>
+	 * Idle sockets of each host, by pool key, the most recent last.
+	 * </p>
+	 */
+	private Hashtable idle = new Hashtable(4);
+
+	/**
+	 * <p>
+	 * Creates a ConnectionPool with the default values.
+	 * </p>
+	 */
+	public ConnectionPool() {
+		this(DEFAULT_MAX_IDLE, DEFAULT_MAX_TOTAL_IDLE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * <p>
+	 * Creates a ConnectionPool that keeps up to the greater of maxIdle and
+	 * {@link #DEFAULT_MAX_TOTAL_IDLE} idle connections of all hosts.
+	 * </p>
+	 * @param maxIdle Maximum number of idle connections per host. Zero means
+	 *        connections are never kept.
+	 * @param idleTimeout Time, in milliseconds, an idle connection is kept.
+	 * @throws IllegalArgumentException Max idle must not be negative!
+	 * @throws IllegalArgumentException Idle timeout must be greater than
+	 *         zero!
+	 */
+	public ConnectionPool(int maxIdle, long idleTimeout) {
+		this(maxIdle, Math.max(maxIdle, DEFAULT_MAX_TOTAL_IDLE), idleTimeout);
+	}
+
+	/**
+	 * <p>
+	 * Creates a ConnectionPool.
+	 * </p>
+	 * @param maxIdle Maximum number of idle connections per host. Zero means
+	 *        connections are never kept.
+	 * @param maxTotalIdle Maximum number of idle connections of all hosts.
+	 *        The oldest ones are closed above it.
+	 * @param idleTimeout Time, in milliseconds, an idle connection is kept.
+	 * @throws IllegalArgumentException Max idle must not be negative!
+	 * @throws IllegalArgumentException Max total idle must not be negative!
+	 * @throws IllegalArgumentException Idle timeout must be greater than
+	 *         zero!
+	 */
+	public ConnectionPool(int maxIdle, int maxTotalIdle, long idleTimeout) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException(
+				"Max idle must not be negative!");
+		}
+		if (maxTotalIdle < 0) {
+			throw new IllegalArgumentException(
+				"Max total idle must not be negative!");
+		}
+		if (idleTimeout <= 0) {
+			throw new IllegalArgumentException(
+				"Idle timeout must be greater than zero!");
+		}
+		//
+		this.maxIdle = maxIdle;
+		this.maxTotalIdle = maxTotalIdle;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of idle connections per host.
+	 * </p>
+	 * @return Max idle.
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of idle connections of all hosts.
+	 * </p>
+	 * @return Max total idle.
+	 */
+	public int getMaxTotalIdle() {
+		return maxTotalIdle;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time, in milliseconds, an idle connection is kept.
+	 * </p>
+	 * @return Idle timeout.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of idle connections of all hosts.
+	 * </p>
+	 * @return Count.
+	 */
+	public synchronized int getIdleCount() {
+		int count = 0;
+		Enumeration sockets = idle.elements();
+		//
+		while (sockets.hasMoreElements()) {
+			count += ((Vector)sockets.nextElement()).size();
+		}
+		//
+		return count;
+	}
+
+	/**
+	 * <p>
+	 * Closes all idle connections.
+	 * </p>
+	 */
+	public void evictAll() {
+		Vector evicted = new Vector();
+		//
+		synchronized (this) {
+			Enumeration sockets = idle.elements();
+			//
+			while (sockets.hasMoreElements()) {
+				Vector queue = (Vector)sockets.nextElement();
+				//
+				for (int i = 0; i < queue.size(); i++) {
+					evicted.addElement(queue.elementAt(i));
+				}
+			}
+			//
+			idle.clear();
+		}
+		//
+		close(evicted);
+	}
+
+	/**
+	 * <p>
+	 * Takes the most recent idle socket of a given key, closing the ones that
+	 * became unusable and the expired ones of all keys.
+	 * </p>
+	 * @param key Pool key.
+	 * @return Socket or <code>null</code> if none.
+	 */
+	HttpSocket acquire(String key) {
+		final long now = System.currentTimeMillis();
+		HttpSocket socket = null;
+		Vector evicted = new Vector(2);
+		//
+		synchronized (this) {
+			evictExpired(now, evicted);
+			//
+			Vector queue = (Vector)idle.get(key);
+			//
+			while (queue != null && !queue.isEmpty()) {
+				HttpSocket candidate = (HttpSocket)queue.lastElement();
+				queue.removeElementAt(queue.size() -1);
+				//
+				if (candidate.isUsable()) {
+					socket = candidate;
+					//
+					break;
+				}
+				//
+				evicted.addElement(candidate);
+			}
+			//
+			if (queue != null && queue.isEmpty()) {
+				idle.remove(key);
+			}
+		}
+		//
+		close(evicted);
+		//
+		return socket;
+	}
+
+	/**
+	 * <p>
+	 * Gives back a socket to be reused, closing the expired idle ones of all
+	 * keys and the oldest ones above the maximums.
+	 * </p>
+	 * @param socket Socket.
+	 */
+	void release(HttpSocket socket) {
+		final long now = System.currentTimeMillis();
+		Vector evicted = new Vector(2);
+		//
+		synchronized (this) {
+			evictExpired(now, evicted);
+			//
+			if (maxIdle > 0 && maxTotalIdle > 0 && !socket.isClosed()) {
+				Vector queue = (Vector)idle.get(socket.getKey());
+				//
+				if (queue == null) {
+					queue = new Vector(maxIdle);
+					idle.put(socket.getKey(), queue);
+				}
+				//
+				socket.setIdleSince(now);
+				queue.addElement(socket);
+				//
+				while (queue.size() > maxIdle) {
+					evicted.addElement(queue.elementAt(0));
+					queue.removeElementAt(0);
+				}
+				//
+				evictOldest(evicted);
+				//
+				socket = null;
+			}
+		}
+		//
+		if (socket != null) {
+			socket.close();
+		}
+		//
+		close(evicted);
+	}
+
+	/**
+	 * <p>
+	 * Removes the idle sockets of all keys that expired or were closed.
+	 * </p>
+	 * @param now Current time.
+	 * @param evicted List the removed sockets are added to.
+	 */
+	private void evictExpired(long now, Vector evicted) {
+		Vector emptyKeys = null;
+		Enumeration keys = idle.keys();
+		//
+		while (keys.hasMoreElements()) {
+			Object key = keys.nextElement();
+			Vector queue = (Vector)idle.get(key);
+			//
+			for (int i = queue.size() -1; i >= 0; i--) {
+				HttpSocket socket = (HttpSocket)queue.elementAt(i);
+				//
+				if (now - socket.getIdleSince() >= idleTimeout
+						|| socket.isClosed()) {
+					evicted.addElement(socket);
+					queue.removeElementAt(i);
+				}
+			}
+			//
+			if (queue.isEmpty()) {
+				if (emptyKeys == null) {
+					emptyKeys = new Vector(2);
+				}
+				//
+				emptyKeys.addElement(key);
+			}
+		}
+		//
+		for (int i = 0; emptyKeys != null && i < emptyKeys.size(); i++) {
+			idle.remove(emptyKeys.elementAt(i));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes the oldest idle sockets of all keys above the maximum.
+	 * </p>
+	 * @param evicted List the removed sockets are added to.
+	 */
+	private void evictOldest(Vector evicted) {
+		int count = getIdleCount();
+		//
+		while (count > maxTotalIdle) {
+			Object oldestKey = null;
+			long oldestSince = Long.MAX_VALUE;
+			Enumeration keys = idle.keys();
+			//
+			while (keys.hasMoreElements()) {
+				Object key = keys.nextElement();
+				HttpSocket socket =
+					(HttpSocket)((Vector)idle.get(key)).elementAt(0);
+				//
+				if (socket.getIdleSince() < oldestSince) {
+					oldestKey = key;
+					oldestSince = socket.getIdleSince();
+				}
+			}
+			//
+			Vector queue = (Vector)idle.get(oldestKey);
+			//
+			evicted.addElement(queue.elementAt(0));
+			queue.removeElementAt(0);
+			//
+			if (queue.isEmpty()) {
+				idle.remove(oldestKey);
+			}
+			//
+			count--;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes a list of sockets.
+	 * </p>
+	 * @param sockets Sockets. It can be <code>null</code>.
+	 */
+	private static void close(Vector sockets) {
+		if (sockets != null) {
+			for (int i = 0; i < sockets.size(); i++) {
+				((HttpSocket)sockets.elementAt(i)).close();
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/* ConnectorTransport.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This class implements a transport that opens the platform's HTTP
+ * connection, through {@link Connector}. Every request opens and closes its
+ * own connection.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class ConnectorTransport implements Transport {
+	/**
+	 * <p>
+	 * Creates a ConnectorTransport.
+	 * </p>
+	 */
+	public ConnectorTransport() {
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.Transport#open(com.emobtech.networkingme.URL)
+	 */
+	public HttpConnection open(URL url) throws IOException {
+		return (HttpConnection)Connector.open(
+			url.toEncodedString(), Connector.READ_WRITE, true);
+	}
+}
@@ -0,0 +1,436 @@
+/* DnsCache.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * <p>
+ * This class implements a cache of host name resolutions, so a socket
+ * transport connects straight to the address of a host it already knows,
+ * saving the platform's name lookup.
+ * </p>
+ * <p>
+ * MIDP has no API to resolve a host name. The cache then learns the address
+ * of each host from the first connection to it, unless a resolver is set,
+ * which resolves it ahead. Resolutions expire after the TTL, and failures of
+ * the resolver are also kept, for the negative TTL, so a host that does not
+ * exist fails right away. Once full, the oldest resolution is evicted.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see SocketTransport#setDnsCache(DnsCache)
+ */
+public final class DnsCache {
+	/**
+	 * <p>
+	 * This interface represents a resolver of host names.
+	 * </p>
+	 */
+	public static interface Resolver {
+		/**
+		 * <p>
+		 * Resolves a given host name into its address.
+		 * </p>
+		 * @param host Host name.
+		 * @return Address, e.g. "192.168.0.1".
+		 * @throws IOException If the host is not found.
+		 */
+		String resolve(String host) throws IOException;
+	}
+
+	/**
+	 * <p>
+	 * This class represents the resolution of a host.
+	 * </p>
+	 */
+	private static final class Entry {
+		/**
+		 * <p>
+		 * Address. <code>null</code> means a failure.
+		 * </p>
+		 */
+		private String address;
+
+		/**
+		 * <p>
+		 * Failure message.
+		 * </p>
+		 */
+		private String failure;
+
+		/**
+		 * <p>
+		 * Expiration time.
+		 * </p>
+		 */
+		private long expiration;
+	}
+
+	/**
+	 * <p>
+	 * Default TTL.
+	 * </p>
+	 */
+	public static final long DEFAULT_TTL = 300000;
+
+	/**
+	 * <p>
+	 * Default negative TTL.
+	 * </p>
+	 */
+	public static final long DEFAULT_NEGATIVE_TTL = 30000;
+
+	/**
+	 * <p>
+	 * Default maximum number of entries.
+	 * </p>
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 32;
+
+	/**
+	 * <p>
+	 * Resolver.
+	 * </p>
+	 */
+	private Resolver resolver;
+
+	/**
+	 * <p>
+	 * TTL.
+	 * </p>
+	 */
+	private long ttl = DEFAULT_TTL;
+
+	/**
+	 * <p>
+	 * Negative TTL.
+	 * </p>
+	 */
+	private long negativeTtl = DEFAULT_NEGATIVE_TTL;
+
+	/**
+	 * <p>
+	 * Maximum number of entries.
+	 * </p>
+	 */
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	/**
+	 * <p>
+	 * Entries by host.
+	 * </p>
+	 */
+	private Hashtable entries = new Hashtable();
+
+	/**
+	 * <p>
+	 * Hosts from the oldest to the newest entry.
+	 * </p>
+	 */
+	private Vector hosts = new Vector();
+
+	/**
+	 * <p>
+	 * Creates a DnsCache that learns the addresses from the connections.
+	 * </p>
+	 */
+	public DnsCache() {
+		this(null);
+	}
+
+	/**
+	 * <p>
+	 * Creates a DnsCache with a given resolver.
+	 * </p>
+	 * @param resolver Resolver. <code>null</code> means the addresses are
+	 *        learned from the connections.
+	 * @see HostsResolver
+	 */
+	public DnsCache(Resolver resolver) {
+		this.resolver = resolver;
+	}
+
+	/**
+	 * <p>
+	 * Returns the resolver.
+	 * </p>
+	 * @return Resolver.
+	 */
+	public Resolver getResolver() {
+		return resolver;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time, in milliseconds, a resolution is kept.
+	 * </p>
+	 * @return TTL.
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * <p>
+	 * Sets the time, in milliseconds, a resolution is kept. Its default is
+	 * {@link #DEFAULT_TTL}.
+	 * </p>
+	 * @param ttl TTL.
+	 * @throws IllegalArgumentException TTL must not be negative!
+	 */
+	public void setTtl(long ttl) {
+		if (ttl < 0) {
+			throw new IllegalArgumentException("TTL must not be negative!");
+		}
+		//
+		this.ttl = ttl;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time, in milliseconds, a failed resolution is kept.
+	 * </p>
+	 * @return Negative TTL.
+	 */
+	public long getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	/**
+	 * <p>
+	 * Sets the time, in milliseconds, a failed resolution is kept. Zero
+	 * means failures are not kept. Its default is
+	 * {@link #DEFAULT_NEGATIVE_TTL}.
+	 * </p>
+	 * @param negativeTtl Negative TTL.
+	 * @throws IllegalArgumentException Negative TTL must not be negative!
+	 */
+	public void setNegativeTtl(long negativeTtl) {
+		if (negativeTtl < 0) {
+			throw new IllegalArgumentException(
+				"Negative TTL must not be negative!");
+		}
+		//
+		this.negativeTtl = negativeTtl;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum number of entries.
+	 * </p>
+	 * @return Maximum entries.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum number of entries. Its default is
+	 * {@link #DEFAULT_MAX_ENTRIES}.
+	 * </p>
+	 * @param maxEntries Maximum entries.
+	 * @throws IllegalArgumentException Maximum entries must be greater than
+	 *         zero!
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException(
+				"Maximum entries must be greater than zero!");
+		}
+		//
+		this.maxEntries = maxEntries;
+		//
+		while (hosts.size() > maxEntries) {
+			entries.remove(hosts.elementAt(0));
+			hosts.removeElementAt(0);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of entries, including the expired ones not evicted
+	 * yet.
+	 * </p>
+	 * @return Size.
+	 */
+	public synchronized int getSize() {
+		return hosts.size();
+	}
+
+	/**
+	 * <p>
+	 * Returns the address of a given host, resolving it if it is not
+	 * cached and there is a resolver. An address is returned as it is.
+	 * </p>
+	 * @param host Host name.
+	 * @return Address or <code>null</code> if unknown.
+	 * @throws IOException If the host is not found.
+	 * @throws IllegalArgumentException Host null or empty!
+	 */
+	public String lookup(String host) throws IOException {
+		if (host == null || host.length() == 0) {
+			throw new IllegalArgumentException("Host null or empty!");
+		}
+		//
+		if (isAddress(host)) {
+			return host;
+		}
+		//
+		host = host.toLowerCase();
+		//
+		synchronized (this) {
+			Entry entry = (Entry)entries.get(host);
+			//
+			if (entry != null) {
+				if (System.currentTimeMillis() < entry.expiration) {
+					if (entry.address == null) {
+						throw new IOException(entry.failure);
+					}
+					//
+					return entry.address;
+				}
+				//
+				remove(host);
+			}
+		}
+		//
+		if (resolver == null) {
+			return null;
+		}
+		//
+		String address;
+		//
+		try {
+			address = resolver.resolve(host);
+		} catch (IOException e) {
+			if (negativeTtl > 0) {
+				put(host, null, e.getMessage(), negativeTtl);
+			}
+			//
+			throw e;
+		}
+		//
+		if (address != null) {
+			put(host, address, null, ttl);
+		}
+		//
+		return address;
+	}
+
+	/**
+	 * <p>
+	 * Removes the entry of a given host, e.g. once its address stops
+	 * answering.
+	 * </p>
+	 * @param host Host name.
+	 */
+	public synchronized void remove(String host) {
+		host = host.toLowerCase();
+		//
+		if (entries.remove(host) != null) {
+			hosts.removeElement(host);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes all entries.
+	 * </p>
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hosts.removeAllElements();
+	}
+
+	/**
+	 * <p>
+	 * Keeps the address of a given host learned from a connection.
+	 * </p>
+	 * @param host Host name.
+	 * @param address Address.
+	 */
+	void put(String host, String address) {
+		if (!isAddress(host) && address != null && address.length() > 0) {
+			put(host.toLowerCase(), address, null, ttl);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Keeps the resolution of a given host, evicting the oldest entry in
+	 * case it is full.
+	 * </p>
+	 * @param host Host name.
+	 * @param address Address. <code>null</code> means a failure.
+	 * @param failure Failure message.
+	 * @param ttl TTL.
+	 */
+	private synchronized void put(String host, String address, String failure,
+		long ttl) {
+		Entry entry = new Entry();
+		entry.address = address;
+		entry.failure = failure != null ? failure : "Host not found!";
+		entry.expiration = System.currentTimeMillis() + ttl;
+		//
+		if (entries.put(host, entry) != null) {
+			hosts.removeElement(host);
+		}
+		//
+		hosts.addElement(host);
+		//
+		while (hosts.size() > maxEntries) {
+			entries.remove(hosts.elementAt(0));
+			hosts.removeElementAt(0);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns whether a given host is already an address, either IPv4 or
+	 * IPv6.
+	 * </p>
+	 * @param host Host.
+	 * @return Address (true).
+	 */
+	private static boolean isAddress(String host) {
+		if (host.indexOf(':') != -1) {
+			return true;
+		}
+		//
+		for (int i = host.length() -1; i >= 0; i--) {
+			char c = host.charAt(i);
+			//
+			if (c != '.' && (c < '0' || c > '9')) {
+				return false;
+			}
+		}
+		//
+		return true;
+	}
+}
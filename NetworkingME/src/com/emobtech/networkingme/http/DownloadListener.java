@@ -0,0 +1,183 @@
+/* DownloadListener.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.emobtech.networkingme.Request;
+import com.emobtech.networkingme.Response;
+import com.emobtech.networkingme.StreamListener;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class represents a listener to request events, which downloads the
+ * content of a successful response into a sink, i.e. an output stream or a
+ * {@link DownloadStore}. The content flows from the connection to the sink
+ * through a single buffer, reused by all downloads of the listener, so a
+ * large content never has to fit in memory. Only the response's status,
+ * header and number of bytes downloaded are delivered.
+ * </p>
+ * <p>
+ * A listener runs one download at a time. Parallel downloads wait for each
+ * other in case they share a same listener.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see FileDownloadStore
+ * @see RecordDownloadStore
+ */
+public abstract class DownloadListener extends StreamListener {
+	/**
+	 * <p>
+	 * Default size of the buffer.
+	 * </p>
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+	/**
+	 * <p>
+	 * Output stream sink.
+	 * </p>
+	 */
+	private OutputStream out;
+
+	/**
+	 * <p>
+	 * Store sink.
+	 * </p>
+	 */
+	private DownloadStore store;
+
+	/**
+	 * <p>
+	 * Buffer.
+	 * </p>
+	 */
+	private byte[] buffer;
+
+	/**
+	 * <p>
+	 * Creates a DownloadListener that writes to a given output stream. The
+	 * stream is not closed.
+	 * </p>
+	 * @param out Output stream.
+	 * @throws IllegalArgumentException Output stream null!
+	 */
+	public DownloadListener(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * <p>
+	 * Creates a DownloadListener that writes to a given output stream,
+	 * through a buffer of a given size. The stream is not closed.
+	 * </p>
+	 * @param out Output stream.
+	 * @param bufferSize Buffer size.
+	 * @throws IllegalArgumentException Output stream null or buffer size
+	 *         invalid!
+	 */
+	public DownloadListener(OutputStream out, int bufferSize) {
+		if (out == null || bufferSize <= 0) {
+			throw new IllegalArgumentException(
+				"Output stream null or buffer size invalid!");
+		}
+		//
+		this.out = out;
+		buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * <p>
+	 * Creates a DownloadListener that writes to a given store, replacing
+	 * its content.
+	 * </p>
+	 * @param store Store.
+	 * @throws IllegalArgumentException Store null!
+	 */
+	public DownloadListener(DownloadStore store) {
+		this(store, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * <p>
+	 * Creates a DownloadListener that writes to a given store, replacing
+	 * its content, through a buffer of a given size.
+	 * </p>
+	 * @param store Store.
+	 * @param bufferSize Buffer size.
+	 * @throws IllegalArgumentException Store null or buffer size invalid!
+	 */
+	public DownloadListener(DownloadStore store, int bufferSize) {
+		if (store == null || bufferSize <= 0) {
+			throw new IllegalArgumentException(
+				"Store null or buffer size invalid!");
+		}
+		//
+		this.store = store;
+		buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * <p>
+	 * Called when the content is downloaded, before the connection is
+	 * closed.
+	 * </p>
+	 * @param response Response, without payload.
+	 * @param length Number of bytes downloaded.
+	 */
+	public abstract void onDownload(Response response, long length);
+
+	/**
+	 * @see com.emobtech.networkingme.StreamListener#onStream(com.emobtech.networkingme.Request, com.emobtech.networkingme.Response, java.io.InputStream)
+	 */
+	public final void onStream(Request request, Response response,
+		InputStream in) throws IOException {
+		long length;
+		//
+		synchronized (buffer) {
+			if (store != null) {
+				store.reset(null);
+				//
+				OutputStream sink = store.openOutputStream();
+				//
+				try {
+					length = Util.copyBytes(in, sink, -1, buffer);
+				} finally {
+					sink.close();
+				}
+			} else {
+				length = Util.copyBytes(in, out, -1, buffer);
+				//
+				out.flush();
+			}
+		}
+		//
+		onDownload(response, length);
+	}
+}
@@ -0,0 +1,104 @@
+/* DownloadStore.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * This interface represents the local storage of a resumable download. It
+ * keeps the bytes received so far, along with the validator of the entity
+ * they belong to, so the download can continue where it stopped, even after
+ * the application is restarted.
+ * </p>
+ * <p>
+ * The following stores are available:<br/>
+ * <br/>- {@link RecordDownloadStore}: a record store (RMS);
+ * <br/>- {@link FileDownloadStore}: a file (JSR-75).
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see ResumableDownload
+ */
+public interface DownloadStore {
+	/**
+	 * <p>
+	 * Returns the number of bytes stored.
+	 * </p>
+	 * @return Length.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	long getLength() throws IOException;
+
+	/**
+	 * <p>
+	 * Returns the validator of the entity whose bytes are stored, i.e. its
+	 * ETag or last modification date. <code>null</code> is returned in case
+	 * there is none.
+	 * </p>
+	 * @return Validator.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	String getValidator() throws IOException;
+
+	/**
+	 * <p>
+	 * Discards all bytes stored and sets the validator of the entity whose
+	 * bytes are about to be stored.
+	 * </p>
+	 * @param validator Validator. It can be <code>null</code>.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void reset(String validator) throws IOException;
+
+	/**
+	 * <p>
+	 * Opens a stream that appends bytes to the ones stored. The length is
+	 * updated as they are written, at the latest once it is closed.
+	 * </p>
+	 * @return Output stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	OutputStream openOutputStream() throws IOException;
+
+	/**
+	 * <p>
+	 * Opens a stream that reads the bytes stored.
+	 * </p>
+	 * @return Input stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	InputStream openInputStream() throws IOException;
+
+	/**
+	 * <p>
+	 * Deletes the store, with all bytes stored.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void delete() throws IOException;
+}
@@ -0,0 +1,274 @@
+/* FileDownloadStore.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.file.FileConnection;
+
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a download store kept in a file, through the File
+ * Connection API (JSR-75). The bytes are written to the file itself, whose
+ * size is the length, and the validator to a file next to it, with the
+ * ".state" extension.
+ * </p>
+ * <p>
+ * <strong>Important:</strong> The platform must support JSR-75.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class FileDownloadStore implements DownloadStore {
+	/**
+	 * <p>
+	 * Extension of the file with the validator.
+	 * </p>
+	 */
+	private static final String STATE_EXTENSION = ".state";
+
+	/**
+	 * <p>
+	 * URL of the file, e.g. "file:///E:/maps/tiles.bin".
+	 * </p>
+	 */
+	private String url;
+
+	/**
+	 * <p>
+	 * Creates a FileDownloadStore.
+	 * </p>
+	 * @param url URL of the file, e.g. "file:///E:/maps/tiles.bin".
+	 * @throws IllegalArgumentException URL null or empty!
+	 */
+	public FileDownloadStore(String url) {
+		if (Util.isEmptyString(url)) {
+			throw new IllegalArgumentException("URL null or empty!");
+		}
+		//
+		this.url = url;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#getLength()
+	 */
+	public synchronized long getLength() throws IOException {
+		FileConnection file = open(url);
+		//
+		try {
+			return file.exists() ? file.fileSize() : 0;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#getValidator()
+	 */
+	public synchronized String getValidator() throws IOException {
+		FileConnection file = open(url + STATE_EXTENSION);
+		//
+		try {
+			if (!file.exists()) {
+				return null;
+			}
+			//
+			DataInputStream in = file.openDataInputStream();
+			//
+			try {
+				String validator = in.readUTF();
+				//
+				return validator.length() > 0 ? validator : null;
+			} finally {
+				in.close();
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#reset(java.lang.String)
+	 */
+	public synchronized void reset(String validator) throws IOException {
+		FileConnection file = open(url);
+		//
+		try {
+			if (file.exists()) {
+				file.truncate(0);
+			} else {
+				file.create();
+			}
+		} finally {
+			file.close();
+		}
+		//
+		file = open(url + STATE_EXTENSION);
+		//
+		try {
+			if (file.exists()) {
+				file.truncate(0);
+			} else {
+				file.create();
+			}
+			//
+			DataOutputStream out = file.openDataOutputStream();
+			//
+			try {
+				out.writeUTF(validator != null ? validator : "");
+			} finally {
+				out.close();
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#openOutputStream()
+	 */
+	public synchronized OutputStream openOutputStream() throws IOException {
+		final FileConnection file = open(url);
+		//
+		try {
+			if (!file.exists()) {
+				file.create();
+			}
+			//
+			final OutputStream out = file.openOutputStream(file.fileSize());
+			//
+			return new OutputStream() {
+				public void write(int b) throws IOException {
+					out.write(b);
+				}
+
+				public void write(byte[] b, int off, int len)
+					throws IOException {
+					out.write(b, off, len);
+				}
+
+				public void flush() throws IOException {
+					out.flush();
+				}
+
+				public void close() throws IOException {
+					try {
+						out.close();
+					} finally {
+						file.close();
+					}
+				}
+			};
+		} catch (IOException e) {
+			file.close();
+			//
+			throw e;
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#openInputStream()
+	 */
+	public synchronized InputStream openInputStream() throws IOException {
+		final FileConnection file = open(url);
+		//
+		try {
+			final InputStream in = file.openInputStream();
+			//
+			return new InputStream() {
+				public int read() throws IOException {
+					return in.read();
+				}
+
+				public int read(byte[] b, int off, int len)
+					throws IOException {
+					return in.read(b, off, len);
+				}
+
+				public int available() throws IOException {
+					return in.available();
+				}
+
+				public void close() throws IOException {
+					try {
+						in.close();
+					} finally {
+						file.close();
+					}
+				}
+			};
+		} catch (IOException e) {
+			file.close();
+			//
+			throw e;
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#delete()
+	 */
+	public synchronized void delete() throws IOException {
+		delete(url);
+		delete(url + STATE_EXTENSION);
+	}
+
+	/**
+	 * <p>
+	 * Opens the file of a given URL.
+	 * </p>
+	 * @param url URL.
+	 * @return File.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private static FileConnection open(String url) throws IOException {
+		return (FileConnection)Connector.open(url, Connector.READ_WRITE);
+	}
+
+	/**
+	 * <p>
+	 * Deletes the file of a given URL, if it exists.
+	 * </p>
+	 * @param url URL.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private static void delete(String url) throws IOException {
+		FileConnection file = open(url);
+		//
+		try {
+			if (file.exists()) {
+				file.delete();
+			}
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/* HostsResolver.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+/**
+ * <p>
+ * This class implements a resolver that answers from a fixed table of host
+ * names and addresses, like a hosts file, e.g. for tests or to pin the
+ * address of a known host.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see DnsCache#DnsCache(DnsCache.Resolver)
+ */
+public final class HostsResolver implements DnsCache.Resolver {
+	/**
+	 * <p>
+	 * Addresses by host.
+	 * </p>
+	 */
+	private Hashtable addresses = new Hashtable();
+
+	/**
+	 * <p>
+	 * Number of resolutions.
+	 * </p>
+	 */
+	private int resolveCount;
+
+	/**
+	 * <p>
+	 * Creates a HostsResolver with no hosts.
+	 * </p>
+	 */
+	public HostsResolver() {
+	}
+
+	/**
+	 * <p>
+	 * Sets the address of a given host.
+	 * </p>
+	 * @param host Host name.
+	 * @param address Address, e.g. "192.168.0.1".
+	 * @throws IllegalArgumentException Host or address null or empty!
+	 */
+	public void setAddress(String host, String address) {
+		if (host == null || host.length() == 0
+				|| address == null || address.length() == 0) {
+			throw new IllegalArgumentException(
+				"Host or address null or empty!");
+		}
+		//
+		addresses.put(host.toLowerCase(), address);
+	}
+
+	/**
+	 * <p>
+	 * Removes the address of a given host.
+	 * </p>
+	 * @param host Host name.
+	 */
+	public void removeAddress(String host) {
+		addresses.remove(host.toLowerCase());
+	}
+
+	/**
+	 * <p>
+	 * Returns how many times a host was resolved.
+	 * </p>
+	 * @return Count.
+	 */
+	public synchronized int getResolveCount() {
+		return resolveCount;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DnsCache.Resolver#resolve(java.lang.String)
+	 */
+	public String resolve(String host) throws IOException {
+		synchronized (this) {
+			resolveCount++;
+		}
+		//
+		String address = (String)addresses.get(host.toLowerCase());
+		//
+		if (address == null) {
+			throw new IOException("Host not found: " + host);
+		}
+		//
+		return address;
+	}
+}
@@ -0,0 +1,894 @@
+/* Hpack.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * <p>
+ * This class implements HPACK, the compression of HTTP/2 header fields, as
+ * of RFC 7541. Each connection has an encoder, for the request header
+ * fields, and a decoder, for the response ones, whose dynamic tables must
+ * stay in sync with the peer's. So, header blocks must be encoded in the
+ * same order they are sent and decoded in the same order they are received.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see Http2Session
+ */
+final class Hpack {
+	/**
+	 * <p>
+	 * This class implements the encoder of header blocks. A field already in
+	 * a table is sent as its index. Otherwise, it is sent as a literal, which
+	 * is added to the dynamic table, unless its value changes too often to
+	 * be worth it, e.g. the path, or it is sensitive, e.g. the credentials.
+	 * Strings are Huffman coded whenever it makes them shorter.
+	 * </p>
+	 */
+	static final class Encoder {
+		/**
+		 * <p>
+		 * Dynamic table.
+		 * </p>
+		 */
+		private Table table = new Table(DEFAULT_TABLE_SIZE);
+
+		/**
+		 * <p>
+		 * Table size to be signaled in the next header block. -1 means
+		 * none.
+		 * </p>
+		 */
+		private int pendingTableSize = -1;
+
+		/**
+		 * <p>
+		 * Creates an Encoder.
+		 * </p>
+		 */
+		Encoder() {
+		}
+
+		/**
+		 * <p>
+		 * Sets the maximum size of the dynamic table allowed by the peer. The
+		 * table never grows above its default size, though.
+		 * </p>
+		 * @param maxSize Maximum size.
+		 */
+		void setMaxTableSize(int maxSize) {
+			maxSize = Math.min(maxSize, DEFAULT_TABLE_SIZE);
+			//
+			if (maxSize != table.maxSize) {
+				table.resize(maxSize);
+				//
+				pendingTableSize = maxSize;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Encodes a list of header fields into a header block.
+		 * </p>
+		 * @param names Lower case names.
+		 * @param values Values.
+		 * @return Header block.
+		 */
+		byte[] encode(Vector names, Vector values) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+			//
+			if (pendingTableSize != -1) {
+				writeInt(out, 0x20, 5, pendingTableSize);
+				//
+				pendingTableSize = -1;
+			}
+			//
+			for (int i = 0; i < names.size(); i++) {
+				encode(
+					out,
+					(String)names.elementAt(i),
+					(String)values.elementAt(i));
+			}
+			//
+			return out.toByteArray();
+		}
+
+		/**
+		 * <p>
+		 * Encodes a header field.
+		 * </p>
+		 * @param out Header block.
+		 * @param name Lower case name.
+		 * @param value Value.
+		 */
+		private void encode(ByteArrayOutputStream out, String name,
+			String value) {
+			int nameIndex = 0;
+			//
+			for (int i = 0; i < STATIC_TABLE.length; i++) {
+				if (STATIC_TABLE[i][0].equals(name)) {
+					if (STATIC_TABLE[i][1].equals(value)) {
+						writeInt(out, 0x80, 7, i +1);
+						//
+						return;
+					}
+					//
+					if (nameIndex == 0) {
+						nameIndex = i +1;
+					}
+				}
+			}
+			//
+			for (int i = 0; i < table.getLength(); i++) {
+				if (table.getName(i).equals(name)) {
+					if (table.getValue(i).equals(value)) {
+						writeInt(out, 0x80, 7, STATIC_TABLE.length +1 + i);
+						//
+						return;
+					}
+					//
+					if (nameIndex == 0) {
+						nameIndex = STATIC_TABLE.length +1 + i;
+					}
+				}
+			}
+			//
+			if (isSensitive(name)) {
+				writeInt(out, 0x10, 4, nameIndex);
+			} else if (isVolatile(name)) {
+				writeInt(out, 0x00, 4, nameIndex);
+			} else {
+				writeInt(out, 0x40, 6, nameIndex);
+				//
+				table.add(name, value);
+			}
+			//
+			if (nameIndex == 0) {
+				writeString(out, name);
+			}
+			//
+			writeString(out, value);
+		}
+
+		/**
+		 * <p>
+		 * Returns whether a given field is sensitive, so it must never be
+		 * indexed, not even by intermediaries.
+		 * </p>
+		 * @param name Lower case name.
+		 * @return Sensitive (true).
+		 */
+		private static boolean isSensitive(String name) {
+			return "authorization".equals(name)
+				|| "proxy-authorization".equals(name);
+		}
+
+		/**
+		 * <p>
+		 * Returns whether the value of a given field changes too often to be
+		 * worth indexing.
+		 * </p>
+		 * @param name Lower case name.
+		 * @return Volatile (true).
+		 */
+		private static boolean isVolatile(String name) {
+			return ":path".equals(name)
+				|| "content-length".equals(name)
+				|| "range".equals(name)
+				|| "if-range".equals(name)
+				|| "if-none-match".equals(name)
+				|| "if-modified-since".equals(name);
+		}
+	}
+
+	/**
+	 * <p>
+	 * This class implements the decoder of header blocks.
+	 * </p>
+	 */
+	static final class Decoder {
+		/**
+		 * <p>
+		 * Dynamic table.
+		 * </p>
+		 */
+		private Table table = new Table(DEFAULT_TABLE_SIZE);
+
+		/**
+		 * <p>
+		 * Header block being decoded.
+		 * </p>
+		 */
+		private byte[] block;
+
+		/**
+		 * <p>
+		 * Position in the header block.
+		 * </p>
+		 */
+		private int position;
+
+		/**
+		 * <p>
+		 * End of the header block.
+		 * </p>
+		 */
+		private int end;
+
+		/**
+		 * <p>
+		 * Creates a Decoder.
+		 * </p>
+		 */
+		Decoder() {
+		}
+
+		/**
+		 * <p>
+		 * Decodes a header block into a list of header fields.
+		 * </p>
+		 * @param block Header block.
+		 * @param off Offset.
+		 * @param len Length.
+		 * @param names Names, to which the decoded ones are added.
+		 * @param values Values, to which the decoded ones are added.
+		 * @throws IOException If the header block is invalid.
+		 */
+		void decode(byte[] block, int off, int len, Vector names,
+			Vector values) throws IOException {
+			this.block = block;
+			position = off;
+			end = off + len;
+			//
+			try {
+				while (position < end) {
+					int b = block[position] & 0xFF;
+					String name;
+					String value;
+					//
+					if ((b & 0x80) != 0) {
+						int index = readInt(7);
+						//
+						name = getName(index);
+						value = getValue(index);
+					} else if ((b & 0xE0) == 0x20) {
+						int size = readInt(5);
+						//
+						if (size > DEFAULT_TABLE_SIZE) {
+							throw new IOException("Invalid table size!");
+						}
+						//
+						table.resize(size);
+						//
+						continue;
+					} else {
+						final boolean indexed = (b & 0xC0) == 0x40;
+						int index = readInt(indexed ? 6 : 4);
+						//
+						name = index != 0 ? getName(index) : readString();
+						value = readString();
+						//
+						if (indexed) {
+							table.add(name, value);
+						}
+					}
+					//
+					names.addElement(name);
+					values.addElement(value);
+				}
+			} finally {
+				this.block = null;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Reads an integer with a given prefix.
+		 * </p>
+		 * @param prefix Number of bits of the prefix.
+		 * @return Integer.
+		 * @throws IOException If it is invalid.
+		 */
+		private int readInt(int prefix) throws IOException {
+			final int max = (1 << prefix) -1;
+			int value = block[position++] & max;
+			//
+			if (value < max) {
+				return value;
+			}
+			//
+			for (int shift = 0; ; shift += 7) {
+				if (position == end || shift > 21) {
+					throw new IOException("Invalid header block!");
+				}
+				//
+				int b = block[position++] & 0xFF;
+				value += (b & 0x7F) << shift;
+				//
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Reads a string, either Huffman coded or not.
+		 * </p>
+		 * @return String.
+		 * @throws IOException If it is invalid.
+		 */
+		private String readString() throws IOException {
+			if (position == end) {
+				throw new IOException("Invalid header block!");
+			}
+			//
+			final boolean huffman = (block[position] & 0x80) != 0;
+			final int length = readInt(7);
+			//
+			if (length > end - position) {
+				throw new IOException("Invalid header block!");
+			}
+			//
+			String value =
+				huffman
+					? decodeHuffman(block, position, length)
+					: decodeLatin1(block, position, length);
+			position += length;
+			//
+			return value;
+		}
+
+		/**
+		 * <p>
+		 * Returns the name of the field at a given index of the tables.
+		 * </p>
+		 * @param index Index.
+		 * @return Name.
+		 * @throws IOException If the index is invalid.
+		 */
+		private String getName(int index) throws IOException {
+			checkIndex(index);
+			//
+			return index <= STATIC_TABLE.length
+				? STATIC_TABLE[index -1][0]
+				: table.getName(index - STATIC_TABLE.length -1);
+		}
+
+		/**
+		 * <p>
+		 * Returns the value of the field at a given index of the tables.
+		 * </p>
+		 * @param index Index.
+		 * @return Value.
+		 * @throws IOException If the index is invalid.
+		 */
+		private String getValue(int index) throws IOException {
+			checkIndex(index);
+			//
+			return index <= STATIC_TABLE.length
+				? STATIC_TABLE[index -1][1]
+				: table.getValue(index - STATIC_TABLE.length -1);
+		}
+
+		/**
+		 * <p>
+		 * Checks whether a given index is in the tables.
+		 * </p>
+		 * @param index Index.
+		 * @throws IOException If it is not.
+		 */
+		private void checkIndex(int index) throws IOException {
+			if (index <= 0
+					|| index > STATIC_TABLE.length + table.getLength()) {
+				throw new IOException("Invalid header index!");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * This class implements a dynamic table, whose newest entry has the
+	 * lowest index. The oldest ones are evicted once the table exceeds its
+	 * maximum size.
+	 * </p>
+	 */
+	private static final class Table {
+		/**
+		 * <p>
+		 * Entries, from the newest to the oldest.
+		 * </p>
+		 */
+		private Vector entries = new Vector();
+
+		/**
+		 * <p>
+		 * Size, i.e. the length of all names and values plus an overhead of
+		 * 32 bytes per entry.
+		 * </p>
+		 */
+		private int size;
+
+		/**
+		 * <p>
+		 * Maximum size.
+		 * </p>
+		 */
+		private int maxSize;
+
+		/**
+		 * <p>
+		 * Creates a Table.
+		 * </p>
+		 * @param maxSize Maximum size.
+		 */
+		private Table(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		/**
+		 * <p>
+		 * Returns the number of entries.
+		 * </p>
+		 * @return Length.
+		 */
+		private int getLength() {
+			return entries.size();
+		}
+
+		/**
+		 * <p>
+		 * Returns the name of a given entry.
+		 * </p>
+		 * @param index Index, from zero.
+		 * @return Name.
+		 */
+		private String getName(int index) {
+			return ((String[])entries.elementAt(index))[0];
+		}
+
+		/**
+		 * <p>
+		 * Returns the value of a given entry.
+		 * </p>
+		 * @param index Index, from zero.
+		 * @return Value.
+		 */
+		private String getValue(int index) {
+			return ((String[])entries.elementAt(index))[1];
+		}
+
+		/**
+		 * <p>
+		 * Adds an entry, evicting the oldest ones to make room for it. An
+		 * entry larger than the table just empties it.
+		 * </p>
+		 * @param name Name.
+		 * @param value Value.
+		 */
+		private void add(String name, String value) {
+			final int entrySize = name.length() + value.length() + 32;
+			//
+			evict(maxSize - entrySize);
+			//
+			if (entrySize <= maxSize) {
+				entries.insertElementAt(new String[] {name, value}, 0);
+				size += entrySize;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Changes the maximum size, evicting the oldest entries above it.
+		 * </p>
+		 * @param maxSize Maximum size.
+		 */
+		private void resize(int maxSize) {
+			this.maxSize = maxSize;
+			//
+			evict(maxSize);
+		}
+
+		/**
+		 * <p>
+		 * Evicts the oldest entries until the size is not above a given one.
+		 * </p>
+		 * @param limit Size.
+		 */
+		private void evict(int limit) {
+			while (size > limit && !entries.isEmpty()) {
+				String[] entry = (String[])entries.lastElement();
+				entries.removeElementAt(entries.size() -1);
+				//
+				size -= entry[0].length() + entry[1].length() + 32;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Default size of the dynamic tables.
+	 * </p>
+	 */
+	static final int DEFAULT_TABLE_SIZE = 4096;
+
+	/**
+	 * <p>
+	 * Static table.
+	 * </p>
+	 */
+	private static final String[][] STATIC_TABLE = {
+		{":authority", ""},
+		{":method", "GET"},
+		{":method", "POST"},
+		{":path", "/"},
+		{":path", "/index.html"},
+		{":scheme", "http"},
+		{":scheme", "https"},
+		{":status", "200"},
+		{":status", "204"},
+		{":status", "206"},
+		{":status", "304"},
+		{":status", "400"},
+		{":status", "404"},
+		{":status", "500"},
+		{"accept-charset", ""},
+		{"accept-encoding", "gzip, deflate"},
+		{"accept-language", ""},
+		{"accept-ranges", ""},
+		{"accept", ""},
+		{"access-control-allow-origin", ""},
+		{"age", ""},
+		{"allow", ""},
+		{"authorization", ""},
+		{"cache-control", ""},
+		{"content-disposition", ""},
+		{"content-encoding", ""},
+		{"content-language", ""},
+		{"content-length", ""},
+		{"content-location", ""},
+		{"content-range", ""},
+		{"content-type", ""},
+		{"cookie", ""},
+		{"date", ""},
+		{"etag", ""},
+		{"expect", ""},
+		{"expires", ""},
+		{"from", ""},
+		{"host", ""},
+		{"if-match", ""},
+		{"if-modified-since", ""},
+		{"if-none-match", ""},
+		{"if-range", ""},
+		{"if-unmodified-since", ""},
+		{"last-modified", ""},
+		{"link", ""},
+		{"location", ""},
+		{"max-forwards", ""},
+		{"proxy-authenticate", ""},
+		{"proxy-authorization", ""},
+		{"range", ""},
+		{"referer", ""},
+		{"refresh", ""},
+		{"retry-after", ""},
+		{"server", ""},
+		{"set-cookie", ""},
+		{"strict-transport-security", ""},
+		{"transfer-encoding", ""},
+		{"user-agent", ""},
+		{"vary", ""},
+		{"via", ""},
+		{"www-authenticate", ""}
+	};
+
+	/**
+	 * <p>
+	 * Huffman codes of all symbols, the last one being the end of string.
+	 * </p>
+	 */
+	private static final int[] HUFFMAN_CODES = {
+		0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5,
+		0xfffffe6, 0xfffffe7, 0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9,
+		0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec, 0xfffffed, 0xfffffee,
+		0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+		0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9,
+		0xffffffa, 0xffffffb, 0x14, 0x3f8, 0x3f9, 0xffa,
+		0x1ff9, 0x15, 0xf8, 0x7fa, 0x3fa, 0x3fb,
+		0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+		0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b,
+		0x1c, 0x1d, 0x1e, 0x1f, 0x5c, 0xfb,
+		0x7ffc, 0x20, 0xffb, 0x3fc, 0x1ffa, 0x21,
+		0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+		0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+		0x69, 0x6a, 0x6b, 0x6c, 0x6d, 0x6e,
+		0x6f, 0x70, 0x71, 0x72, 0xfc, 0x73,
+		0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+		0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5,
+		0x25, 0x26, 0x27, 0x6, 0x74, 0x75,
+		0x28, 0x29, 0x2a, 0x7, 0x2b, 0x76,
+		0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+		0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd,
+		0x1ffd, 0xffffffc, 0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8,
+		0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9, 0x3fffd6, 0x7fffda,
+		0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+		0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1,
+		0x7fffe2, 0x7fffe3, 0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5,
+		0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef, 0x3fffda, 0x1fffdd,
+		0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+		0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf,
+		0x7fffeb, 0x7fffec, 0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2,
+		0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef, 0xfffea, 0x3fffe2,
+		0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+		0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2,
+		0x3fffe8, 0x1ffffec, 0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde,
+		0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed, 0x7fff2, 0x1fffe3,
+		0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+		0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3,
+		0x7ffffe4, 0x7ffffe5, 0xfffec, 0xfffff3, 0xfffed, 0x1fffe6,
+		0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3, 0x3fffea, 0x3fffeb,
+		0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+		0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8,
+		0x7ffffe9, 0x7ffffea, 0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed,
+		0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee, 0x3fffffff
+	};
+
+	/**
+	 * <p>
+	 * Length, in bits, of the Huffman codes.
+	 * </p>
+	 */
+	private static final byte[] HUFFMAN_LENGTHS = {
+		13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+		28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+		6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+		5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+		13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+		7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+		15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+		6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+		20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+		24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+		22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+		21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+		26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+		19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+		20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+		26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+		30
+	};
+
+	/**
+	 * <p>
+	 * Symbol of the end of string.
+	 * </p>
+	 */
+	private static final int EOS = 256;
+
+	/**
+	 * <p>
+	 * Huffman decoding tree. Each node takes two positions, one per bit,
+	 * with the index of the child node, or the symbol plus one, negated, of
+	 * a leaf.
+	 * </p>
+	 */
+	private static short[] huffmanTree;
+
+	/**
+	 * <p>
+	 * Writes an integer with a given prefix.
+	 * </p>
+	 * @param out Stream.
+	 * @param flags Bits above the prefix.
+	 * @param prefix Number of bits of the prefix.
+	 * @param value Integer.
+	 */
+	private static void writeInt(ByteArrayOutputStream out, int flags,
+		int prefix, int value) {
+		final int max = (1 << prefix) -1;
+		//
+		if (value < max) {
+			out.write(flags | value);
+			//
+			return;
+		}
+		//
+		out.write(flags | max);
+		value -= max;
+		//
+		while (value >= 0x80) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		//
+		out.write(value);
+	}
+
+	/**
+	 * <p>
+	 * Writes a string, Huffman coded in case that makes it shorter.
+	 * </p>
+	 * @param out Stream.
+	 * @param value String.
+	 */
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		final int length = value.length();
+		long totalBits = 0;
+		//
+		for (int i = 0; i < length; i++) {
+			totalBits += HUFFMAN_LENGTHS[value.charAt(i) & 0xFF];
+		}
+		//
+		final int huffmanLength = (int)((totalBits + 7) / 8);
+		//
+		if (huffmanLength >= length) {
+			writeInt(out, 0x00, 7, length);
+			//
+			for (int i = 0; i < length; i++) {
+				out.write(value.charAt(i) & 0xFF);
+			}
+			//
+			return;
+		}
+		//
+		writeInt(out, 0x80, 7, huffmanLength);
+		//
+		long current = 0;
+		int count = 0;
+		//
+		for (int i = 0; i < length; i++) {
+			int symbol = value.charAt(i) & 0xFF;
+			//
+			final int bits = HUFFMAN_LENGTHS[symbol];
+			//
+			current = (current << bits) | HUFFMAN_CODES[symbol];
+			count += bits;
+			//
+			while (count >= 8) {
+				count -= 8;
+				out.write((int)(current >>> count) & 0xFF);
+			}
+		}
+		//
+		if (count > 0) {
+			// pads with the most significant bits of the end of string.
+			out.write(
+				(int)((current << (8 - count)) | (0xFF >>> count)) & 0xFF);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decodes a Huffman coded string.
+	 * </p>
+	 * @param data Data.
+	 * @param off Offset.
+	 * @param len Length.
+	 * @return String.
+	 * @throws IOException If the coding is invalid.
+	 */
+	private static String decodeHuffman(byte[] data, int off, int len)
+		throws IOException {
+		final short[] tree = getHuffmanTree();
+		StringBuffer value = new StringBuffer(len * 8 / 5);
+		int node = 0;
+		int pending = 0;
+		boolean ones = true;
+		//
+		for (int i = off; i < off + len; i++) {
+			int b = data[i];
+			//
+			for (int bit = 7; bit >= 0; bit--) {
+				final int one = (b >>> bit) & 1;
+				int child = tree[node * 2 + one];
+				//
+				if (child < 0) {
+					if (-child -1 == EOS) {
+						throw new IOException("Invalid Huffman coding!");
+					}
+					//
+					value.append((char)(-child -1));
+					//
+					node = 0;
+					pending = 0;
+					ones = true;
+				} else {
+					node = child;
+					pending++;
+					ones = ones && one == 1;
+				}
+			}
+		}
+		//
+		if (pending > 7 || !ones) {
+			throw new IOException("Invalid Huffman coding!");
+		}
+		//
+		return value.toString();
+	}
+
+	/**
+	 * <p>
+	 * Returns the Huffman decoding tree, building it the first time.
+	 * </p>
+	 * @return Tree.
+	 */
+	private static synchronized short[] getHuffmanTree() {
+		if (huffmanTree == null) {
+			short[] tree = new short[EOS * 2];
+			int nodes = 1;
+			//
+			for (int symbol = 0; symbol <= EOS; symbol++) {
+				final int code = HUFFMAN_CODES[symbol];
+				int node = 0;
+				//
+				for (int bit = HUFFMAN_LENGTHS[symbol] -1; bit > 0; bit--) {
+					int index = node * 2 + ((code >>> bit) & 1);
+					//
+					if (tree[index] == 0) {
+						tree[index] = (short)nodes++;
+					}
+					//
+					node = tree[index];
+				}
+				//
+				tree[node * 2 + (code & 1)] = (short)(-symbol -1);
+			}
+			//
+			huffmanTree = tree;
+		}
+		//
+		return huffmanTree;
+	}
+
+	/**
+	 * <p>
+	 * Converts bytes into a string, one character per byte.
+	 * </p>
+	 * @param data Data.
+	 * @param off Offset.
+	 * @param len Length.
+	 * @return String.
+	 */
+	private static String decodeLatin1(byte[] data, int off, int len) {
+		char[] chars = new char[len];
+		//
+		for (int i = 0; i < len; i++) {
+			chars[i] = (char)(data[off + i] & 0xFF);
+		}
+		//
+		return new String(chars);
+	}
+
+	/**
+	 * <p>
+	 * Private constructor to avoid object instantiation.
+	 * </p>
+	 */
+	private Hpack() {
+	}
+}
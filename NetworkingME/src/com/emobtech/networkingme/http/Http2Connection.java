@@ -0,0 +1,1061 @@
+/* Http2Connection.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a HTTP connection sent as a stream of a HTTP/2
+ * session, which is shared with the other requests to the same host.
+ * </p>
+ * <p>
+ * The request header is sent once the request body is first written, or
+ * the response is first asked for. The body is sent as it is written,
+ * within the flow control windows. A request refused by the server, which
+ * did not process it, is sent again over a new session, unless its body
+ * was already sent.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see Http2Transport
+ */
+final class Http2Connection implements HttpConnection {
+	/**
+	 * <p>
+	 * Maximum size of a request body frame.
+	 * </p>
+	 */
+	private static final int DATA_SIZE = 4096;
+
+	/**
+	 * <p>
+	 * Transport.
+	 * </p>
+	 */
+	private Http2Transport transport;
+
+	/**
+	 * <p>
+	 * Session.
+	 * </p>
+	 */
+	private Http2Session session;
+
+	/**
+	 * <p>
+	 * Stream. <code>null</code> before the request header is sent.
+	 * </p>
+	 */
+	private Http2Session.Stream stream;
+
+	/**
+	 * <p>
+	 * URL.
+	 * </p>
+	 */
+	private URL url;
+
+	/**
+	 * <p>
+	 * Method.
+	 * </p>
+	 */
+	private String method = GET;
+
+	/**
+	 * <p>
+	 * Request header field keys, in the order they were set.
+	 * </p>
+	 */
+	private Vector requestKeys = new Vector(8);
+
+	/**
+	 * <p>
+	 * Request header fields, by lower case key.
+	 * </p>
+	 */
+	private Hashtable requestHeader = new Hashtable(8);
+
+	/**
+	 * <p>
+	 * Stream of the request body.
+	 * </p>
+	 */
+	private DataStream requestStream;
+
+	/**
+	 * <p>
+	 * Connected flag.
+	 * </p>
+	 */
+	private boolean connected;
+
+	/**
+	 * <p>
+	 * Closed flag.
+	 * </p>
+	 */
+	private boolean closed;
+
+	/**
+	 * <p>
+	 * Failure of the stream.
+	 * </p>
+	 */
+	private IOException failure;
+
+	/**
+	 * <p>
+	 * Whether the stream was refused by the server, which did not process
+	 * it.
+	 * </p>
+	 */
+	private boolean refused;
+
+	/**
+	 * <p>
+	 * Response code.
+	 * </p>
+	 */
+	private int responseCode = -1;
+
+	/**
+	 * <p>
+	 * Response header field keys, in the order they were received.
+	 * </p>
+	 */
+	private Vector responseKeys = new Vector(10);
+
+	/**
+	 * <p>
+	 * Response header field values, in the order they were received.
+	 * </p>
+	 */
+	private Vector responseValues = new Vector(10);
+
+	/**
+	 * <p>
+	 * Received response body chunks not read yet.
+	 * </p>
+	 */
+	private Vector chunks = new Vector(4);
+
+	/**
+	 * <p>
+	 * Number of bytes of the first chunk already read.
+	 * </p>
+	 */
+	private int chunkOffset;
+
+	/**
+	 * <p>
+	 * Whether the response was fully received.
+	 * </p>
+	 */
+	private boolean finished;
+
+	/**
+	 * <p>
+	 * Response body.
+	 * </p>
+	 */
+	private Body responseBody = new Body();
+
+	/**
+	 * <p>
+	 * This class implements the input stream of the response body, which
+	 * reads the chunks received by the session.
+	 * </p>
+	 */
+	private final class Body extends InputStream {
+		/**
+		 * @see java.io.InputStream#read()
+		 */
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			//
+			return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+		}
+
+		/**
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			//
+			int n;
+			//
+			synchronized (Http2Connection.this) {
+				while (chunks.isEmpty()) {
+					if (finished) {
+						return -1;
+					}
+					//
+					checkFailure();
+					await();
+				}
+				//
+				byte[] chunk = (byte[])chunks.firstElement();
+				n = Math.min(len, chunk.length - chunkOffset);
+				//
+				System.arraycopy(chunk, chunkOffset, b, off, n);
+				chunkOffset += n;
+				//
+				if (chunkOffset == chunk.length) {
+					chunks.removeElementAt(0);
+					chunkOffset = 0;
+				}
+			}
+			//
+			session.consume(stream, n);
+			//
+			return n;
+		}
+
+		/**
+		 * @see java.io.InputStream#available()
+		 */
+		public int available() {
+			synchronized (Http2Connection.this) {
+				int n = -chunkOffset;
+				//
+				for (int i = 0; i < chunks.size(); i++) {
+					n += ((byte[])chunks.elementAt(i)).length;
+				}
+				//
+				return Math.max(n, 0);
+			}
+		}
+
+		/**
+		 * <p>
+		 * Closes the body. In case it was not fully read, the stream is
+		 * cancelled.
+		 * </p>
+		 * @see java.io.InputStream#close()
+		 */
+		public void close() throws IOException {
+			boolean cancel;
+			//
+			synchronized (Http2Connection.this) {
+				cancel = !finished || !chunks.isEmpty();
+			}
+			//
+			if (cancel) {
+				Http2Connection.this.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * This class implements the output stream of the request body. The
+	 * bytes are buffered up to a frame's size, so a frame is sent per buffer
+	 * instead of per write. Closing it ends the stream.
+	 * </p>
+	 */
+	private final class DataStream extends OutputStream {
+		/**
+		 * <p>
+		 * Buffer.
+		 * </p>
+		 */
+		private byte[] buffer = new byte[DATA_SIZE];
+
+		/**
+		 * <p>
+		 * Number of buffered bytes.
+		 * </p>
+		 */
+		private int count;
+
+		/**
+		 * <p>
+		 * Closed flag.
+		 * </p>
+		 */
+		private boolean closed;
+
+		/**
+		 * @see java.io.OutputStream#write(int)
+		 */
+		public void write(int b) throws IOException {
+			checkOpen();
+			//
+			buffer[count++] = (byte)b;
+			//
+			if (count == buffer.length) {
+				flush();
+			}
+		}
+
+		/**
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkOpen();
+			//
+			if (len >= buffer.length) {
+				flush();
+				session.writeData(stream, b, off, len, false);
+				//
+				return;
+			}
+			//
+			int n;
+			//
+			while (len > 0) {
+				n = Math.min(len, buffer.length - count);
+				//
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+				//
+				if (count == buffer.length) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * @see java.io.OutputStream#flush()
+		 */
+		public void flush() throws IOException {
+			if (!closed && count > 0) {
+				session.writeData(stream, buffer, 0, count, false);
+				//
+				count = 0;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Sends the buffered bytes, ending the stream.
+		 * </p>
+		 * @see java.io.OutputStream#close()
+		 */
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				//
+				session.writeData(stream, buffer, 0, count, true);
+				//
+				count = 0;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Checks whether it is still open.
+		 * </p>
+		 * @throws IOException If it is closed.
+		 */
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed!");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Creates a Http2Connection to a given URL.
+	 * </p>
+	 * @param transport Transport.
+	 * @param session Session.
+	 * @param url URL.
+	 */
+	Http2Connection(Http2Transport transport, Http2Session session, URL url) {
+		this.transport = transport;
+		this.session = session;
+		this.url = url;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getURL()
+	 */
+	public String getURL() {
+		return url.toEncodedString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getProtocol()
+	 */
+	public String getProtocol() {
+		return url.getScheme().toLowerCase();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHost()
+	 */
+	public String getHost() {
+		return url.getDomain();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getFile()
+	 */
+	public String getFile() {
+		return url.getPath();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRef()
+	 */
+	public String getRef() {
+		return url.getFragment();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getQuery()
+	 */
+	public String getQuery() {
+		return url.getQueryString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getPort()
+	 */
+	public int getPort() {
+		return url.getPort();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestMethod()
+	 */
+	public String getRequestMethod() {
+		return method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestMethod(java.lang.String)
+	 */
+	public void setRequestMethod(String method) throws IOException {
+		checkSetup();
+		//
+		this.method = method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestProperty(java.lang.String)
+	 */
+	public String getRequestProperty(String key) {
+		return (String)requestHeader.get(key.toLowerCase());
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestProperty(java.lang.String, java.lang.String)
+	 */
+	public void setRequestProperty(String key, String value)
+		throws IOException {
+		checkSetup();
+		//
+		String lowerKey = key.toLowerCase();
+		//
+		if (!requestHeader.containsKey(lowerKey)) {
+			requestKeys.addElement(lowerKey);
+		}
+		//
+		requestHeader.put(lowerKey, value);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getResponseCode()
+	 */
+	public int getResponseCode() throws IOException {
+		connect();
+		//
+		return responseCode;
+	}
+
+	/**
+	 * <p>
+	 * Returns an empty message, since HTTP/2 has no reason phrase.
+	 * </p>
+	 * @see javax.microedition.io.HttpConnection#getResponseMessage()
+	 */
+	public String getResponseMessage() throws IOException {
+		connect();
+		//
+		return "";
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getExpiration()
+	 */
+	public long getExpiration() throws IOException {
+		return getHeaderFieldDate("expires", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getDate()
+	 */
+	public long getDate() throws IOException {
+		return getHeaderFieldDate("date", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getLastModified()
+	 */
+	public long getLastModified() throws IOException {
+		return getHeaderFieldDate("last-modified", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(java.lang.String)
+	 */
+	public String getHeaderField(String name) throws IOException {
+		connect();
+		//
+		name = name.toLowerCase();
+		//
+		for (int i = 0; i < responseKeys.size(); i++) {
+			if (name.equals(responseKeys.elementAt(i))) {
+				return (String)responseValues.elementAt(i);
+			}
+		}
+		//
+		return null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldInt(java.lang.String, int)
+	 */
+	public int getHeaderFieldInt(String name, int def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		try {
+			return value != null ? Integer.parseInt(value.trim()) : def;
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldDate(java.lang.String, long)
+	 */
+	public long getHeaderFieldDate(String name, long def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		return value != null ? parseDate(value, def) : def;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(int)
+	 */
+	public String getHeaderField(int n) throws IOException {
+		connect();
+		//
+		return n >= 0 && n < responseValues.size()
+			? (String)responseValues.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldKey(int)
+	 */
+	public String getHeaderFieldKey(int n) throws IOException {
+		connect();
+		//
+		return n >= 0 && n < responseKeys.size()
+			? (String)responseKeys.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getType()
+	 */
+	public String getType() {
+		try {
+			return getHeaderField("content-type");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getEncoding()
+	 */
+	public String getEncoding() {
+		try {
+			return getHeaderField("content-encoding");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getLength()
+	 */
+	public long getLength() {
+		try {
+			String value = getHeaderField("content-length");
+			//
+			return value != null ? Long.parseLong(value.trim()) : -1;
+		} catch (IOException e) {
+			return -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openInputStream()
+	 */
+	public InputStream openInputStream() throws IOException {
+		connect();
+		//
+		return responseBody;
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openDataInputStream()
+	 */
+	public DataInputStream openDataInputStream() throws IOException {
+		return new DataInputStream(openInputStream());
+	}
+
+	/**
+	 * <p>
+	 * Sends the request header and returns a stream that sends the request
+	 * body as it is written.
+	 * </p>
+	 * @see javax.microedition.io.OutputConnection#openOutputStream()
+	 */
+	public OutputStream openOutputStream() throws IOException {
+		if (requestStream == null) {
+			checkSetup();
+			//
+			sendHeader(false);
+			//
+			requestStream = new DataStream();
+		}
+		//
+		return requestStream;
+	}
+
+	/**
+	 * @see javax.microedition.io.OutputConnection#openDataOutputStream()
+	 */
+	public DataOutputStream openDataOutputStream() throws IOException {
+		return new DataOutputStream(openOutputStream());
+	}
+
+	/**
+	 * <p>
+	 * Closes the connection, cancelling the stream in case it is still
+	 * open. It can be called by another thread to abort the request.
+	 * </p>
+	 * @see javax.microedition.io.Connection#close()
+	 */
+	public void close() throws IOException {
+		Http2Session session;
+		Http2Session.Stream stream;
+		//
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			//
+			closed = true;
+			session = this.session;
+			stream = this.stream;
+			//
+			chunks.removeAllElements();
+			notifyAll();
+		}
+		//
+		session.cancel(stream);
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the request was sent over a session opened by former
+	 * requests, so it took no new connection.
+	 * </p>
+	 * @return Reused (true).
+	 */
+	synchronized boolean isSessionReused() {
+		return stream != null && stream.getId() > 1;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the connection was closed.
+	 * </p>
+	 * @return Closed (true).
+	 */
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the stream failed or the connection was closed.
+	 * </p>
+	 * @throws IOException If any of them.
+	 */
+	synchronized void checkFailure() throws IOException {
+		if (closed) {
+			throw new InterruptedIOException("Connection closed!");
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Receives the header fields of the response. Interim responses are
+	 * skipped, as are trailer fields.
+	 * </p>
+	 * @param names Lower case names.
+	 * @param values Values.
+	 */
+	synchronized void onHeaders(Vector names, Vector values) {
+		if (responseCode != -1) {
+			return;
+		}
+		//
+		int code = -1;
+		String name;
+		//
+		for (int i = 0; i < names.size(); i++) {
+			name = (String)names.elementAt(i);
+			//
+			if (":status".equals(name)) {
+				try {
+					code = Integer.parseInt((String)values.elementAt(i));
+				} catch (NumberFormatException e) {}
+			} else if (!name.startsWith(":")) {
+				responseKeys.addElement(name);
+				responseValues.addElement(values.elementAt(i));
+			}
+		}
+		//
+		if (code == -1) {
+			failure = new IOException("Invalid response status!");
+		} else if (code >= 100 && code < 200) {
+			responseKeys.removeAllElements();
+			responseValues.removeAllElements();
+		} else {
+			responseCode = code;
+		}
+		//
+		notifyAll();
+	}
+
+	/**
+	 * <p>
+	 * Receives response body bytes.
+	 * </p>
+	 * @param b Bytes.
+	 * @param off Offset.
+	 * @param len Length.
+	 */
+	synchronized void onData(byte[] b, int off, int len) {
+		if (closed || len == 0) {
+			return;
+		}
+		//
+		if (off != 0 || len != b.length) {
+			byte[] chunk = new byte[len];
+			System.arraycopy(b, off, chunk, 0, len);
+			b = chunk;
+		}
+		//
+		chunks.addElement(b);
+		//
+		notifyAll();
+	}
+
+	/**
+	 * <p>
+	 * Receives the end of the response.
+	 * </p>
+	 */
+	synchronized void onEnd() {
+		finished = true;
+		//
+		if (responseCode == -1 && failure == null) {
+			failure = new IOException("Unexpected end of response!");
+		}
+		//
+		notifyAll();
+	}
+
+	/**
+	 * <p>
+	 * Receives the failure of the stream.
+	 * </p>
+	 * @param e Failure.
+	 * @param refused Whether the server did not process the request.
+	 */
+	synchronized void onFailure(IOException e, boolean refused) {
+		if (!finished && failure == null) {
+			failure = e;
+			this.refused = refused && responseCode == -1;
+			//
+			notifyAll();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends the request and waits for the response header, in case it was
+	 * not done yet. A request with no body refused by the server is sent
+	 * again, once, over a new session.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		//
+		if (requestStream != null) {
+			requestStream.close();
+			//
+			if (!awaitResponse()) {
+				throw failure;
+			}
+		} else {
+			sendHeader(true);
+			//
+			if (!awaitResponse()) {
+				renew();
+				sendHeader(true);
+				//
+				if (!awaitResponse()) {
+					throw failure;
+				}
+			}
+		}
+		//
+		connected = true;
+	}
+
+	/**
+	 * <p>
+	 * Sends the request header, opening the stream. In case the session is
+	 * shutting down, it is sent over a new one.
+	 * </p>
+	 * @param endStream Whether there is no request body.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void sendHeader(boolean endStream) throws IOException {
+		Vector names = new Vector(requestKeys.size() + 4);
+		Vector values = new Vector(requestKeys.size() + 4);
+		//
+		getRequestHeader(names, values);
+		//
+		Http2Session.Stream stream =
+			session.open(this, names, values, endStream);
+		//
+		if (stream == null) {
+			renew();
+			//
+			stream = session.open(this, names, values, endStream);
+			//
+			if (stream == null) {
+				throw new IOException("Stream refused by server!");
+			}
+		}
+		//
+		synchronized (this) {
+			this.stream = stream;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Moves to a usable session to the host, which is a new one in case the
+	 * former is shutting down, so the request can be sent again.
+	 * </p>
+	 * @throws IOException If there is no usable session.
+	 */
+	private void renew() throws IOException {
+		Http2Session session = transport.getSession(url);
+		//
+		synchronized (this) {
+			if (session == null) {
+				throw new IOException("Stream refused by server!");
+			}
+			//
+			this.session = session;
+			stream = null;
+			failure = null;
+			refused = false;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Waits for the response header.
+	 * </p>
+	 * @return Received (true) or stream refused (false).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private synchronized boolean awaitResponse() throws IOException {
+		while (responseCode == -1) {
+			if (refused && !closed) {
+				return false;
+			}
+			//
+			checkFailure();
+			await();
+		}
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Waits for the stream to change. It must be called with the connection
+	 * lock held.
+	 * </p>
+	 * @throws IOException If the wait is interrupted.
+	 */
+	private void await() throws IOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Connection interrupted!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the request header fields, led by the pseudo-header fields.
+	 * The fields specific to HTTP/1 connections are left out.
+	 * </p>
+	 * @param names Lower case names, to which the fields are added.
+	 * @param values Values, to which the fields are added.
+	 */
+	private void getRequestHeader(Vector names, Vector values) {
+		StringBuffer path = new StringBuffer(64);
+		//
+		path.append(url.getPath() != null ? url.getPath() : "/");
+		//
+		String query = url.getQueryString();
+		//
+		if (query != null) {
+			path.append('?').append(Util.encodeQueryString(query));
+		}
+		//
+		String authority = getRequestProperty("host");
+		//
+		if (authority == null) {
+			authority = url.getDomain();
+			//
+			if (url.getPort() != 80) {
+				authority += ":" + url.getPort();
+			}
+		}
+		//
+		names.addElement(":method");
+		values.addElement(method);
+		names.addElement(":scheme");
+		values.addElement(getProtocol());
+		names.addElement(":authority");
+		values.addElement(authority);
+		names.addElement(":path");
+		values.addElement(path.toString());
+		//
+		String key;
+		//
+		for (int i = 0; i < requestKeys.size(); i++) {
+			key = (String)requestKeys.elementAt(i);
+			//
+			if (!isConnectionSpecific(key)) {
+				names.addElement(key);
+				values.addElement(requestHeader.get(key));
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the request can still be set up.
+	 * </p>
+	 * @throws IOException If it was already sent.
+	 */
+	private void checkSetup() throws IOException {
+		if (connected || requestStream != null) {
+			throw new IOException("Already connected!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns whether a given header field is specific to HTTP/1
+	 * connections, so it must not be sent over HTTP/2.
+	 * </p>
+	 * @param name Lower case name.
+	 * @return Connection specific (true).
+	 */
+	private static boolean isConnectionSpecific(String name) {
+		return "connection".equals(name)
+			|| "keep-alive".equals(name)
+			|| "proxy-connection".equals(name)
+			|| "transfer-encoding".equals(name)
+			|| "upgrade".equals(name)
+			|| "host".equals(name)
+			|| "te".equals(name);
+	}
+
+	/**
+	 * <p>
+	 * Parses a HTTP date, e.g. "Sun, 06 Nov 1994 08:49:37 GMT".
+	 * </p>
+	 * @param value Date.
+	 * @param def Value returned in case the date is invalid.
+	 * @return Time in milliseconds.
+	 */
+	private static long parseDate(String value, long def) {
+		try {
+			Date date = Util.parseCookieDate(value);
+			//
+			return date != null ? date.getTime() : def;
+		} catch (RuntimeException e) {
+			return def;
+		}
+	}
+}
@@ -0,0 +1,1661 @@
+/* Http2Session.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a HTTP/2 connection to a host, over a single socket,
+ * which multiplexes the streams of several concurrent requests. A thread
+ * reads the frames sent by the server and hands them over to the streams
+ * they belong to.
+ * </p>
+ * <p>
+ * Request bodies are sent within the flow control windows granted by the
+ * server, for the connection and each stream. Response bodies are granted
+ * as soon as received, for the connection, and once read by the
+ * application, for each stream, so a stream whose body is not read holds
+ * up to a window's worth of buffered bytes.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see Http2Transport
+ */
+final class Http2Session {
+	/**
+	 * <p>
+	 * This class represents a stream of the session, i.e. a request and its
+	 * response. Its state is guarded by the session.
+	 * </p>
+	 */
+	static final class Stream {
+		/**
+		 * <p>
+		 * Connection.
+		 * </p>
+		 */
+		private Http2Connection connection;
+
+		/**
+		 * <p>
+		 * Identifier.
+		 * </p>
+		 */
+		private int id;
+
+		/**
+		 * <p>
+		 * Send window.
+		 * </p>
+		 */
+		private int sendWindow;
+
+		/**
+		 * <p>
+		 * Number of read bytes not granted back to the server yet.
+		 * </p>
+		 */
+		private int consumed;
+
+		/**
+		 * <p>
+		 * Whether the request was fully sent.
+		 * </p>
+		 */
+		private boolean localEnded;
+
+		/**
+		 * <p>
+		 * Whether the response was fully received.
+		 * </p>
+		 */
+		private boolean remoteEnded;
+
+		/**
+		 * <p>
+		 * Creates a Stream.
+		 * </p>
+		 * @param connection Connection.
+		 * @param id Identifier.
+		 * @param sendWindow Send window.
+		 */
+		private Stream(Http2Connection connection, int id, int sendWindow) {
+			this.connection = connection;
+			this.id = id;
+			this.sendWindow = sendWindow;
+		}
+
+		/**
+		 * <p>
+		 * Returns the identifier.
+		 * </p>
+		 * @return Identifier.
+		 */
+		int getId() {
+			return id;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Connection preface.
+	 * </p>
+	 */
+	private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+
+	/**
+	 * <p>
+	 * DATA frame type.
+	 * </p>
+	 */
+	private static final int DATA = 0x0;
+
+	/**
+	 * <p>
+	 * HEADERS frame type.
+	 * </p>
+	 */
+	private static final int HEADERS = 0x1;
+
+	/**
+	 * <p>
+	 * RST_STREAM frame type.
+	 * </p>
+	 */
+	private static final int RST_STREAM = 0x3;
+
+	/**
+	 * <p>
+	 * SETTINGS frame type.
+	 * </p>
+	 */
+	private static final int SETTINGS = 0x4;
+
+	/**
+	 * <p>
+	 * PUSH_PROMISE frame type.
+	 * </p>
+	 */
+	private static final int PUSH_PROMISE = 0x5;
+
+	/**
+	 * <p>
+	 * PING frame type.
+	 * </p>
+	 */
+	private static final int PING = 0x6;
+
+	/**
+	 * <p>
+	 * GOAWAY frame type.
+	 * </p>
+	 */
+	private static final int GOAWAY = 0x7;
+
+	/**
+	 * <p>
+	 * WINDOW_UPDATE frame type.
+	 * </p>
+	 */
+	private static final int WINDOW_UPDATE = 0x8;
+
+	/**
+	 * <p>
+	 * CONTINUATION frame type.
+	 * </p>
+	 */
+	private static final int CONTINUATION = 0x9;
+
+	/**
+	 * <p>
+	 * END_STREAM flag.
+	 * </p>
+	 */
+	private static final int FLAG_END_STREAM = 0x1;
+
+	/**
+	 * <p>
+	 * ACK flag.
+	 * </p>
+	 */
+	private static final int FLAG_ACK = 0x1;
+
+	/**
+	 * <p>
+	 * END_HEADERS flag.
+	 * </p>
+	 */
+	private static final int FLAG_END_HEADERS = 0x4;
+
+	/**
+	 * <p>
+	 * PADDED flag.
+	 * </p>
+	 */
+	private static final int FLAG_PADDED = 0x8;
+
+	/**
+	 * <p>
+	 * PRIORITY flag.
+	 * </p>
+	 */
+	private static final int FLAG_PRIORITY = 0x20;
+
+	/**
+	 * <p>
+	 * HEADER_TABLE_SIZE setting.
+	 * </p>
+	 */
+	private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+
+	/**
+	 * <p>
+	 * ENABLE_PUSH setting.
+	 * </p>
+	 */
+	private static final int SETTINGS_ENABLE_PUSH = 0x2;
+
+	/**
+	 * <p>
+	 * MAX_CONCURRENT_STREAMS setting.
+	 * </p>
+	 */
+	private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+
+	/**
+	 * <p>
+	 * INITIAL_WINDOW_SIZE setting.
+	 * </p>
+	 */
+	private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+	/**
+	 * <p>
+	 * MAX_FRAME_SIZE setting.
+	 * </p>
+	 */
+	private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+	/**
+	 * <p>
+	 * NO_ERROR error code.
+	 * </p>
+	 */
+	private static final int NO_ERROR = 0x0;
+
+	/**
+	 * <p>
+	 * PROTOCOL_ERROR error code.
+	 * </p>
+	 */
+	private static final int PROTOCOL_ERROR = 0x1;
+
+	/**
+	 * <p>
+	 * FLOW_CONTROL_ERROR error code.
+	 * </p>
+	 */
+	private static final int FLOW_CONTROL_ERROR = 0x3;
+
+	/**
+	 * <p>
+	 * FRAME_SIZE_ERROR error code.
+	 * </p>
+	 */
+	private static final int FRAME_SIZE_ERROR = 0x6;
+
+	/**
+	 * <p>
+	 * REFUSED_STREAM error code.
+	 * </p>
+	 */
+	private static final int REFUSED_STREAM = 0x7;
+
+	/**
+	 * <p>
+	 * CANCEL error code.
+	 * </p>
+	 */
+	private static final int CANCEL = 0x8;
+
+	/**
+	 * <p>
+	 * COMPRESSION_ERROR error code.
+	 * </p>
+	 */
+	private static final int COMPRESSION_ERROR = 0x9;
+
+	/**
+	 * <p>
+	 * Size of a frame header.
+	 * </p>
+	 */
+	private static final int FRAME_HEADER_SIZE = 9;
+
+	/**
+	 * <p>
+	 * Default, and maximum accepted, size of a frame payload.
+	 * </p>
+	 */
+	private static final int DEFAULT_FRAME_SIZE = 16384;
+
+	/**
+	 * <p>
+	 * Default size of the flow control windows.
+	 * </p>
+	 */
+	private static final int DEFAULT_WINDOW_SIZE = 65535;
+
+	/**
+	 * <p>
+	 * Number of received bytes from which they are granted back to the
+	 * server.
+	 * </p>
+	 */
+	private static final int WINDOW_UPDATE_THRESHOLD = DEFAULT_WINDOW_SIZE / 2;
+
+	/**
+	 * <p>
+	 * Greatest stream identifier.
+	 * </p>
+	 */
+	private static final int MAX_STREAM_ID = 0x7FFFFFFF;
+
+	/**
+	 * <p>
+	 * Starting state.
+	 * </p>
+	 */
+	private static final int STARTING = 0;
+
+	/**
+	 * <p>
+	 * Open state.
+	 * </p>
+	 */
+	private static final int OPEN = 1;
+
+	/**
+	 * <p>
+	 * State of a session whose server speaks HTTP/1 only.
+	 * </p>
+	 */
+	private static final int HTTP1 = 2;
+
+	/**
+	 * <p>
+	 * Closed state.
+	 * </p>
+	 */
+	private static final int CLOSED = 3;
+
+	/**
+	 * <p>
+	 * State of a session whose server did not answer the connection
+	 * preface.
+	 * </p>
+	 */
+	private static final int SILENT = 4;
+
+	/**
+	 * <p>
+	 * Socket.
+	 * </p>
+	 */
+	private HttpSocket socket;
+
+	/**
+	 * <p>
+	 * Lock held while writing to the socket.
+	 * </p>
+	 */
+	private Object writeLock = new Object();
+
+	/**
+	 * <p>
+	 * Header encoder. It is guarded by the write lock.
+	 * </p>
+	 */
+	private Hpack.Encoder encoder = new Hpack.Encoder();
+
+	/**
+	 * <p>
+	 * Header decoder. It is used by the reader thread only.
+	 * </p>
+	 */
+	private Hpack.Decoder decoder = new Hpack.Decoder();
+
+	/**
+	 * <p>
+	 * Open streams, by identifier.
+	 * </p>
+	 */
+	private Hashtable streams = new Hashtable(16);
+
+	/**
+	 * <p>
+	 * Number of open streams plus the ones about to be opened.
+	 * </p>
+	 */
+	private int streamCount;
+
+	/**
+	 * <p>
+	 * Identifier of the next stream.
+	 * </p>
+	 */
+	private int nextStreamId = 1;
+
+	/**
+	 * <p>
+	 * State.
+	 * </p>
+	 */
+	private int state = STARTING;
+
+	/**
+	 * <p>
+	 * Time the session became idle, i.e. with no stream.
+	 * </p>
+	 */
+	private long idleSince;
+
+	/**
+	 * <p>
+	 * Failure that closed the session.
+	 * </p>
+	 */
+	private IOException failure;
+
+	/**
+	 * <p>
+	 * Whether the server is shutting the session down, so no new stream can
+	 * be opened.
+	 * </p>
+	 */
+	private boolean goingAway;
+
+	/**
+	 * <p>
+	 * Maximum number of concurrent streams allowed by the server.
+	 * </p>
+	 */
+	private int maxConcurrentStreams = Integer.MAX_VALUE;
+
+	/**
+	 * <p>
+	 * Initial send window of the streams.
+	 * </p>
+	 */
+	private int initialWindowSize = DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * <p>
+	 * Maximum size of a frame payload sent.
+	 * </p>
+	 */
+	private int maxFrameSize = DEFAULT_FRAME_SIZE;
+
+	/**
+	 * <p>
+	 * Send window of the connection.
+	 * </p>
+	 */
+	private int sendWindow = DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * <p>
+	 * Number of received bytes not granted back to the server yet. It is
+	 * used by the reader thread only.
+	 * </p>
+	 */
+	private int received;
+
+	/**
+	 * <p>
+	 * Identifier of the stream whose header block is being received, or
+	 * zero. It is used by the reader thread only.
+	 * </p>
+	 */
+	private int headerStreamId;
+
+	/**
+	 * <p>
+	 * Flags of the frame that started the header block being received. It
+	 * is used by the reader thread only.
+	 * </p>
+	 */
+	private int headerFlags;
+
+	/**
+	 * <p>
+	 * Header block being received. It is used by the reader thread only.
+	 * </p>
+	 */
+	private ByteArrayOutputStream headerBlock;
+
+	/**
+	 * <p>
+	 * Error code sent to the server in case the reader thread fails. It is
+	 * used by the reader thread only.
+	 * </p>
+	 */
+	private int errorCode = NO_ERROR;
+
+	/**
+	 * <p>
+	 * Creates a Http2Session.
+	 * </p>
+	 */
+	Http2Session() {
+	}
+
+	/**
+	 * <p>
+	 * Opens a socket to the host of a given URL and starts the session,
+	 * sending the connection preface with prior knowledge of HTTP/2 support.
+	 * In case the server answers with HTTP/1, closes the socket or does not
+	 * answer within a given timeout, the session is left unusable.
+	 * </p>
+	 * @param transport Transport the socket is opened by.
+	 * @param key Pool key.
+	 * @param url URL.
+	 * @param timeout Handshake timeout. Zero means none.
+	 * @throws IOException If any I/O error occurs.
+	 * @see Http2Session#awaitStart()
+	 */
+	void start(SocketTransport transport, String key, URL url, long timeout)
+		throws IOException {
+		int answer;
+		//
+		try {
+			socket = transport.openSocket(key, url);
+			//
+			answer = handshake(timeout);
+		} catch (IOException e) {
+			fail(e);
+			//
+			throw e;
+		}
+		//
+		synchronized (this) {
+			state = answer;
+			idleSince = System.currentTimeMillis();
+			//
+			notifyAll();
+		}
+		//
+		if (answer == OPEN) {
+			new Thread(new Runnable() {
+				public void run() {
+					read();
+				}
+			}, "HTTP/2 Reader " + key).start();
+		} else {
+			socket.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Waits for the session to start.
+	 * </p>
+	 * @return Started (true) or host did not answer with HTTP/2 (false).
+	 * @throws IOException If the session failed.
+	 * @see Http2Session#isHttp1()
+	 */
+	synchronized boolean awaitStart() throws IOException {
+		while (state == STARTING) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Session start interrupted!");
+			}
+		}
+		//
+		if (state == CLOSED) {
+			throw failure;
+		}
+		//
+		return state == OPEN;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the server answered the connection preface with
+	 * HTTP/1, rather than closing the socket or not answering at all.
+	 * </p>
+	 * @return HTTP/1 (true).
+	 */
+	synchronized boolean isHttp1() {
+		return state == HTTP1;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether new streams can be opened, or will be once the session
+	 * starts.
+	 * </p>
+	 * @return Usable (true).
+	 */
+	synchronized boolean isUsable() {
+		return state == STARTING
+			|| (state == OPEN && !goingAway && nextStreamId < MAX_STREAM_ID);
+	}
+
+	/**
+	 * <p>
+	 * Opens a stream for a given connection, sending its header. It waits
+	 * while the server's limit of concurrent streams is reached.
+	 * </p>
+	 * @param connection Connection.
+	 * @param names Lower case names of the header fields.
+	 * @param values Values of the header fields.
+	 * @param endStream Whether there is no request body.
+	 * @return Stream or <code>null</code> in case the session is shutting
+	 *         down.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	Stream open(Http2Connection connection, Vector names, Vector values,
+		boolean endStream) throws IOException {
+		synchronized (this) {
+			while (true) {
+				checkOpen(connection);
+				//
+				if (goingAway || nextStreamId >= MAX_STREAM_ID) {
+					return null;
+				}
+				if (streamCount < maxConcurrentStreams) {
+					break;
+				}
+				//
+				await();
+			}
+			//
+			streamCount++;
+		}
+		//
+		Stream stream;
+		//
+		synchronized (writeLock) {
+			synchronized (this) {
+				try {
+					checkOpen(connection);
+				} catch (IOException e) {
+					release();
+					//
+					throw e;
+				}
+				//
+				if (goingAway) {
+					release();
+					//
+					return null;
+				}
+				//
+				stream =
+					new Stream(connection, nextStreamId, initialWindowSize);
+				stream.localEnded = endStream;
+				streams.put(new Integer(stream.id), stream);
+				//
+				nextStreamId += 2;
+			}
+			//
+			writeHeader(stream.id, encoder.encode(names, values), endStream);
+		}
+		//
+		return stream;
+	}
+
+	/**
+	 * <p>
+	 * Sends request body bytes of a given stream, within the flow control
+	 * windows. It waits while they are exhausted.
+	 * </p>
+	 * @param stream Stream.
+	 * @param b Bytes.
+	 * @param off Offset.
+	 * @param len Length.
+	 * @param endStream Whether they are the last ones.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void writeData(Stream stream, byte[] b, int off, int len,
+		boolean endStream) throws IOException {
+		do {
+			int n;
+			//
+			synchronized (this) {
+				while (true) {
+					checkOpen(stream.connection);
+					stream.connection.checkFailure();
+					//
+					if (!streams.containsKey(new Integer(stream.id))) {
+						throw new IOException("Stream closed!");
+					}
+					//
+					n =
+						Math.min(
+							Math.min(len, maxFrameSize),
+							Math.min(sendWindow, stream.sendWindow));
+					//
+					if (n > 0 || len == 0) {
+						break;
+					}
+					//
+					await();
+				}
+				//
+				n = Math.max(n, 0);
+				sendWindow -= n;
+				stream.sendWindow -= n;
+			}
+			//
+			final boolean last = endStream && n == len;
+			//
+			writeFrame(DATA, last ? FLAG_END_STREAM : 0, stream.id, b, off, n);
+			//
+			if (last) {
+				synchronized (this) {
+					stream.localEnded = true;
+					//
+					if (stream.remoteEnded) {
+						remove(stream);
+					}
+				}
+			}
+			//
+			off += n;
+			len -= n;
+		} while (len > 0);
+	}
+
+	/**
+	 * <p>
+	 * Reports response body bytes of a given stream read by the application,
+	 * which are granted back to the server once enough of them.
+	 * </p>
+	 * @param stream Stream.
+	 * @param n Number of bytes.
+	 */
+	void consume(Stream stream, int n) {
+		int increment = 0;
+		//
+		synchronized (this) {
+			if (stream.remoteEnded
+					|| !streams.containsKey(new Integer(stream.id))) {
+				return;
+			}
+			//
+			stream.consumed += n;
+			//
+			if (stream.consumed >= WINDOW_UPDATE_THRESHOLD) {
+				increment = stream.consumed;
+				stream.consumed = 0;
+			}
+		}
+		//
+		if (increment > 0) {
+			try {
+				writeWindowUpdate(stream.id, increment);
+			} catch (IOException e) {
+				// the failure reaches the stream through the reader thread.
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Cancels a given stream, in case it is still open, and wakes up the
+	 * threads waiting on the session, which then check whether their
+	 * connection was closed.
+	 * </p>
+	 * @param stream Stream. It can be <code>null</code>.
+	 */
+	void cancel(Stream stream) {
+		boolean open;
+		//
+		synchronized (this) {
+			open = stream != null && remove(stream) && state == OPEN;
+			//
+			notifyAll();
+		}
+		//
+		if (open) {
+			try {
+				writeFrame(RST_STREAM, 0, stream.id, toBytes(CANCEL), 0, 4);
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the session in case it has had no stream for a given time. No
+	 * new stream is opened meanwhile.
+	 * </p>
+	 * @param timeout Idle timeout.
+	 * @return Closed (true).
+	 */
+	boolean closeIfIdle(long timeout) {
+		synchronized (this) {
+			if (state != OPEN || streamCount > 0
+					|| System.currentTimeMillis() - idleSince < timeout) {
+				return false;
+			}
+			//
+			goingAway = true;
+		}
+		//
+		close();
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Closes the session, failing its open streams.
+	 * </p>
+	 */
+	void close() {
+		synchronized (this) {
+			if (state != OPEN) {
+				return;
+			}
+		}
+		//
+		try {
+			writeGoAway(NO_ERROR);
+		} catch (IOException e) {}
+		//
+		fail(new InterruptedIOException("Session closed!"));
+	}
+
+	/**
+	 * <p>
+	 * Sends the connection preface and reads the server's one, which is a
+	 * SETTINGS frame.
+	 * </p>
+	 * @param timeout Timeout. Zero means none.
+	 * @return {@link #OPEN}, {@link #HTTP1} or {@link #SILENT}.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private int handshake(long timeout) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		//
+		out.write(Util.toBytes(PREFACE));
+		writeFrame(
+			SETTINGS,
+			0,
+			0,
+			new byte[] {0, SETTINGS_ENABLE_PUSH, 0, 0, 0, 0},
+			0,
+			6);
+		//
+		Timer timer = null;
+		//
+		if (timeout > 0) {
+			timer = new Timer();
+			timer.schedule(new TimerTask() {
+				public void run() {
+					socket.close();
+				}
+			}, timeout);
+		}
+		//
+		byte[] header = new byte[FRAME_HEADER_SIZE];
+		//
+		try {
+			if (!readFully(header, 0, header.length)) {
+				return SILENT;
+			}
+			if (Util.toString(header).startsWith("HTTP/")) {
+				return HTTP1;
+			}
+		} catch (IOException e) {
+			if (socket.isClosed()) {
+				return SILENT;
+			}
+			//
+			throw e;
+		} finally {
+			if (timer != null) {
+				timer.cancel();
+			}
+		}
+		//
+		if (header[3] != SETTINGS || (header[4] & FLAG_ACK) != 0) {
+			throw new IOException("Invalid server preface!");
+		}
+		//
+		readFrame(header);
+		//
+		return OPEN;
+	}
+
+	/**
+	 * <p>
+	 * Reads the frames sent by the server, up to the end of the session.
+	 * </p>
+	 */
+	private void read() {
+		byte[] header = new byte[FRAME_HEADER_SIZE];
+		//
+		try {
+			while (readFully(header, 0, header.length)) {
+				readFrame(header);
+			}
+			//
+			throw new IOException("Connection closed by server!");
+		} catch (IOException e) {
+			if (errorCode != NO_ERROR) {
+				try {
+					writeGoAway(errorCode);
+				} catch (IOException e2) {}
+			}
+			//
+			fail(e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the payload of a frame and handles it.
+	 * </p>
+	 * @param header Frame header.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readFrame(byte[] header) throws IOException {
+		final int length =
+			((header[0] & 0xFF) << 16)
+				| ((header[1] & 0xFF) << 8)
+				| (header[2] & 0xFF);
+		final int type = header[3] & 0xFF;
+		final int flags = header[4] & 0xFF;
+		final int streamId = toInt(header, 5) & MAX_STREAM_ID;
+		//
+		if (length > DEFAULT_FRAME_SIZE) {
+			throw error(FRAME_SIZE_ERROR, "Frame too large!");
+		}
+		//
+		byte[] payload = new byte[length];
+		//
+		if (!readFully(payload, 0, length)) {
+			throw new IOException("Connection closed by server!");
+		}
+		if (headerStreamId != 0 && type != CONTINUATION) {
+			throw error(PROTOCOL_ERROR, "Header block interrupted!");
+		}
+		//
+		switch (type) {
+			case DATA:
+				readData(streamId, flags, payload);
+				break;
+			case HEADERS:
+				readHeaders(streamId, flags, payload);
+				break;
+			case CONTINUATION:
+				readContinuation(streamId, flags, payload);
+				break;
+			case RST_STREAM:
+				readReset(streamId, payload);
+				break;
+			case SETTINGS:
+				readSettings(flags, payload);
+				break;
+			case PUSH_PROMISE:
+				throw error(PROTOCOL_ERROR, "Server push disabled!");
+			case PING:
+				if ((flags & FLAG_ACK) == 0) {
+					writeFrame(PING, FLAG_ACK, 0, payload, 0, length);
+				}
+				break;
+			case GOAWAY:
+				readGoAway(payload);
+				break;
+			case WINDOW_UPDATE:
+				readWindowUpdate(streamId, payload);
+				break;
+			default:
+				// PRIORITY and unknown frames are ignored.
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handles a DATA frame. Its bytes are granted back to the server right
+	 * away for the connection, and once read for the stream, except for the
+	 * padding.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param flags Flags.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readData(int streamId, int flags, byte[] payload)
+		throws IOException {
+		int off = 0;
+		int len = payload.length;
+		//
+		if ((flags & FLAG_PADDED) != 0) {
+			off = 1;
+			len -= 1 + (len > 0 ? payload[0] & 0xFF : 0);
+			//
+			if (len < 0) {
+				throw error(PROTOCOL_ERROR, "Invalid padding!");
+			}
+		}
+		//
+		received += payload.length;
+		//
+		if (received >= WINDOW_UPDATE_THRESHOLD) {
+			writeWindowUpdate(0, received);
+			//
+			received = 0;
+		}
+		//
+		Stream stream = getStream(streamId);
+		//
+		if (stream != null) {
+			stream.connection.onData(payload, off, len);
+			//
+			if (len < payload.length) {
+				consume(stream, payload.length - len);
+			}
+			if ((flags & FLAG_END_STREAM) != 0) {
+				end(stream);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handles a HEADERS frame, which starts a header block.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param flags Flags.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readHeaders(int streamId, int flags, byte[] payload)
+		throws IOException {
+		int off = 0;
+		int end = payload.length;
+		//
+		if ((flags & FLAG_PADDED) != 0) {
+			off = 1;
+			end -= end > 0 ? payload[0] & 0xFF : 0;
+		}
+		if ((flags & FLAG_PRIORITY) != 0) {
+			off += 5;
+		}
+		if (streamId == 0 || off > end) {
+			throw error(PROTOCOL_ERROR, "Invalid HEADERS frame!");
+		}
+		//
+		headerStreamId = streamId;
+		headerFlags = flags;
+		headerBlock = new ByteArrayOutputStream(end - off);
+		headerBlock.write(payload, off, end - off);
+		//
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			endHeaders();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handles a CONTINUATION frame, which carries on a header block.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param flags Flags.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readContinuation(int streamId, int flags, byte[] payload)
+		throws IOException {
+		if (headerStreamId == 0 || streamId != headerStreamId) {
+			throw error(PROTOCOL_ERROR, "Invalid CONTINUATION frame!");
+		}
+		//
+		headerBlock.write(payload, 0, payload.length);
+		//
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			endHeaders();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decodes the header block received, which is done even if its stream
+	 * was closed, to keep the decoder in sync with the server's encoder.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void endHeaders() throws IOException {
+		byte[] block = headerBlock.toByteArray();
+		Vector names = new Vector(10);
+		Vector values = new Vector(10);
+		//
+		try {
+			decoder.decode(block, 0, block.length, names, values);
+		} catch (IOException e) {
+			throw error(COMPRESSION_ERROR, e.getMessage());
+		}
+		//
+		Stream stream = getStream(headerStreamId);
+		//
+		headerStreamId = 0;
+		headerBlock = null;
+		//
+		if (stream != null) {
+			stream.connection.onHeaders(names, values);
+			//
+			if ((headerFlags & FLAG_END_STREAM) != 0) {
+				end(stream);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handles a RST_STREAM frame. A stream refused by the server was not
+	 * processed, so its request can be sent again.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readReset(int streamId, byte[] payload) throws IOException {
+		if (payload.length != 4) {
+			throw error(FRAME_SIZE_ERROR, "Invalid RST_STREAM frame!");
+		}
+		//
+		final int code = toInt(payload, 0);
+		Stream stream;
+		//
+		synchronized (this) {
+			stream = getStream(streamId);
+			//
+			if (stream == null) {
+				return;
+			}
+			//
+			remove(stream);
+		}
+		//
+		stream.connection.onFailure(
+			new IOException("Stream reset by server: " + code),
+			code == REFUSED_STREAM);
+	}
+
+	/**
+	 * <p>
+	 * Handles a SETTINGS frame, acknowledging it.
+	 * </p>
+	 * @param flags Flags.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readSettings(int flags, byte[] payload) throws IOException {
+		if ((flags & FLAG_ACK) != 0) {
+			return;
+		}
+		if (payload.length % 6 != 0) {
+			throw error(FRAME_SIZE_ERROR, "Invalid SETTINGS frame!");
+		}
+		//
+		for (int i = 0; i < payload.length; i += 6) {
+			final int id = ((payload[i] & 0xFF) << 8) | (payload[i +1] & 0xFF);
+			int value = toInt(payload, i +2);
+			//
+			if (id == SETTINGS_HEADER_TABLE_SIZE) {
+				synchronized (writeLock) {
+					encoder.setMaxTableSize(
+						value >= 0 ? value : Integer.MAX_VALUE);
+				}
+			} else if (id == SETTINGS_MAX_CONCURRENT_STREAMS) {
+				synchronized (this) {
+					maxConcurrentStreams =
+						value >= 0 ? value : Integer.MAX_VALUE;
+					//
+					notifyAll();
+				}
+			} else if (id == SETTINGS_INITIAL_WINDOW_SIZE) {
+				if (value < 0) {
+					throw error(FLOW_CONTROL_ERROR, "Invalid window size!");
+				}
+				//
+				synchronized (this) {
+					final int delta = value - initialWindowSize;
+					initialWindowSize = value;
+					//
+					Enumeration e = streams.elements();
+					//
+					while (e.hasMoreElements()) {
+						((Stream)e.nextElement()).sendWindow += delta;
+					}
+					//
+					notifyAll();
+				}
+			} else if (id == SETTINGS_MAX_FRAME_SIZE) {
+				if (value < DEFAULT_FRAME_SIZE || value > 0xFFFFFF) {
+					throw error(PROTOCOL_ERROR, "Invalid frame size!");
+				}
+				//
+				synchronized (this) {
+					maxFrameSize = value;
+				}
+			}
+		}
+		//
+		writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+	}
+
+	/**
+	 * <p>
+	 * Handles a GOAWAY frame. The streams above the last one processed by
+	 * the server are failed as refused, so their requests can be sent again
+	 * over a new session. The others are carried on.
+	 * </p>
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readGoAway(byte[] payload) throws IOException {
+		if (payload.length < 8) {
+			throw error(FRAME_SIZE_ERROR, "Invalid GOAWAY frame!");
+		}
+		//
+		final int lastStreamId = toInt(payload, 0) & MAX_STREAM_ID;
+		Vector refused = new Vector();
+		//
+		synchronized (this) {
+			goingAway = true;
+			//
+			Enumeration e = streams.elements();
+			Stream stream;
+			//
+			while (e.hasMoreElements()) {
+				stream = (Stream)e.nextElement();
+				//
+				if (stream.id > lastStreamId) {
+					refused.addElement(stream);
+				}
+			}
+			//
+			for (int i = 0; i < refused.size(); i++) {
+				remove((Stream)refused.elementAt(i));
+			}
+			//
+			notifyAll();
+		}
+		//
+		for (int i = 0; i < refused.size(); i++) {
+			((Stream)refused.elementAt(i)).connection.onFailure(
+				new IOException("Stream refused by server!"), true);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handles a WINDOW_UPDATE frame, waking up the threads waiting to send.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param payload Payload.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readWindowUpdate(int streamId, byte[] payload)
+		throws IOException {
+		if (payload.length != 4) {
+			throw error(FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame!");
+		}
+		//
+		final int increment = toInt(payload, 0) & MAX_STREAM_ID;
+		//
+		if (increment == 0) {
+			throw error(PROTOCOL_ERROR, "Invalid window increment!");
+		}
+		//
+		synchronized (this) {
+			if (streamId == 0) {
+				if ((long)sendWindow + increment > MAX_STREAM_ID) {
+					throw error(FLOW_CONTROL_ERROR, "Window overflow!");
+				}
+				//
+				sendWindow += increment;
+			} else {
+				Stream stream = getStream(streamId);
+				//
+				if (stream != null) {
+					if ((long)stream.sendWindow + increment > MAX_STREAM_ID) {
+						throw error(FLOW_CONTROL_ERROR, "Window overflow!");
+					}
+					//
+					stream.sendWindow += increment;
+				}
+			}
+			//
+			notifyAll();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Ends the response of a given stream.
+	 * </p>
+	 * @param stream Stream.
+	 */
+	private void end(Stream stream) {
+		synchronized (this) {
+			stream.remoteEnded = true;
+			//
+			if (stream.localEnded) {
+				remove(stream);
+			}
+		}
+		//
+		stream.connection.onEnd();
+	}
+
+	/**
+	 * <p>
+	 * Returns the open stream with a given identifier.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @return Stream or <code>null</code> if not open.
+	 */
+	private synchronized Stream getStream(int streamId) {
+		return (Stream)streams.get(new Integer(streamId));
+	}
+
+	/**
+	 * <p>
+	 * Removes a given stream, releasing its slot. Once the server is
+	 * shutting the session down and there is no stream left, the socket is
+	 * closed. It must be called with the session lock held.
+	 * </p>
+	 * @param stream Stream.
+	 * @return Removed (true) or not open (false).
+	 */
+	private boolean remove(Stream stream) {
+		if (streams.remove(new Integer(stream.id)) == null) {
+			return false;
+		}
+		//
+		release();
+		//
+		if (goingAway && streams.isEmpty()) {
+			socket.close();
+		}
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Releases a stream slot, waking up the threads waiting for one. It must
+	 * be called with the session lock held.
+	 * </p>
+	 */
+	private void release() {
+		streamCount--;
+		//
+		if (streamCount == 0) {
+			idleSince = System.currentTimeMillis();
+		}
+		//
+		notifyAll();
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the session is open and a given connection is not
+	 * closed. It must be called with the session lock held.
+	 * </p>
+	 * @param connection Connection.
+	 * @throws IOException If any of them is closed.
+	 */
+	private void checkOpen(Http2Connection connection) throws IOException {
+		if (state == CLOSED) {
+			throw failure;
+		}
+		if (connection.isClosed()) {
+			throw new InterruptedIOException("Connection closed!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Waits for the session to change, e.g. a stream slot or window to be
+	 * released. It must be called with the session lock held.
+	 * </p>
+	 * @throws IOException If the wait is interrupted.
+	 */
+	private void await() throws IOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Connection interrupted!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the session due to a given failure, which is reported to all
+	 * open streams.
+	 * </p>
+	 * @param e Failure.
+	 */
+	private void fail(IOException e) {
+		Vector failed = new Vector(streams.size());
+		//
+		synchronized (this) {
+			if (state == CLOSED) {
+				return;
+			}
+			//
+			state = CLOSED;
+			failure = e;
+			//
+			Enumeration elements = streams.elements();
+			//
+			while (elements.hasMoreElements()) {
+				failed.addElement(elements.nextElement());
+			}
+			//
+			streams.clear();
+			streamCount = 0;
+			//
+			notifyAll();
+		}
+		//
+		if (socket != null) {
+			socket.close();
+		}
+		//
+		for (int i = 0; i < failed.size(); i++) {
+			((Stream)failed.elementAt(i)).connection.onFailure(e, false);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes a header block as a HEADERS frame followed by as many
+	 * CONTINUATION frames as needed. It must be called with the write lock
+	 * held, so the frames are not interleaved with others.
+	 * </p>
+	 * @param streamId Stream identifier.
+	 * @param block Header block.
+	 * @param endStream Whether there is no request body.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void writeHeader(int streamId, byte[] block, boolean endStream)
+		throws IOException {
+		int maxFrameSize;
+		//
+		synchronized (this) {
+			maxFrameSize = this.maxFrameSize;
+		}
+		//
+		int off = 0;
+		int n;
+		int flags;
+		//
+		do {
+			n = Math.min(block.length - off, maxFrameSize);
+			flags = off + n == block.length ? FLAG_END_HEADERS : 0;
+			//
+			if (off == 0) {
+				writeFrame(
+					HEADERS,
+					flags | (endStream ? FLAG_END_STREAM : 0),
+					streamId,
+					block,
+					off,
+					n);
+			} else {
+				writeFrame(CONTINUATION, flags, streamId, block, off, n);
+			}
+			//
+			off += n;
+		} while (off < block.length);
+	}
+
+	/**
+	 * <p>
+	 * Writes a WINDOW_UPDATE frame.
+	 * </p>
+	 * @param streamId Stream identifier. Zero means the connection.
+	 * @param increment Increment.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void writeWindowUpdate(int streamId, int increment)
+		throws IOException {
+		writeFrame(WINDOW_UPDATE, 0, streamId, toBytes(increment), 0, 4);
+	}
+
+	/**
+	 * <p>
+	 * Writes a GOAWAY frame, with the last stream started by the server,
+	 * which is none.
+	 * </p>
+	 * @param code Error code.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void writeGoAway(int code) throws IOException {
+		byte[] payload = new byte[8];
+		//
+		System.arraycopy(toBytes(code), 0, payload, 4, 4);
+		//
+		writeFrame(GOAWAY, 0, 0, payload, 0, payload.length);
+	}
+
+	/**
+	 * <p>
+	 * Writes a frame and flushes it. A failure closes the session.
+	 * </p>
+	 * @param type Type.
+	 * @param flags Flags.
+	 * @param streamId Stream identifier.
+	 * @param b Payload bytes.
+	 * @param off Offset.
+	 * @param len Length.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void writeFrame(int type, int flags, int streamId, byte[] b,
+		int off, int len) throws IOException {
+		byte[] frame = new byte[FRAME_HEADER_SIZE + len];
+		//
+		frame[0] = (byte)(len >>> 16);
+		frame[1] = (byte)(len >>> 8);
+		frame[2] = (byte)len;
+		frame[3] = (byte)type;
+		frame[4] = (byte)flags;
+		//
+		System.arraycopy(toBytes(streamId), 0, frame, 5, 4);
+		System.arraycopy(b, off, frame, FRAME_HEADER_SIZE, len);
+		//
+		synchronized (writeLock) {
+			synchronized (this) {
+				if (state == CLOSED) {
+					throw failure;
+				}
+			}
+			//
+			try {
+				OutputStream out = socket.getOutputStream();
+				//
+				out.write(frame);
+				out.flush();
+			} catch (IOException e) {
+				fail(e);
+				//
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads bytes from the socket up to a given length.
+	 * </p>
+	 * @param b Buffer.
+	 * @param off Offset.
+	 * @param len Length.
+	 * @return Read (true) or end of the stream (false).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private boolean readFully(byte[] b, int off, int len) throws IOException {
+		int n;
+		//
+		while (len > 0) {
+			n = socket.read(b, off, len);
+			//
+			if (n == -1) {
+				return false;
+			}
+			//
+			off += n;
+			len -= n;
+		}
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Sets the error code sent to the server and returns the failure that
+	 * closes the session.
+	 * </p>
+	 * @param code Error code.
+	 * @param message Message.
+	 * @return Failure.
+	 */
+	private IOException error(int code, String message) {
+		errorCode = code;
+		//
+		return new IOException(message);
+	}
+
+	/**
+	 * <p>
+	 * Reads a 32-bit integer.
+	 * </p>
+	 * @param b Bytes.
+	 * @param off Offset.
+	 * @return Integer.
+	 */
+	private static int toInt(byte[] b, int off) {
+		return ((b[off] & 0xFF) << 24)
+			| ((b[off +1] & 0xFF) << 16)
+			| ((b[off +2] & 0xFF) << 8)
+			| (b[off +3] & 0xFF);
+	}
+
+	/**
+	 * <p>
+	 * Converts a 32-bit integer into bytes.
+	 * </p>
+	 * @param value Integer.
+	 * @return Bytes.
+	 */
+	private static byte[] toBytes(int value) {
+		return new byte[] {
+			(byte)(value >>> 24),
+			(byte)(value >>> 16),
+			(byte)(value >>> 8),
+			(byte)value};
+	}
+}
@@ -0,0 +1,435 @@
+/* Http2Transport.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This class implements a transport that speaks HTTP/2 to the hosts that
+ * support it, multiplexing all concurrent requests to a host over a single
+ * session, i.e. one socket, one handshake and one compression context, whose
+ * header fields are compressed with HPACK.
+ * </p>
+ * <p>
+ * HTTP/2 is spoken over plain sockets with prior knowledge, i.e. the first
+ * request to a host sends the HTTP/2 connection preface straight away. In
+ * case the host answers with HTTP/1, it is remembered as a HTTP/1 host and
+ * its requests are sent through the socket transport, as are HTTPS
+ * requests, since MIDP's secure connections cannot negotiate HTTP/2 during
+ * the TLS handshake. A host that does not answer at all within the
+ * handshake timeout is taken as a HTTP/1 host for a minute only.
+ * </p>
+ * <p>
+ * Sessions that have had no stream for the idle timeout of the connection
+ * pool are closed.
+ * </p>
+ * <p>
+ * Every request still blocks the thread that sends it until its response is
+ * read, so as many requests are in flight as threads sending them, e.g. the
+ * pool size of the dispatcher.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see SocketTransport
+ */
+public final class Http2Transport implements Transport {
+	/**
+	 * <p>
+	 * Default handshake timeout.
+	 * </p>
+	 */
+	public static final long DEFAULT_HANDSHAKE_TIMEOUT = 10000;
+
+	/**
+	 * <p>
+	 * Time a host that did not answer the connection preface is taken as a
+	 * HTTP/1 host.
+	 * </p>
+	 */
+	private static final long SILENT_HOST_TIMEOUT = 60000;
+
+	/**
+	 * <p>
+	 * Socket transport, which opens the sockets and sends the requests to
+	 * HTTP/1 hosts.
+	 * </p>
+	 */
+	private SocketTransport transport;
+
+	/**
+	 * <p>
+	 * Sessions, by pool key.
+	 * </p>
+	 */
+	private Hashtable sessions = new Hashtable(4);
+
+	/**
+	 * <p>
+	 * Time each host is taken as a HTTP/1 host until, by pool key.
+	 * </p>
+	 */
+	private Hashtable http1Hosts = new Hashtable(4);
+
+	/**
+	 * <p>
+	 * Timer that closes the idle sessions.
+	 * </p>
+	 */
+	private Timer idleTimer;
+
+	/**
+	 * <p>
+	 * Handshake timeout.
+	 * </p>
+	 */
+	private long handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+
+	/**
+	 * <p>
+	 * Number of sessions started.
+	 * </p>
+	 */
+	private int sessionCount;
+
+	/**
+	 * <p>
+	 * Creates a Http2Transport with a new socket transport.
+	 * </p>
+	 */
+	public Http2Transport() {
+		this(new SocketTransport());
+	}
+
+	/**
+	 * <p>
+	 * Creates a Http2Transport with a given socket transport, which opens
+	 * the sockets, with its socket factory and DNS cache, and sends the
+	 * requests to HTTP/1 hosts.
+	 * </p>
+	 * @param transport Socket transport.
+	 * @throws IllegalArgumentException Transport null!
+	 */
+	public Http2Transport(SocketTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Transport null!");
+		}
+		//
+		this.transport = transport;
+	}
+
+	/**
+	 * <p>
+	 * Returns the socket transport.
+	 * </p>
+	 * @return Socket transport.
+	 */
+	public SocketTransport getSocketTransport() {
+		return transport;
+	}
+
+	/**
+	 * <p>
+	 * Returns the handshake timeout.
+	 * </p>
+	 * @return Timeout in milliseconds.
+	 */
+	public long getHandshakeTimeout() {
+		return handshakeTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Sets the time a host has to answer the HTTP/2 connection preface,
+	 * after which it is taken as a HTTP/1 host for a while.
+	 * </p>
+	 * @param handshakeTimeout Timeout in milliseconds. Zero means none.
+	 * @throws IllegalArgumentException Timeout must not be negative!
+	 */
+	public void setHandshakeTimeout(long handshakeTimeout) {
+		if (handshakeTimeout < 0) {
+			throw new IllegalArgumentException(
+				"Timeout must not be negative!");
+		}
+		//
+		this.handshakeTimeout = handshakeTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of HTTP/2 sessions started so far.
+	 * </p>
+	 * @return Count.
+	 */
+	public synchronized int getSessionCount() {
+		return sessionCount;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the host of a given URL is known to speak HTTP/1
+	 * only, or is taken as such since it did not answer lately.
+	 * </p>
+	 * @param url URL.
+	 * @return HTTP/1 only (true).
+	 */
+	public synchronized boolean isHttp1Host(URL url) {
+		return isHttp1Host(getKey(url));
+	}
+
+	/**
+	 * <p>
+	 * Closes all sessions, failing their ongoing requests. The next requests
+	 * start new ones.
+	 * </p>
+	 */
+	public void closeAll() {
+		Enumeration e;
+		//
+		synchronized (this) {
+			e = sessions.elements();
+			sessions = new Hashtable(4);
+			//
+			stopIdleTimer();
+		}
+		//
+		while (e.hasMoreElements()) {
+			((Http2Session)e.nextElement()).close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens a connection sent over the session to the host of a given URL,
+	 * which is started by the first request. HTTPS URLs and HTTP/1 hosts are
+	 * sent through the socket transport.
+	 * </p>
+	 * @see com.emobtech.networkingme.http.Transport#open(com.emobtech.networkingme.URL)
+	 */
+	public HttpConnection open(URL url) throws IOException {
+		Http2Session session =
+			"http".equals(url.getScheme().toLowerCase())
+				? getSession(url) : null;
+		//
+		return session != null
+			? (HttpConnection)new Http2Connection(this, session, url)
+			: transport.open(url);
+	}
+
+	/**
+	 * <p>
+	 * Returns the session to the host of a given URL, starting a new one in
+	 * case there is none usable. It blocks while the session starts.
+	 * </p>
+	 * @param url URL.
+	 * @return Session or <code>null</code> if the host speaks HTTP/1 only.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	Http2Session getSession(URL url) throws IOException {
+		final String key = getKey(url);
+		Http2Session session;
+		boolean created = false;
+		//
+		synchronized (this) {
+			if (isHttp1Host(key)) {
+				return null;
+			}
+			//
+			session = (Http2Session)sessions.get(key);
+			//
+			if (session == null || !session.isUsable()) {
+				session = new Http2Session();
+				sessions.put(key, session);
+				//
+				created = true;
+			}
+		}
+		//
+		if (created) {
+			try {
+				session.start(transport, key, url, handshakeTimeout);
+			} catch (IOException e) {
+				remove(key, session);
+				//
+				throw e;
+			}
+		}
+		//
+		if (session.awaitStart()) {
+			if (created) {
+				synchronized (this) {
+					sessionCount++;
+					//
+					startIdleTimer();
+				}
+			}
+			//
+			return session;
+		}
+		//
+		final long until =
+			session.isHttp1()
+				? Long.MAX_VALUE
+				: System.currentTimeMillis() + SILENT_HOST_TIMEOUT;
+		//
+		synchronized (this) {
+			http1Hosts.put(key, new Long(until));
+		}
+		//
+		remove(key, session);
+		//
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the host of a given pool key is taken as a HTTP/1 host,
+	 * forgetting it once its time is over. It must be called with the lock
+	 * held.
+	 * </p>
+	 * @param key Pool key.
+	 * @return HTTP/1 (true).
+	 */
+	private boolean isHttp1Host(String key) {
+		Long until = (Long)http1Hosts.get(key);
+		//
+		if (until == null) {
+			return false;
+		}
+		if (until.longValue() > System.currentTimeMillis()) {
+			return true;
+		}
+		//
+		http1Hosts.remove(key);
+		//
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Starts the timer that closes the idle sessions, in case it is not
+	 * running. It checks them as often as the idle timeout of the connection
+	 * pool. It must be called with the lock held.
+	 * </p>
+	 */
+	private void startIdleTimer() {
+		if (idleTimer != null) {
+			return;
+		}
+		//
+		final long timeout = transport.getConnectionPool().getIdleTimeout();
+		//
+		idleTimer = new Timer();
+		idleTimer.schedule(new TimerTask() {
+			public void run() {
+				closeIdle(timeout);
+			}
+		}, timeout, timeout);
+	}
+
+	/**
+	 * <p>
+	 * Stops the timer that closes the idle sessions. It must be called with
+	 * the lock held.
+	 * </p>
+	 */
+	private void stopIdleTimer() {
+		if (idleTimer != null) {
+			idleTimer.cancel();
+			idleTimer = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the sessions that have had no stream for a given time and
+	 * removes the unusable ones. The timer is stopped once there is no
+	 * session left.
+	 * </p>
+	 * @param timeout Idle timeout.
+	 */
+	private void closeIdle(long timeout) {
+		Vector keys = new Vector(4);
+		Vector all = new Vector(4);
+		//
+		synchronized (this) {
+			Enumeration e = sessions.keys();
+			//
+			while (e.hasMoreElements()) {
+				Object key = e.nextElement();
+				//
+				keys.addElement(key);
+				all.addElement(sessions.get(key));
+			}
+		}
+		//
+		for (int i = 0; i < keys.size(); i++) {
+			Http2Session session = (Http2Session)all.elementAt(i);
+			//
+			if (session.closeIfIdle(timeout) || !session.isUsable()) {
+				remove((String)keys.elementAt(i), session);
+			}
+		}
+		//
+		synchronized (this) {
+			if (sessions.isEmpty()) {
+				stopIdleTimer();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes a given session, unless it was replaced meanwhile.
+	 * </p>
+	 * @param key Pool key.
+	 * @param session Session.
+	 */
+	private synchronized void remove(String key, Http2Session session) {
+		if (sessions.get(key) == session) {
+			sessions.remove(key);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the pool key of a given URL, e.g. "http://www.emobtech.com:80".
+	 * </p>
+	 * @param url URL.
+	 * @return Key.
+	 */
+	private static String getKey(URL url) {
+		return url.getScheme().toLowerCase() + "://" + url.getAuthority();
+	}
+}
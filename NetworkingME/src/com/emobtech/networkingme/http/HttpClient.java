@@ -23,17 +23,21 @@
  */
 package com.emobtech.networkingme.http;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
 import com.emobtech.networkingme.BinaryListener;
+import com.emobtech.networkingme.Executor;
 import com.emobtech.networkingme.Payload;
 import com.emobtech.networkingme.Request;
 import com.emobtech.networkingme.RequestException;
 import com.emobtech.networkingme.RequestOperation;
 import com.emobtech.networkingme.RequestOperation.Listener;
 import com.emobtech.networkingme.Response;
+import com.emobtech.networkingme.StreamListener;
 import com.emobtech.networkingme.TextListener;
 import com.emobtech.networkingme.URL;
 import com.emobtech.networkingme.http.HttpRequest.Header;
@@ -63,7 +67,7 @@ import com.emobtech.networkingme.util.Util;
  * disable it, use {@link HttpClient#setTrackCookie(boolean)}.  
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class HttpClient {
@@ -95,6 +99,20 @@ public final class HttpClient {
 	 */
 	private boolean trackCookie = true;
 	
+	/**
+	 * <p>
+	 * Coalesce requests flag.
+	 * </p>
+	 */
+	private boolean coalesceRequests;
+	
+	/**
+	 * <p>
+	 * Compress bodies flag.
+	 * </p>
+	 */
+	private boolean compressBodies;
+	
 	/**
 	 * <p>
 	 * Cookies.
@@ -102,6 +120,55 @@ public final class HttpClient {
 	 */
 	private Vector cookies;
 	
+	/**
+	 * <p>
+	 * Priority.
+	 * </p>
+	 */
+	private int priority = Request.Priority.NORMAL;
+	
+	/**
+	 * <p>
+	 * Total timeout.
+	 * </p>
+	 */
+	private long timeout;
+	
+	/**
+	 * <p>
+	 * Idle timeout.
+	 * </p>
+	 */
+	private long idleTimeout;
+	
+	/**
+	 * <p>
+	 * Maximum response length.
+	 * </p>
+	 */
+	private long maxResponseLength;
+	
+	/**
+	 * <p>
+	 * Memory budget.
+	 * </p>
+	 */
+	private MemoryBudget memoryBudget;
+	
+	/**
+	 * <p>
+	 * Executor.
+	 * </p>
+	 */
+	private Executor executor;
+	
+	/**
+	 * <p>
+	 * Transport.
+	 * </p>
+	 */
+	private Transport transport;
+	
 	/**
 	 * <p>
 	 * Creates a HttpClient for a given base URL.
@@ -166,6 +233,157 @@ public final class HttpClient {
 		handleRedirect = enabled;
 	}
 	
+	/**
+	 * <p>
+	 * Sets whether identical GET and HEAD requests in flight share a single
+	 * run and response. It is disabled by default.
+	 * </p>
+	 * @param enabled Enabled (true).
+	 * @see RequestOperation#setCoalesce(boolean)
+	 */
+	public void setCoalesceRequests(boolean enabled) {
+		coalesceRequests = enabled;
+	}
+	
+	/**
+	 * <p>
+	 * Sets whether the bodies of all requests started by this client are
+	 * compressed with gzip, which the server must support. It is disabled by
+	 * default.
+	 * </p>
+	 * @param enabled Enabled (true).
+	 * @see HttpRequest#setCompressBody(boolean)
+	 */
+	public void setCompressBodies(boolean enabled) {
+		compressBodies = enabled;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the priority of all requests started by this client.
+	 * </p>
+	 * @param priority Priority.
+	 * @throws IllegalArgumentException Priority invalid!
+	 * @see Request.Priority
+	 */
+	public void setPriority(int priority) {
+		if (priority < Request.Priority.INTERACTIVE
+				|| priority > Request.Priority.BACKGROUND) {
+			throw new IllegalArgumentException("Priority invalid!");
+		}
+		//
+		this.priority = priority;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, each request started by this
+	 * client can take to be sent and have its response read. Zero means no
+	 * limit, which is the default.
+	 * </p>
+	 * @param timeout Timeout.
+	 * @throws IllegalArgumentException Timeout must not be negative!
+	 * @see HttpRequest#setTimeout(long)
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative!");
+		}
+		//
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, each request started by this
+	 * client can wait for the connection or between two transferred bytes.
+	 * Zero means no limit, which is the default.
+	 * </p>
+	 * @param idleTimeout Idle timeout.
+	 * @throws IllegalArgumentException Idle timeout must not be negative!
+	 * @see HttpRequest#setIdleTimeout(long)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException(
+				"Idle timeout must not be negative!");
+		}
+		//
+		this.idleTimeout = idleTimeout;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum length, in bytes, of the response's content of each
+	 * request started by this client. Zero means no limit, which is the
+	 * default.
+	 * </p>
+	 * @param maxResponseLength Maximum length.
+	 * @throws IllegalArgumentException Maximum response length must not be
+	 *         negative!
+	 * @see HttpRequest#setMaxResponseLength(long)
+	 */
+	public void setMaxResponseLength(long maxResponseLength) {
+		if (maxResponseLength < 0) {
+			throw new IllegalArgumentException(
+				"Maximum response length must not be negative!");
+		}
+		//
+		this.maxResponseLength = maxResponseLength;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the memory budget shared by the responses of all requests started
+	 * by this client, which caps how many bytes they buffer at the same time.
+	 * <code>null</code>, the default, means no budget.
+	 * </p>
+	 * @param memoryBudget Memory budget.
+	 * @see HttpRequest#setMemoryBudget(MemoryBudget)
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the executor that runs all requests started by this client.
+	 * <code>null</code>, the default, means the default executor.
+	 * </p>
+	 * @param executor Executor.
+	 * @see RequestOperation#setExecutor(Executor)
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the transport all requests started by this client are sent
+	 * through. <code>null</code>, the default, means the default transport.
+	 * </p>
+	 * @param transport Transport.
+	 * @see HttpRequest#setTransport(Transport)
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the pool of persistent connections all requests started by this
+	 * client are sent through, over a socket transport. <code>null</code>
+	 * means the default transport.
+	 * </p>
+	 * @param connectionPool Pool.
+	 * @see SocketTransport
+	 */
+	public void setConnectionPool(ConnectionPool connectionPool) {
+		setTransport(
+			connectionPool != null
+				? new SocketTransport(connectionPool) : null);
+	}
+	
 	/**
 	 * <p>
 	 * Sets a value to a given header field.
@@ -402,6 +620,47 @@ public final class HttpClient {
 			listener);
 	}
 
+	/**
+	 * <p>
+	 * Creates a pipeline of GET and HEAD requests, which are sent back to
+	 * back over a same persistent connection per host.
+	 * </p>
+	 * @return Pipeline.
+	 * @see HttpClient#setConnectionPool(ConnectionPool)
+	 */
+	public Pipeline pipeline() {
+		return new Pipeline(this);
+	}
+
+	/**
+	 * <p>
+	 * Resolves a given host ahead of the requests to it, with the scheme of
+	 * the base URL, in case this client sends them through a socket
+	 * transport, or a HTTP/2 transport over one. It blocks until done, so it
+	 * must not be called from the UI thread.
+	 * </p>
+	 * @param host Host name, with the port if not the default one.
+	 * @throws IOException If any I/O error occurs.
+	 * @throws IllegalArgumentException Host null or empty!
+	 * @see SocketTransport#preresolve(URL)
+	 */
+	public void preresolve(String host) throws IOException {
+		if (Util.isEmptyString(host)) {
+			throw new IllegalArgumentException("Host null or empty!");
+		}
+		//
+		Transport transport = getTransport();
+		//
+		if (transport instanceof Http2Transport) {
+			transport = ((Http2Transport)transport).getSocketTransport();
+		}
+		//
+		if (transport instanceof SocketTransport) {
+			((SocketTransport)transport).preresolve(
+				new URL(baseURL.getScheme() + "://" + host + "/"));
+		}
+	}
+
 	/**
 	 * <p>
 	 * Starts a given HTTP request.
@@ -409,11 +668,73 @@ public final class HttpClient {
 	 * @param request Request.
 	 * @param listener Request event listener.
 	 */
-	private void start(final HttpRequest request, final Listener listener) {
+	void start(HttpRequest request, Listener listener) {
+		prepare(request);
+		//
+		RequestOperation operation = newOperation(request);
+		operation.setCoalesce(coalesceRequests);
+		//
+		operation.start(wrap(listener));
+	}
+	
+	/**
+	 * <p>
+	 * Applies the header fields, cookies and settings of this client to a
+	 * given request.
+	 * </p>
+	 * @param request Request.
+	 */
+	void prepare(HttpRequest request) {
 		writeHeader(request);
 		writeCookies(request);
 		//
-		new RequestOperation(request).start(new RequestOperation.Listener() {
+		request.setPriority(priority);
+		request.setTimeout(timeout);
+		request.setIdleTimeout(idleTimeout);
+		request.setMaxResponseLength(maxResponseLength);
+		request.setMemoryBudget(memoryBudget);
+		request.setTransport(transport);
+		request.setCompressBody(compressBodies);
+	}
+	
+	/**
+	 * <p>
+	 * Creates an operation to run a given request with the executor of this
+	 * client.
+	 * </p>
+	 * @param request Request.
+	 * @return Operation.
+	 */
+	RequestOperation newOperation(Request request) {
+		RequestOperation operation = new RequestOperation(request);
+		operation.setExecutor(executor);
+		//
+		return operation;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the transport of this client, or the default one if it has
+	 * none.
+	 * </p>
+	 * @return Transport.
+	 */
+	Transport getTransport() {
+		return transport != null
+			? transport : HttpRequest.getDefaultTransport();
+	}
+	
+	/**
+	 * <p>
+	 * Wraps a given listener, so redirects are followed and cookies are
+	 * collected before it is notified. A stream listener is wrapped by
+	 * another one, so its content is still streamed.
+	 * </p>
+	 * @param listener Request event listener.
+	 * @return Wrapping listener.
+	 */
+	Listener wrap(final Listener listener) {
+		final Listener wrapper = new RequestOperation.Listener() {
 			public void onSuccess(Request request, Response response) {
 				HttpResponse res = (HttpResponse)response;
 				//
@@ -445,7 +766,30 @@ public final class HttpClient {
 					listener.onFailure(request, exception);
 				}
 			}
-		});
+		};
+		//
+		if (!(listener instanceof StreamListener)) {
+			return wrapper;
+		}
+		//
+		return new StreamListener() {
+			public void onStream(Request request, Response response,
+				InputStream in) throws IOException {
+				((StreamListener)listener).onStream(request, response, in);
+			}
+
+			public void onSuccess(Request request, Response response) {
+				wrapper.onSuccess(request, response);
+			}
+
+			public void onComplete(Request request, Response response) {
+				wrapper.onComplete(request, response);
+			}
+
+			public void onFailure(Request request, RequestException exception) {
+				wrapper.onFailure(request, exception);
+			}
+		};
 	}
 	
 	/**
@@ -522,7 +866,7 @@ public final class HttpClient {
 	 * @param path Path.
 	 * @throws IllegalArgumentException Path null or empty!
 	 */
-	private void checkPath(String path) {
+	void checkPath(String path) {
 		if (Util.isEmptyString(path)) {
 			throw new IllegalArgumentException("Path null or empty!");
 		}
@@ -554,6 +898,8 @@ public final class HttpClient {
 			setHeader(HttpRequest.Header.ACCEPT_CHARSET, Util.UTF8);
 		}
 		//
+		setHeader(HttpRequest.Header.ACCEPT_ENCODING, "gzip, deflate");
+		//
 		setHeader(HttpRequest.Header.USER_AGENT, Util.USER_AGENT);
 	}
 }
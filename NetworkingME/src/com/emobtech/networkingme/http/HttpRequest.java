@@ -23,18 +23,25 @@
  */
 package com.emobtech.networkingme.http;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
-import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
 
 import com.emobtech.networkingme.Payload;
 import com.emobtech.networkingme.Request;
+import com.emobtech.networkingme.RequestTimeoutException;
 import com.emobtech.networkingme.Response;
+import com.emobtech.networkingme.ResponseTooLargeException;
+import com.emobtech.networkingme.StreamListener;
+import com.emobtech.networkingme.StreamingPayload;
 import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.GZIPOutputStream;
 import com.emobtech.networkingme.util.Util;
 
 /**
@@ -42,7 +49,7 @@ import com.emobtech.networkingme.util.Util;
  * This class represents a HTTP request.
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class HttpRequest extends Request {
@@ -98,6 +105,11 @@ public final class HttpRequest extends Request {
 		 */
 		public static final int OK = 200;
 
+		/**
+		 * <p>Partial Content.</p>
+		 */
+		public static final int PARTIAL_CONTENT = 206;
+
 		/**
 		 * <p>Multiple Choices.</p>
 		 */
@@ -158,6 +170,11 @@ public final class HttpRequest extends Request {
 		 */
 		public static final int REQUEST_TIMEOUT = 408;
 		
+		/**
+		 * <p>Requested Range Not Satisfiable.</p>
+		 */
+		public static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+		
 		/**
 		 * <p>Too Many Requests.</p>
 		 */
@@ -267,8 +284,61 @@ public final class HttpRequest extends Request {
 		 * <p>Content Disposition.</p>
 		 */
 		public static final String CONTENT_DISPOSITION = "Content-Disposition";
+
+		/**
+		 * <p>Content Encoding.</p>
+		 */
+		public static final String CONTENT_ENCODING = "Content-Encoding";
+
+		/**
+		 * <p>Content Range.</p>
+		 */
+		public static final String CONTENT_RANGE = "Content-Range";
+
+		/**
+		 * <p>Range.</p>
+		 */
+		public static final String RANGE = "Range";
+
+		/**
+		 * <p>If Range.</p>
+		 */
+		public static final String IF_RANGE = "If-Range";
+
+		/**
+		 * <p>ETag.</p>
+		 */
+		public static final String ETAG = "ETag";
+
+		/**
+		 * <p>Last Modified.</p>
+		 */
+		public static final String LAST_MODIFIED = "Last-Modified";
 	}
 
+	/**
+	 * <p>
+	 * Minimum length of a body to be compressed, in bytes.
+	 * </p>
+	 */
+	public static final int MIN_COMPRESSED_LENGTH = 1024;
+
+	/**
+	 * <p>
+	 * Content types of bodies that are already compressed.
+	 * </p>
+	 */
+	private static final String[] COMPRESSED_TYPES = {
+		"image/", "audio/", "video/", "application/zip", "application/gzip",
+		"application/x-gzip"};
+
+	/**
+	 * <p>
+	 * Transport of all requests that do not have their own.
+	 * </p>
+	 */
+	private static Transport defaultTransport = new ConnectorTransport();
+
 	/**
 	 * <p>
 	 * URL.
@@ -296,6 +366,83 @@ public final class HttpRequest extends Request {
 	 * </p>
 	 */
 	private Payload body;
+	
+	/**
+	 * <p>
+	 * Compress body flag.
+	 * </p>
+	 */
+	private boolean compressBody;
+	
+	/**
+	 * <p>
+	 * Total timeout.
+	 * </p>
+	 */
+	private long timeout;
+	
+	/**
+	 * <p>
+	 * Idle timeout.
+	 * </p>
+	 */
+	private long idleTimeout;
+	
+	/**
+	 * <p>
+	 * Maximum response length.
+	 * </p>
+	 */
+	private long maxResponseLength;
+	
+	/**
+	 * <p>
+	 * Memory budget.
+	 * </p>
+	 */
+	private MemoryBudget memoryBudget;
+	
+	/**
+	 * <p>
+	 * Transport.
+	 * </p>
+	 */
+	private Transport transport;
+	
+	/**
+	 * <p>
+	 * Deadline of the ongoing sending.
+	 * </p>
+	 */
+	private Watchdog.Deadline deadline;
+	
+	/**
+	 * <p>
+	 * Aborted flag.
+	 * </p>
+	 */
+	private boolean aborted;
+	
+	/**
+	 * <p>
+	 * Connection of the ongoing sending.
+	 * </p>
+	 */
+	private HttpConnection connection;
+	
+	/**
+	 * <p>
+	 * Input stream of the ongoing sending.
+	 * </p>
+	 */
+	private InputStream input;
+	
+	/**
+	 * <p>
+	 * Output stream of the ongoing sending.
+	 * </p>
+	 */
+	private OutputStream output;
 
 	/**
 	 * <p>
@@ -435,29 +582,503 @@ public final class HttpRequest extends Request {
 		this.body = body;
 	}
 	
+	/**
+	 * <p>
+	 * Returns whether the body is compressed.
+	 * </p>
+	 * @return Compressed (true).
+	 */
+	public boolean isCompressBody() {
+		return compressBody;
+	}
+	
+	/**
+	 * <p>
+	 * Sets whether the body is compressed with gzip, which the server must
+	 * support. Bodies shorter than {@link #MIN_COMPRESSED_LENGTH} and those
+	 * already compressed, e.g. images or multipart bodies with an image
+	 * part, are sent as they are. A streaming body is compressed as it is
+	 * written, so its length becomes unknown.
+	 * It is disabled by default.
+	 * </p>
+	 * @param enabled Enabled (true).
+	 * @see Header#CONTENT_ENCODING
+	 */
+	public void setCompressBody(boolean enabled) {
+		compressBody = enabled;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the maximum time, in milliseconds, the request can take to be
+	 * sent and have its response read. Zero means no limit.
+	 * </p>
+	 * @return Timeout.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, the request can take to be 
+	 * sent and have its response read. Once exceeded, the connection is
+	 * closed and the request fails with a {@link RequestTimeoutException}.
+	 * Zero means no limit, which is the default.
+	 * </p>
+	 * @param timeout Timeout.
+	 * @throws IllegalArgumentException Timeout must not be negative!
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative!");
+		}
+		//
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the maximum time, in milliseconds, the request can wait for
+	 * the connection or between two transferred bytes. Zero means no limit.
+	 * </p>
+	 * @return Idle timeout.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, the request can wait for the
+	 * connection or between two transferred bytes. Once exceeded, the 
+	 * connection is closed and the request fails with a 
+	 * {@link RequestTimeoutException}. Zero means no limit, which is the 
+	 * default.
+	 * </p>
+	 * @param idleTimeout Idle timeout.
+	 * @throws IllegalArgumentException Idle timeout must not be negative!
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException(
+				"Idle timeout must not be negative!");
+		}
+		//
+		this.idleTimeout = idleTimeout;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the maximum length, in bytes, of the response's content. Zero
+	 * means no limit.
+	 * </p>
+	 * @return Maximum length.
+	 */
+	public long getMaxResponseLength() {
+		return maxResponseLength;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the maximum length, in bytes, of the response's content, either
+	 * buffered or streamed. Once either the declared length or the count of
+	 * read bytes exceeds it, the connection is closed and the request fails
+	 * with a {@link ResponseTooLargeException}. Zero means no limit, which is
+	 * the default.
+	 * </p>
+	 * @param maxResponseLength Maximum length.
+	 * @throws IllegalArgumentException Maximum response length must not be
+	 *         negative!
+	 */
+	public void setMaxResponseLength(long maxResponseLength) {
+		if (maxResponseLength < 0) {
+			throw new IllegalArgumentException(
+				"Maximum response length must not be negative!");
+		}
+		//
+		this.maxResponseLength = maxResponseLength;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the memory budget the buffered response is charged to.
+	 * </p>
+	 * @return Memory budget.
+	 */
+	public MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the memory budget the buffered response is charged to while it is
+	 * read. A streamed response is not charged. <code>null</code>, the
+	 * default, means no budget.
+	 * </p>
+	 * @param memoryBudget Memory budget.
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the transport of all requests that do not have their own.
+	 * <code>null</code> restores the platform's HTTP connection.
+	 * </p>
+	 * @param transport Transport.
+	 * @see ConnectorTransport
+	 */
+	public static synchronized void setDefaultTransport(Transport transport) {
+		defaultTransport =
+			transport != null ? transport : new ConnectorTransport();
+	}
+	
+	/**
+	 * <p>
+	 * Returns the transport of all requests that do not have their own.
+	 * </p>
+	 * @return Transport.
+	 */
+	public static synchronized Transport getDefaultTransport() {
+		return defaultTransport;
+	}
+	
+	/**
+	 * <p>
+	 * Returns the transport the request is sent through.
+	 * </p>
+	 * @return Transport.
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the transport the request is sent through. <code>null</code>, the
+	 * default, means the default transport.
+	 * </p>
+	 * @param transport Transport.
+	 * @see HttpRequest#setDefaultTransport(Transport)
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+	
+	/**
+	 * @see com.emobtech.networkingme.Request#getAuthority()
+	 */
+	protected String getAuthority() {
+		return url.getAuthority();
+	}
+	
+	/**
+	 * <p>
+	 * Returns the key of GET and HEAD requests, made of the method, encoded
+	 * URL and header fields. Other methods are never shared.
+	 * </p>
+	 * @see com.emobtech.networkingme.Request#getCoalescingKey()
+	 */
+	protected String getCoalescingKey() {
+		if (!Method.GET.equals(method) && !Method.HEAD.equals(method)) {
+			return null;
+		}
+		//
+		StringBuffer key = new StringBuffer();
+		key.append(method).append(' ').append(url.toEncodedString());
+		//
+		if (header != null && header.size() > 0) {
+			String[] keys = new String[header.size()];
+			Enumeration e = header.keys();
+			//
+			for (int i = 0; e.hasMoreElements(); i++) {
+				keys[i] = (String)e.nextElement();
+			}
+			//
+			sort(keys);
+			//
+			for (int i = 0; i < keys.length; i++) {
+				key.append('\n').append(keys[i].toLowerCase()).append(':');
+				key.append(header.get(keys[i]));
+			}
+		}
+		//
+		return key.toString();
+	}
+	
 	/**
 	 * @see com.emobtech.networkingme.Request#send()
 	 */
 	protected Response send() throws IOException {
-		final String url = getURL().toEncodedString();
+		return send((StreamListener)null);
+	}
+	
+	/**
+	 * <p>
+	 * Sends the request, handing the content of a 2xx response over to a
+	 * given listener straight from the connection, which is closed once the
+	 * listener returns. Other responses are buffered as usual.
+	 * </p>
+	 * @see com.emobtech.networkingme.Request#send(com.emobtech.networkingme.StreamListener)
+	 */
+	protected Response send(StreamListener listener) throws IOException {
+		final Watchdog.Deadline deadline =
+			Watchdog.getInstance().watch(this, timeout, idleTimeout);
 		//
-		HttpConnection conn =
-			(HttpConnection)Connector.open(url, Connector.READ_WRITE, true);
+		synchronized (this) {
+			this.deadline = deadline;
+		}
 		//
-		conn.setRequestMethod(method);
+		try {
+			HttpConnection conn =
+				(transport != null ? transport : getDefaultTransport()).open(
+					getURL());
+			//
+			try {
+				setConnection(conn);
+				//
+				writeRequest(conn);
+				//
+				InputStream in = openInputStream(conn);
+				int code = conn.getResponseCode();
+				//
+				if (listener != null
+						&& code >= Code.OK && code < Code.MULTIPLE_CHOICES) {
+					HttpResponse response = new HttpResponse(conn);
+					InputStream content = HttpResponse.decode(conn, in);
+					//
+					if (maxResponseLength > 0) {
+						content =
+							new LimitedInputStream(
+								content,
+								content != in ? -1 : conn.getLength(),
+								maxResponseLength,
+								null);
+					}
+					//
+					listener.onStream(this, response, content);
+					//
+					return response;
+				}
+				//
+				return new HttpResponse(conn, in, this);
+			} finally {
+				releaseConnection();
+			}
+		} catch (IOException e) {
+			if (deadline != null && deadline.isExpired()) {
+				throw new RequestTimeoutException("Request timed out!");
+			} else {
+				throw e;
+			}
+		} finally {
+			Watchdog.getInstance().unwatch(deadline);
+			//
+			synchronized (this) {
+				this.deadline = null;
+			}
+		}
+	}
+	
+	/**
+	 * @see com.emobtech.networkingme.Request#abort()
+	 */
+	protected void abort() {
+		synchronized (this) {
+			aborted = true;
+		}
 		//
-		writeHeader(conn);
-		writeBody(conn);
+		closeConnection();
+	}
+	
+	/**
+	 * <p>
+	 * Closes the connection and streams of the ongoing sending, which makes
+	 * it fail. It is called by a thread other than the one sending the
+	 * request.
+	 * </p>
+	 */
+	void closeConnection() {
+		HttpConnection conn;
+		InputStream in;
+		OutputStream out;
+		//
+		synchronized (this) {
+			conn = connection;
+			in = input;
+			out = output;
+		}
 		//
 		try {
-			HttpResponse response = new HttpResponse(conn);
+			if (in != null) {
+				in.close();
+			}
+		} catch (IOException e) {}
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException e) {}
+		try {
+			if (conn != null) {
+				conn.close();
+			}
+		} catch (IOException e) {}
+	}
+	
+	/**
+	 * <p>
+	 * Returns whether the ongoing sending must be interrupted, because the
+	 * request was aborted or its deadline expired.
+	 * </p>
+	 * @return Interrupted (true).
+	 */
+	private synchronized boolean isInterrupted() {
+		return aborted || (deadline != null && deadline.isExpired());
+	}
+	
+	/**
+	 * <p>
+	 * Sets the connection of the ongoing sending, so it can be aborted.
+	 * </p>
+	 * @param conn Connection.
+	 * @throws IOException If the sending was interrupted.
+	 */
+	private void setConnection(HttpConnection conn) throws IOException {
+		synchronized (this) {
+			if (!isInterrupted()) {
+				connection = conn;
+				//
+				return;
+			}
+		}
+		//
+		conn.close();
+		//
+		throw new InterruptedIOException("Request interrupted!");
+	}
+	
+	/**
+	 * <p>
+	 * Opens the input stream of the ongoing sending, so it can be aborted
+	 * and have its deadline watched.
+	 * </p>
+	 * @param conn Connection.
+	 * @return Input stream.
+	 * @throws IOException If any I/O error occurs or the sending was 
+	 *         interrupted.
+	 */
+	private InputStream openInputStream(HttpConnection conn)
+		throws IOException {
+		InputStream in = conn.openInputStream();
+		//
+		synchronized (this) {
+			if (!isInterrupted()) {
+				input = in;
+				//
+				return deadline != null ? deadline.watch(in) : in;
+			}
+		}
+		//
+		in.close();
+		//
+		throw new InterruptedIOException("Request interrupted!");
+	}
+	
+	/**
+	 * <p>
+	 * Opens the output stream of the ongoing sending, so it can be aborted
+	 * and have its deadline watched.
+	 * </p>
+	 * @param conn Connection.
+	 * @return Output stream.
+	 * @throws IOException If any I/O error occurs or the sending was 
+	 *         interrupted.
+	 */
+	private OutputStream openOutputStream(HttpConnection conn)
+		throws IOException {
+		OutputStream out = conn.openOutputStream();
+		//
+		synchronized (this) {
+			if (!isInterrupted()) {
+				output = out;
+				//
+				return deadline != null ? deadline.watch(out) : out;
+			}
+		}
+		//
+		out.close();
+		//
+		throw new InterruptedIOException("Request interrupted!");
+	}
+	
+	/**
+	 * <p>
+	 * Closes the connection and streams of the ongoing sending.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void releaseConnection() throws IOException {
+		HttpConnection conn;
+		InputStream in;
+		//
+		synchronized (this) {
+			conn = connection;
+			in = input;
 			//
-			return response;
+			connection = null;
+			input = null;
+			output = null;
+		}
+		//
+		try {
+			if (in != null) {
+				in.close();
+			}
 		} finally {
-			conn.close();
+			if (conn != null) {
+				conn.close();
+			}
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Sorts an array of strings in place.
+	 * </p>
+	 * @param values Strings.
+	 */
+	private static void sort(String[] values) {
+		String value;
+		int j;
+		//
+		for (int i = 1; i < values.length; i++) {
+			value = values[i];
+			//
+			for (j = i -1; j >= 0 && values[j].compareTo(value) > 0; j--) {
+				values[j +1] = values[j];
+			}
+			//
+			values[j +1] = value;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Writes the method, header fields and body to the connection.
+	 * </p>
+	 * @param conn Connection.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void writeRequest(HttpConnection conn) throws IOException {
+		conn.setRequestMethod(method);
+		//
+		writeHeader(conn);
+		writeBody(conn);
+	}
+	
 	/**
 	 * <p>
 	 * Writes all header fields to the connection.
@@ -480,27 +1101,139 @@ public final class HttpRequest extends Request {
 	
 	/**
 	 * <p>
-	 * Writes the body to the connection.
+	 * Writes the body to the connection. A streaming payload writes itself,
+	 * so its data is never held in memory at once. No length is set for a
+	 * body of unknown length, which lets the connection chunk it.
+	 * </p>
+	 * <p>
+	 * A body to be compressed is compressed in memory, and sent as it is in
+	 * case that does not make it shorter. A streaming one is compressed as it
+	 * is written instead.
 	 * </p>
 	 * @param conn Connection.
 	 * @throws IOException If any I/O error occurs.
 	 */
 	private void writeBody(HttpConnection conn) throws IOException {
 		if (Method.POST.equals(method) && body != null) {
+			final boolean streaming = body instanceof StreamingPayload;
+			long length = body.getLength();
+			byte[] data = null;
+			boolean compressed = false;
+			//
+			if (!streaming) {
+				data = body.getBytes();
+			}
+			//
+			if (isCompressible(body, length)) {
+				if (streaming) {
+					compressed = true;
+					length = -1;
+				} else {
+					byte[] gzipped = compress(data);
+					//
+					if (gzipped.length < data.length) {
+						data = gzipped;
+						compressed = true;
+						length = data.length;
+					}
+				}
+			}
+			//
 			conn.setRequestProperty(Header.CONTENT_TYPE, body.getType());
-			conn.setRequestProperty(
-				Header.CONTENT_LENGTH, String.valueOf(body.getLength()));
 			//
-			OutputStream out = conn.openDataOutputStream();
+			if (compressed) {
+				conn.setRequestProperty(Header.CONTENT_ENCODING, "gzip");
+			}
+			//
+			if (length >= 0) {
+				conn.setRequestProperty(
+					Header.CONTENT_LENGTH, String.valueOf(length));
+			}
+			//
+			OutputStream out = openOutputStream(conn);
 			//
 			try {
-				Util.writeBytes(body.getBytes(), out);
+				if (!streaming) {
+					Util.writeBytes(data, out);
+				} else if (compressed) {
+					GZIPOutputStream gzip = new GZIPOutputStream(out);
+					//
+					((StreamingPayload)body).writeTo(gzip);
+					gzip.finish();
+				} else {
+					((StreamingPayload)body).writeTo(out);
+				}
 			} finally {
 				out.close();
 			}
 		}
 	}
 	
+	/**
+	 * <p>
+	 * Returns whether a given body of given length is to be compressed. A
+	 * multipart body with any part already compressed, e.g. a photo, is
+	 * not, since it would hardly get shorter.
+	 * </p>
+	 * @param body Body.
+	 * @param length Length. -1 means unknown.
+	 * @return Compressible (true).
+	 */
+	private boolean isCompressible(Payload body, long length) {
+		if (!compressBody
+				|| (length >= 0 && length < MIN_COMPRESSED_LENGTH)
+				|| (header != null
+					&& header.get(Header.CONTENT_ENCODING) != null)) {
+			return false;
+		}
+		//
+		if (body instanceof MultipartBody) {
+			return !((MultipartBody)body).hasCompressedPart();
+		}
+		//
+		return !isCompressedType(body.getType());
+	}
+	
+	/**
+	 * <p>
+	 * Returns whether a given content type is already compressed, e.g. an
+	 * image.
+	 * </p>
+	 * @param type Content type.
+	 * @return Compressed (true).
+	 */
+	static boolean isCompressedType(String type) {
+		if (type != null) {
+			type = type.toLowerCase();
+			//
+			for (int i = 0; i < COMPRESSED_TYPES.length; i++) {
+				if (type.startsWith(COMPRESSED_TYPES[i])) {
+					return true;
+				}
+			}
+		}
+		//
+		return false;
+	}
+	
+	/**
+	 * <p>
+	 * Compresses given data with gzip.
+	 * </p>
+	 * @param data Data.
+	 * @return Compressed data.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		//
+		gzip.write(data, 0, data.length);
+		gzip.close();
+		//
+		return out.toByteArray();
+	}
+	
 	/**
 	 * <p>
 	 * Checks whether the given method is supported.
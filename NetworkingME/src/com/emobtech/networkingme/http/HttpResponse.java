@@ -32,6 +32,7 @@ import javax.microedition.io.HttpConnection;
 import com.emobtech.networkingme.Payload;
 import com.emobtech.networkingme.Response;
 import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.InflaterInputStream;
 import com.emobtech.networkingme.util.Util;
 
 /**
@@ -39,7 +40,7 @@ import com.emobtech.networkingme.util.Util;
  * This class represents a HTTP response.
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class HttpResponse extends Response {
@@ -66,15 +67,66 @@ public final class HttpResponse extends Response {
 	
 	/**
 	 * <p>
-	 * Creates a HttpResponse from a given connection.
+	 * Connection reused flag.
+	 * </p>
+	 */
+	private boolean connectionReused;
+	
+	/**
+	 * <p>
+	 * Creates a HttpResponse from a given connection and its input stream.
+	 * The content is read into an array of the connection's length, if known.
+	 * A compressed content is decompressed as it is read. The maximum length
+	 * and memory budget of the request are enforced while reading.
+	 * </p>
+	 * @param conn Connection.
+	 * @param in Input stream. It is not closed.
+	 * @param request Request.
+	 * @throws IOException If any I/O error occurs.
+	 * @see HttpResponse#decode(HttpConnection, InputStream)
+	 * @see HttpRequest#setMaxResponseLength(long)
+	 * @see HttpRequest#setMemoryBudget(MemoryBudget)
+	 */
+	HttpResponse(HttpConnection conn, InputStream in, HttpRequest request)
+		throws IOException {
+		final InputStream decoded = decode(conn, in);
+		final long length =
+			decoded != in || HttpRequest.Method.HEAD.equals(request.getMethod())
+				? -1 : conn.getLength();
+		//
+		code = conn.getResponseCode();
+		//
+		LimitedInputStream limited =
+			new LimitedInputStream(
+				decoded,
+				length,
+				request.getMaxResponseLength(),
+				request.getMemoryBudget());
+		//
+		try {
+			payload = Util.readBytes(limited, length);
+		} finally {
+			limited.release();
+		}
+		//
+		header = readHeader(conn);
+		connectionReused = isSocketReused(conn);
+	}
+
+	/**
+	 * <p>
+	 * Creates a HttpResponse from a given connection, whose content is
+	 * streamed instead. Its payload is empty.
 	 * </p>
 	 * @param conn Connection.
 	 * @throws IOException If any I/O error occurs.
+	 * @see com.emobtech.networkingme.StreamListener
 	 */
 	HttpResponse(HttpConnection conn) throws IOException {
 		code = conn.getResponseCode();
-		payload = readPayload(conn);
+		payload = new byte[0];
 		header = readHeader(conn);
+		connectionReused = isSocketReused(conn);
 	}
 
 	/**
@@ -131,6 +183,20 @@ public final class HttpResponse extends Response {
 		return (String)header.get(key.toLowerCase());
 	}
 	
+	/**
+	 * <p>
+	 * Returns whether the request was sent over a connection kept open from
+	 * former requests, so it took no new connection, nor TLS handshake in
+	 * case of HTTPS. It is always false through the platform's HTTP
+	 * connection.
+	 * </p>
+	 * @return Reused (true).
+	 * @see SocketTransport
+	 */
+	public boolean isConnectionReused() {
+		return connectionReused;
+	}
+	
 	/**
 	 * <p>
 	 * Returns whether the request should redirect to a different location.
@@ -183,20 +249,34 @@ public final class HttpResponse extends Response {
 	
 	/**
 	 * <p>
-	 * Reads the payload from a given connection.
+	 * Returns a stream that decompresses the content of a given connection,
+	 * according to its content encoding. gzip and deflate are supported. The
+	 * given stream is returned in case the content is not compressed.
 	 * </p>
 	 * @param conn Connection.
-	 * @return Payload.
+	 * @param in Input stream.
+	 * @return Decoded input stream.
 	 * @throws IOException If any I/O error occurs.
+	 * @see HttpRequest.Header#CONTENT_ENCODING
 	 */
-	private byte[] readPayload(HttpConnection conn) throws IOException {
-		InputStream in = conn.openInputStream();
+	static InputStream decode(HttpConnection conn, InputStream in)
+		throws IOException {
+		String encoding =
+			conn.getHeaderField(HttpRequest.Header.CONTENT_ENCODING);
 		//
-		try {
-			return Util.readBytes(in);
-		} finally {
-			in.close();
+		if (encoding != null) {
+			encoding = encoding.trim().toLowerCase();
+			//
+			if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+				return new InflaterInputStream(
+					in, InflaterInputStream.Format.GZIP);
+			} else if (encoding.equals("deflate")) {
+				return new InflaterInputStream(
+					in, InflaterInputStream.Format.ZLIB);
+			}
 		}
+		//
+		return in;
 	}
 
 	/**
@@ -240,4 +320,21 @@ public final class HttpResponse extends Response {
 		//
 		return headers;
 	}
+
+	/**
+	 * <p>
+	 * Returns whether a given connection was sent over a reused socket,
+	 * either kept in the pool or shared by a HTTP/2 session.
+	 * </p>
+	 * @param conn Connection.
+	 * @return Reused (true).
+	 */
+	private static boolean isSocketReused(HttpConnection conn) {
+		if (conn instanceof Http2Connection) {
+			return ((Http2Connection)conn).isSessionReused();
+		}
+		//
+		return conn instanceof SocketHttpConnection
+			&& ((SocketHttpConnection)conn).isSocketReused();
+	}
 }
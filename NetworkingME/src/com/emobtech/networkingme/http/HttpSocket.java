@@ -0,0 +1,412 @@
+/* HttpSocket.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.microedition.io.StreamConnection;
+
+/**
+ * <p>
+ * This class implements a socket connection to a HTTP server, with a
+ * buffered input, which can be kept open and reused by several requests.
+ * </p>
+ * <p>
+ * The input buffer belongs to the socket, not to a request, so bytes read
+ * ahead are never lost between two responses.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see ConnectionPool
+ */
+final class HttpSocket {
+	/**
+	 * <p>
+	 * Size of the input buffer.
+	 * </p>
+	 */
+	private static final int BUFFER_SIZE = 1024;
+
+	/**
+	 * <p>
+	 * Maximum length of a line, e.g. the status line or a header.
+	 * </p>
+	 */
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	/**
+	 * <p>
+	 * Pool key, e.g. "http://www.emobtech.com:80".
+	 * </p>
+	 */
+	private String key;
+
+	/**
+	 * <p>
+	 * Connection.
+	 * </p>
+	 */
+	private StreamConnection connection;
+
+	/**
+	 * <p>
+	 * Input stream.
+	 * </p>
+	 */
+	private InputStream input;
+
+	/**
+	 * <p>
+	 * Output stream.
+	 * </p>
+	 */
+	private OutputStream output;
+
+	/**
+	 * <p>
+	 * Input buffer.
+	 * </p>
+	 */
+	private byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * <p>
+	 * Index of the next buffered byte.
+	 * </p>
+	 */
+	private int position;
+
+	/**
+	 * <p>
+	 * Number of buffered bytes.
+	 * </p>
+	 */
+	private int limit;
+
+	/**
+	 * <p>
+	 * Number of requests sent so far.
+	 * </p>
+	 */
+	private int requestCount;
+
+	/**
+	 * <p>
+	 * Time it became idle.
+	 * </p>
+	 */
+	private long idleSince;
+
+	/**
+	 * <p>
+	 * Closed flag.
+	 * </p>
+	 */
+	private boolean closed;
+
+	/**
+	 * <p>
+	 * Deadline every filled buffer is reported to as activity.
+	 * </p>
+	 */
+	private Watchdog.Deadline deadline;
+
+	/**
+	 * <p>
+	 * Creates a HttpSocket over a given connection.
+	 * </p>
+	 * @param key Pool key.
+	 * @param connection Connection.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	HttpSocket(String key, StreamConnection connection) throws IOException {
+		this.key = key;
+		this.connection = connection;
+		//
+		input = connection.openInputStream();
+		//
+		try {
+			output = connection.openOutputStream();
+		} catch (IOException e) {
+			input.close();
+			//
+			throw e;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the pool key.
+	 * </p>
+	 * @return Key.
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * <p>
+	 * Returns the underlying connection.
+	 * </p>
+	 * @return Connection.
+	 */
+	StreamConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * <p>
+	 * Returns the output stream.
+	 * </p>
+	 * @return Output stream.
+	 */
+	OutputStream getOutputStream() {
+		return output;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of requests sent so far. It is greater than zero
+	 * for a reused socket.
+	 * </p>
+	 * @return Count.
+	 */
+	int getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * <p>
+	 * Counts one more request sent over the socket.
+	 * </p>
+	 */
+	void countRequest() {
+		requestCount++;
+	}
+
+	/**
+	 * <p>
+	 * Returns the time it became idle.
+	 * </p>
+	 * @return Time.
+	 */
+	long getIdleSince() {
+		return idleSince;
+	}
+
+	/**
+	 * <p>
+	 * Marks it as idle since a given time.
+	 * </p>
+	 * @param time Time.
+	 */
+	void setIdleSince(long time) {
+		idleSince = time;
+	}
+
+	/**
+	 * <p>
+	 * Sets the deadline every read is reported to as activity.
+	 * </p>
+	 * @param deadline Deadline. It can be <code>null</code>.
+	 */
+	void setDeadline(Watchdog.Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether it can still be reused while idle. Unexpected bytes
+	 * sent by the server, e.g. a close notice, make it unusable.
+	 * </p>
+	 * @return Usable (true).
+	 */
+	boolean isUsable() {
+		if (closed || position < limit) {
+			return false;
+		}
+		//
+		try {
+			return input.available() == 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads a byte.
+	 * </p>
+	 * @return Byte or -1 at the end of the stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		//
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * <p>
+	 * Reads up to a given number of bytes.
+	 * </p>
+	 * @param b Buffer.
+	 * @param off Offset.
+	 * @param len Maximum number of bytes.
+	 * @return Number of bytes read or -1 at the end of the stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		//
+		if (position == limit) {
+			if (len >= buffer.length) {
+				return input.read(b, off, len);
+			}
+			//
+			if (!fill()) {
+				return -1;
+			}
+		}
+		//
+		int n = Math.min(len, limit - position);
+		System.arraycopy(buffer, position, b, off, n);
+		position += n;
+		//
+		return n;
+	}
+
+	/**
+	 * <p>
+	 * Reads a line terminated by CRLF or LF, without the terminator.
+	 * </p>
+	 * @return Line or <code>null</code> at the end of the stream.
+	 * @throws IOException If any I/O error occurs or the line is longer
+	 *         than {@link #MAX_LINE_LENGTH}.
+	 */
+	String readLine() throws IOException {
+		StringBuffer line = new StringBuffer();
+		int b;
+		//
+		while ((b = read()) != -1) {
+			if (b == '\n') {
+				int length = line.length();
+				//
+				if (length > 0 && line.charAt(length -1) == '\r') {
+					line.setLength(length -1);
+				}
+				//
+				return line.toString();
+			}
+			//
+			if (line.length() > MAX_LINE_LENGTH) {
+				throw new IOException("Line too long!");
+			}
+			//
+			line.append((char)b);
+		}
+		//
+		return line.length() > 0 ? line.toString() : null;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of bytes that can be read without blocking.
+	 * </p>
+	 * @return Number of bytes.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	int available() throws IOException {
+		return (limit - position) + input.available();
+	}
+
+	/**
+	 * <p>
+	 * Closes the socket. It does nothing if it is already closed.
+	 * </p>
+	 */
+	void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			//
+			closed = true;
+		}
+		//
+		try {
+			input.close();
+		} catch (IOException e) {}
+		try {
+			output.close();
+		} catch (IOException e) {}
+		try {
+			connection.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * <p>
+	 * Returns whether it is closed.
+	 * </p>
+	 * @return Closed (true).
+	 */
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * <p>
+	 * Fills the input buffer.
+	 * </p>
+	 * @return Filled (true) or end of the stream (false).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private boolean fill() throws IOException {
+		int n = input.read(buffer, 0, buffer.length);
+		//
+		if (n <= 0) {
+			position = 0;
+			limit = 0;
+			//
+			return false;
+		}
+		//
+		position = 0;
+		limit = n;
+		//
+		if (deadline != null) {
+			deadline.touch();
+		}
+		//
+		return true;
+	}
+}
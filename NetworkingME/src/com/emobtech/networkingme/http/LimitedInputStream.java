@@ -0,0 +1,189 @@
+/* LimitedInputStream.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.emobtech.networkingme.ResponseTooLargeException;
+
+/**
+ * <p>
+ * This class implements an input stream that enforces the maximum length of
+ * a response's content and charges the read bytes to a memory budget. It
+ * fails as soon as either the declared length or the count of read bytes
+ * exceeds the maximum one.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see HttpRequest#setMaxResponseLength(long)
+ * @see MemoryBudget
+ */
+final class LimitedInputStream extends InputStream {
+	/**
+	 * <p>
+	 * Length reserved at once while a content of unknown length is read.
+	 * </p>
+	 */
+	private static final long RESERVATION = 4096;
+
+	/**
+	 * <p>
+	 * Input stream.
+	 * </p>
+	 */
+	private InputStream in;
+
+	/**
+	 * <p>
+	 * Maximum length.
+	 * </p>
+	 */
+	private long maxLength;
+
+	/**
+	 * <p>
+	 * Memory budget.
+	 * </p>
+	 */
+	private MemoryBudget budget;
+
+	/**
+	 * <p>
+	 * Count of read bytes.
+	 * </p>
+	 */
+	private long count;
+
+	/**
+	 * <p>
+	 * Length reserved from the budget.
+	 * </p>
+	 */
+	private long reserved;
+
+	/**
+	 * <p>
+	 * Creates a LimitedInputStream. The declared length, if known, is
+	 * checked and reserved from the budget right away.
+	 * </p>
+	 * @param in Input stream.
+	 * @param length Declared length. -1 means unknown.
+	 * @param maxLength Maximum length. Zero means no limit.
+	 * @param budget Memory budget. It can be <code>null</code>.
+	 * @throws IOException If the declared length is too large.
+	 */
+	LimitedInputStream(InputStream in, long length, long maxLength,
+		MemoryBudget budget) throws IOException {
+		if (maxLength > 0 && length > maxLength) {
+			throw new ResponseTooLargeException("Response too large!");
+		}
+		//
+		this.in = in;
+		this.maxLength = maxLength;
+		this.budget = budget;
+		//
+		if (budget != null && length > 0) {
+			budget.reserve(length, true);
+			reserved = length;
+		}
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		int b = in.read();
+		//
+		if (b != -1) {
+			count(1);
+		}
+		//
+		return b;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		//
+		if (n > 0) {
+			count(n);
+		}
+		//
+		return n;
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() throws IOException {
+		return in.available();
+	}
+
+	/**
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * <p>
+	 * Gives the length reserved from the budget back.
+	 * </p>
+	 */
+	void release() {
+		if (reserved > 0) {
+			budget.release(reserved);
+			reserved = 0;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Counts a given number of read bytes, reserving more from the budget
+	 * whenever the reserved length is exceeded. Once reading, it never
+	 * waits for the budget.
+	 * </p>
+	 * @param n Number of bytes.
+	 * @throws IOException If the maximum length or budget is exceeded.
+	 */
+	private void count(int n) throws IOException {
+		count += n;
+		//
+		if (maxLength > 0 && count > maxLength) {
+			throw new ResponseTooLargeException("Response too large!");
+		}
+		//
+		if (budget != null && count > reserved) {
+			long length = Math.max(count - reserved, RESERVATION);
+			//
+			budget.reserve(length, false);
+			reserved += length;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+/* LoopbackConnection.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a HTTP connection whose request is answered in
+ * memory by the handler of a loopback transport, when the response is first
+ * asked for.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see LoopbackTransport
+ */
+final class LoopbackConnection implements HttpConnection {
+	/**
+	 * <p>
+	 * Handler.
+	 * </p>
+	 */
+	private LoopbackTransport.Handler handler;
+
+	/**
+	 * <p>
+	 * Exchange.
+	 * </p>
+	 */
+	private LoopbackTransport.Exchange exchange;
+
+	/**
+	 * <p>
+	 * Request body.
+	 * </p>
+	 */
+	private ByteArrayOutputStream requestBody;
+
+	/**
+	 * <p>
+	 * Handled flag.
+	 * </p>
+	 */
+	private boolean handled;
+
+	/**
+	 * <p>
+	 * Creates a LoopbackConnection.
+	 * </p>
+	 * @param handler Handler.
+	 * @param exchange Exchange.
+	 */
+	LoopbackConnection(
+		LoopbackTransport.Handler handler, LoopbackTransport.Exchange exchange) {
+		this.handler = handler;
+		this.exchange = exchange;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getURL()
+	 */
+	public String getURL() {
+		return exchange.url.toEncodedString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getProtocol()
+	 */
+	public String getProtocol() {
+		return exchange.url.getScheme().toLowerCase();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHost()
+	 */
+	public String getHost() {
+		return exchange.url.getDomain();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getFile()
+	 */
+	public String getFile() {
+		return exchange.url.getPath();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRef()
+	 */
+	public String getRef() {
+		return exchange.url.getFragment();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getQuery()
+	 */
+	public String getQuery() {
+		return exchange.url.getQueryString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getPort()
+	 */
+	public int getPort() {
+		return exchange.url.getPort();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestMethod()
+	 */
+	public String getRequestMethod() {
+		return exchange.method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestMethod(java.lang.String)
+	 */
+	public void setRequestMethod(String method) throws IOException {
+		checkSetup();
+		//
+		exchange.method = method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestProperty(java.lang.String)
+	 */
+	public String getRequestProperty(String key) {
+		return exchange.getRequestHeader(key);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestProperty(java.lang.String, java.lang.String)
+	 */
+	public void setRequestProperty(String key, String value)
+		throws IOException {
+		checkSetup();
+		//
+		exchange.requestHeader.put(key.toLowerCase(), value);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getResponseCode()
+	 */
+	public int getResponseCode() throws IOException {
+		handle();
+		//
+		return exchange.responseCode;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getResponseMessage()
+	 */
+	public String getResponseMessage() throws IOException {
+		handle();
+		//
+		return "";
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getExpiration()
+	 */
+	public long getExpiration() throws IOException {
+		return getHeaderFieldDate("expires", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getDate()
+	 */
+	public long getDate() throws IOException {
+		return getHeaderFieldDate("date", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getLastModified()
+	 */
+	public long getLastModified() throws IOException {
+		return getHeaderFieldDate("last-modified", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(java.lang.String)
+	 */
+	public String getHeaderField(String name) throws IOException {
+		handle();
+		//
+		for (int i = 0; i < exchange.responseKeys.size(); i++) {
+			if (name.toLowerCase().equals(
+					((String)exchange.responseKeys.elementAt(i))
+						.toLowerCase())) {
+				return (String)exchange.responseValues.elementAt(i);
+			}
+		}
+		//
+		return null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldInt(java.lang.String, int)
+	 */
+	public int getHeaderFieldInt(String name, int def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		try {
+			return value != null ? Integer.parseInt(value.trim()) : def;
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldDate(java.lang.String, long)
+	 */
+	public long getHeaderFieldDate(String name, long def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		try {
+			Date date = value != null ? Util.parseCookieDate(value) : null;
+			//
+			return date != null ? date.getTime() : def;
+		} catch (RuntimeException e) {
+			return def;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(int)
+	 */
+	public String getHeaderField(int n) throws IOException {
+		handle();
+		//
+		return n >= 0 && n < exchange.responseValues.size()
+			? (String)exchange.responseValues.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldKey(int)
+	 */
+	public String getHeaderFieldKey(int n) throws IOException {
+		handle();
+		//
+		return n >= 0 && n < exchange.responseKeys.size()
+			? (String)exchange.responseKeys.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getType()
+	 */
+	public String getType() {
+		try {
+			return getHeaderField("content-type");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getEncoding()
+	 */
+	public String getEncoding() {
+		try {
+			return getHeaderField("content-encoding");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getLength()
+	 */
+	public long getLength() {
+		try {
+			handle();
+			//
+			return exchange.responseBody.length;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openInputStream()
+	 */
+	public InputStream openInputStream() throws IOException {
+		handle();
+		//
+		return new ByteArrayInputStream(exchange.responseBody);
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openDataInputStream()
+	 */
+	public DataInputStream openDataInputStream() throws IOException {
+		return new DataInputStream(openInputStream());
+	}
+
+	/**
+	 * @see javax.microedition.io.OutputConnection#openOutputStream()
+	 */
+	public OutputStream openOutputStream() throws IOException {
+		checkSetup();
+		//
+		if (requestBody == null) {
+			requestBody = new ByteArrayOutputStream();
+		}
+		//
+		return requestBody;
+	}
+
+	/**
+	 * @see javax.microedition.io.OutputConnection#openDataOutputStream()
+	 */
+	public DataOutputStream openDataOutputStream() throws IOException {
+		return new DataOutputStream(openOutputStream());
+	}
+
+	/**
+	 * @see javax.microedition.io.Connection#close()
+	 */
+	public void close() {
+	}
+
+	/**
+	 * <p>
+	 * Has the handler answer the request, in case it was not done yet.
+	 * </p>
+	 * @throws IOException If the handler failed.
+	 */
+	private void handle() throws IOException {
+		if (!handled) {
+			handled = true;
+			//
+			if (requestBody != null) {
+				exchange.requestBody = requestBody.toByteArray();
+			}
+			//
+			handler.handle(exchange);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the request can still be set up.
+	 * </p>
+	 * @throws IOException If it was already answered.
+	 */
+	private void checkSetup() throws IOException {
+		if (handled) {
+			throw new IOException("Already connected!");
+		}
+	}
+}
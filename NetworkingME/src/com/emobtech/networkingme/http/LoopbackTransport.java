@@ -0,0 +1,247 @@
+/* LoopbackTransport.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This class implements an in-memory transport. Requests never reach the
+ * network, they are answered by a handler instead. It is handy to test and
+ * benchmark code that sends HTTP requests, off-device.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class LoopbackTransport implements Transport {
+	/**
+	 * <p>
+	 * This interface represents a handler that answers the requests sent
+	 * through the transport.
+	 * </p>
+	 */
+	public static interface Handler {
+		/**
+		 * <p>
+		 * Answers a request. It is called by the thread sending the request.
+		 * </p>
+		 * @param exchange Exchange, with the request to read and the response
+		 *        to write.
+		 * @throws IOException If the exchange must fail.
+		 */
+		void handle(Exchange exchange) throws IOException;
+	}
+
+	/**
+	 * <p>
+	 * This class represents a request and its response.
+	 * </p>
+	 */
+	public static final class Exchange {
+		/**
+		 * <p>
+		 * URL.
+		 * </p>
+		 */
+		URL url;
+
+		/**
+		 * <p>
+		 * Method.
+		 * </p>
+		 */
+		String method = HttpConnection.GET;
+
+		/**
+		 * <p>
+		 * Request header fields, by lower case key.
+		 * </p>
+		 */
+		Hashtable requestHeader = new Hashtable(8);
+
+		/**
+		 * <p>
+		 * Request body.
+		 * </p>
+		 */
+		byte[] requestBody;
+
+		/**
+		 * <p>
+		 * Response code.
+		 * </p>
+		 */
+		int responseCode = HttpRequest.Code.OK;
+
+		/**
+		 * <p>
+		 * Response header field keys.
+		 * </p>
+		 */
+		Vector responseKeys = new Vector(4);
+
+		/**
+		 * <p>
+		 * Response header field values.
+		 * </p>
+		 */
+		Vector responseValues = new Vector(4);
+
+		/**
+		 * <p>
+		 * Response body.
+		 * </p>
+		 */
+		byte[] responseBody = new byte[0];
+
+		/**
+		 * <p>
+		 * Creates an Exchange for a given URL.
+		 * </p>
+		 * @param url URL.
+		 */
+		Exchange(URL url) {
+			this.url = url;
+		}
+
+		/**
+		 * <p>
+		 * Returns the request URL.
+		 * </p>
+		 * @return URL.
+		 */
+		public URL getURL() {
+			return url;
+		}
+
+		/**
+		 * <p>
+		 * Returns the request method.
+		 * </p>
+		 * @return Method.
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * <p>
+		 * Returns the value of a request header field.
+		 * </p>
+		 * @param key Key, in any case.
+		 * @return Value.
+		 */
+		public String getRequestHeader(String key) {
+			return (String)requestHeader.get(key.toLowerCase());
+		}
+
+		/**
+		 * <p>
+		 * Returns the request body.
+		 * </p>
+		 * @return Body or <code>null</code> if none.
+		 */
+		public byte[] getRequestBody() {
+			return requestBody;
+		}
+
+		/**
+		 * <p>
+		 * Sets the response code. It is 200 by default.
+		 * </p>
+		 * @param code Code.
+		 */
+		public void setResponseCode(int code) {
+			responseCode = code;
+		}
+
+		/**
+		 * <p>
+		 * Adds a response header field.
+		 * </p>
+		 * @param key Key.
+		 * @param value Value.
+		 * @throws IllegalArgumentException Key or value null!
+		 */
+		public void addResponseHeader(String key, String value) {
+			if (key == null || value == null) {
+				throw new IllegalArgumentException("Key or value null!");
+			}
+			//
+			responseKeys.addElement(key);
+			responseValues.addElement(value);
+		}
+
+		/**
+		 * <p>
+		 * Sets the response body. It is empty by default.
+		 * </p>
+		 * @param body Body.
+		 * @throws IllegalArgumentException Body null!
+		 */
+		public void setResponseBody(byte[] body) {
+			if (body == null) {
+				throw new IllegalArgumentException("Body null!");
+			}
+			//
+			responseBody = body;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Handler.
+	 * </p>
+	 */
+	private Handler handler;
+
+	/**
+	 * <p>
+	 * Creates a LoopbackTransport with a given handler.
+	 * </p>
+	 * @param handler Handler.
+	 * @throws IllegalArgumentException Handler null!
+	 */
+	public LoopbackTransport(Handler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler null!");
+		}
+		//
+		this.handler = handler;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.Transport#open(com.emobtech.networkingme.URL)
+	 */
+	public HttpConnection open(URL url) {
+		return new LoopbackConnection(handler, new Exchange(url));
+	}
+}
@@ -0,0 +1,177 @@
+/* MemoryBudget.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import com.emobtech.networkingme.MemoryBudgetException;
+
+/**
+ * <p>
+ * This class represents an amount of memory shared by the responses being
+ * buffered at the same time. Each response reserves its length, if known,
+ * before being read and gives it back once it is read. A response whose
+ * length is unknown reserves it little by little as it is read.
+ * </p>
+ * <p>
+ * A response that does not fit in what is left either waits for other
+ * responses to give memory back, up to the wait timeout, or fails right away
+ * with a {@link MemoryBudgetException}. A response whose length is unknown
+ * never waits once it started being read, as it could hold memory other
+ * responses wait for.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see HttpClient#setMemoryBudget(MemoryBudget)
+ * @see HttpRequest#setMemoryBudget(MemoryBudget)
+ */
+public final class MemoryBudget {
+	/**
+	 * <p>
+	 * Capacity.
+	 * </p>
+	 */
+	private long capacity;
+
+	/**
+	 * <p>
+	 * Reserved length.
+	 * </p>
+	 */
+	private long used;
+
+	/**
+	 * <p>
+	 * Wait timeout.
+	 * </p>
+	 */
+	private long waitTimeout;
+
+	/**
+	 * <p>
+	 * Creates a MemoryBudget with a given capacity.
+	 * </p>
+	 * @param capacity Capacity, in bytes.
+	 * @throws IllegalArgumentException Capacity must be greater than zero!
+	 */
+	public MemoryBudget(long capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+				"Capacity must be greater than zero!");
+		}
+		//
+		this.capacity = capacity;
+	}
+
+	/**
+	 * <p>
+	 * Returns the capacity, in bytes.
+	 * </p>
+	 * @return Capacity.
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * <p>
+	 * Returns the length, in bytes, reserved by the responses being read.
+	 * </p>
+	 * @return Used length.
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * <p>
+	 * Returns the maximum time, in milliseconds, a response waits for memory
+	 * to be given back. Zero means it fails right away.
+	 * </p>
+	 * @return Wait timeout.
+	 */
+	public long getWaitTimeout() {
+		return waitTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, a response waits for memory
+	 * to be given back. Zero means it fails right away, which is the
+	 * default.
+	 * </p>
+	 * @param waitTimeout Wait timeout.
+	 * @throws IllegalArgumentException Wait timeout must not be negative!
+	 */
+	public void setWaitTimeout(long waitTimeout) {
+		if (waitTimeout < 0) {
+			throw new IllegalArgumentException(
+				"Wait timeout must not be negative!");
+		}
+		//
+		this.waitTimeout = waitTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Reserves a given length, waiting for it if allowed.
+	 * </p>
+	 * @param length Length.
+	 * @param wait Wait (true).
+	 * @throws MemoryBudgetException If the length does not fit.
+	 */
+	synchronized void reserve(long length, boolean wait)
+		throws MemoryBudgetException {
+		if (wait && length <= capacity && waitTimeout > 0) {
+			final long end = System.currentTimeMillis() + waitTimeout;
+			//
+			for (long left = waitTimeout;
+					used + length > capacity && left > 0;
+					left = end - System.currentTimeMillis()) {
+				try {
+					wait(left);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+		//
+		if (used + length > capacity) {
+			throw new MemoryBudgetException("Memory budget exceeded!");
+		}
+		//
+		used += length;
+	}
+
+	/**
+	 * <p>
+	 * Gives a given length back, waking up the responses waiting for it.
+	 * </p>
+	 * @param length Length.
+	 */
+	synchronized void release(long length) {
+		used = Math.max(used - length, 0);
+		//
+		notifyAll();
+	}
+}
@@ -26,8 +26,10 @@ package com.emobtech.networkingme.http;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Vector;
 
-import com.emobtech.networkingme.Payload;
+import com.emobtech.networkingme.StreamingPayload;
 import com.emobtech.networkingme.util.Util;
 
 /**
@@ -36,22 +38,74 @@ import com.emobtech.networkingme.util.Util;
  * to send either text or binary data. Mix of text and binary is also supported.
  * </p>
  * <p>
+ * The parts are kept as segments, which are written to the connection one
+ * after another. Binary data is neither copied nor, when added as a stream
+ * with a known length, read before the body is sent.
+ * </p>
+ * <p>
  * Reference: <br />
  * <a href="http://en.wikipedia.org/wiki/Multipart/form-data#Multipart_messages" target="_blank">
  *     http://en.wikipedia.org/wiki/Multipart/form-data#Multipart_messages
  * </a>
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
-public final class MultipartBody implements Payload {
+public final class MultipartBody implements StreamingPayload {
+	/**
+	 * <p>
+	 * This class represents a segment whose data is read from a stream.
+	 * </p>
+	 */
+	private static final class StreamSegment {
+		/**
+		 * <p>
+		 * Stream.
+		 * </p>
+		 */
+		private InputStream stream;
+
+		/**
+		 * <p>
+		 * Length.
+		 * </p>
+		 */
+		private long length;
+
+		/**
+		 * <p>
+		 * Creates a StreamSegment.
+		 * </p>
+		 * @param stream Stream.
+		 * @param length Length.
+		 */
+		private StreamSegment(InputStream stream, long length) {
+			this.stream = stream;
+			this.length = length;
+		}
+	}
+
 	/**
 	 * <p>
-	 * Payload.
+	 * Segments, either byte arrays or stream segments.
 	 * </p>
 	 */
-	private ByteArrayOutputStream payload = new ByteArrayOutputStream(1024);
+	private Vector segments = new Vector(8);
+
+	/**
+	 * <p>
+	 * Length.
+	 * </p>
+	 */
+	private long length;
+
+	/**
+	 * <p>
+	 * Whether any part carries content already compressed.
+	 * </p>
+	 */
+	private boolean compressedPart;
 
 	/**
 	 * @see com.emobtech.networkingme.Payload#getType()
@@ -64,14 +118,45 @@ public final class MultipartBody implements Payload {
 	 * @see com.emobtech.networkingme.Payload#getLength()
 	 */
 	public long getLength() {
-		return payload.size();
+		return length;
 	}
 
 	/**
 	 * @see com.emobtech.networkingme.Payload#getBytes()
 	 */
 	public byte[] getBytes() {
-		return payload.toByteArray();
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int)length);
+		//
+		try {
+			writeTo(out);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error by writing part!");
+		}
+		//
+		return out.toByteArray();
+	}
+
+	/**
+	 * <p>
+	 * Writes all parts to a given stream. The streams of the parts added as
+	 * such are read only once, so the body cannot be written again.
+	 * </p>
+	 * @see com.emobtech.networkingme.StreamingPayload#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		Object segment;
+		//
+		for (int i = 0; i < segments.size(); i++) {
+			segment = segments.elementAt(i);
+			//
+			if (segment instanceof StreamSegment) {
+				StreamSegment stream = (StreamSegment)segment;
+				//
+				Util.copyBytes(stream.stream, out, stream.length);
+			} else {
+				Util.writeBytes((byte[])segment, out);
+			}
+		}
 	}
 	
 	/**
@@ -89,13 +174,7 @@ public final class MultipartBody implements Payload {
 		//
 		final String header = createHeader(name, null, null);
 		//
-		try {
-			payload.write(Util.toBytes(header));
-			payload.write(Util.toBytes(value));
-			payload.write(Util.toBytes("\n--" + getBoundary() + "--"));
-		} catch (IOException e) {
-			throw new IllegalStateException("Error by writing part!");
-		}
+		addSegment(Util.toBytes(header + value + getTrailer()));
 	}
 	
 	/**
@@ -121,13 +200,10 @@ public final class MultipartBody implements Payload {
 		}
 		final String header = createHeader(name, filename, contentType);
 		//
-		try {
-			payload.write(Util.toBytes(header.toString()));
-			payload.write(data);
-			payload.write(Util.toBytes("\n--" + getBoundary() + "--"));
-		} catch (IOException e) {
-			throw new IllegalStateException("Error by writing part!");
-		}
+		addSegment(Util.toBytes(header));
+		addSegment(data);
+		checkCompressed(contentType);
+		addSegment(Util.toBytes(getTrailer()));
 	}
 
 	/**
@@ -147,6 +223,72 @@ public final class MultipartBody implements Payload {
 		addPart(name, filename, contentType, Util.readBytes(data));
 	}
 
+	/**
+	 * <p>
+	 * Adds a part to carry a binary content of a known length, e.g. a file.
+	 * The stream is only read when the body is sent, through a small buffer.
+	 * </p>
+	 * @param name Name.
+	 * @param filename Filename.
+	 * @param contentType Content type, e.g. "image/png".
+	 * @param data Data.
+	 * @param length Length of the data.
+	 * @throws IllegalArgumentException Name, filename, contentType and data 
+	 *         null or empty!
+	 */
+	public void addPart(String name, String filename, String contentType,
+		InputStream data, long length) {
+		if (Util.isEmptyString(name) 
+				|| Util.isEmptyString(filename) 
+				|| Util.isEmptyString(contentType) 
+				|| data == null 
+				|| length <= 0) {
+			throw new IllegalArgumentException(
+				"Name/Filename/Content Type/Data null or empty!");
+		}
+		final String header = createHeader(name, filename, contentType);
+		//
+		addSegment(Util.toBytes(header));
+		segments.addElement(new StreamSegment(data, length));
+		this.length += length;
+		checkCompressed(contentType);
+		addSegment(Util.toBytes(getTrailer()));
+	}
+	
+	/**
+	 * <p>
+	 * Returns whether any part carries content already compressed, e.g. an
+	 * image, so compressing the body would hardly make it shorter.
+	 * </p>
+	 * @return Compressed part (true).
+	 */
+	boolean hasCompressedPart() {
+		return compressedPart;
+	}
+	
+	/**
+	 * <p>
+	 * Checks whether a part of a given content type is already compressed.
+	 * </p>
+	 * @param contentType Content type.
+	 */
+	private void checkCompressed(String contentType) {
+		if (HttpRequest.isCompressedType(contentType)) {
+			compressedPart = true;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Adds a segment.
+	 * </p>
+	 * @param data Data.
+	 */
+	private void addSegment(byte[] data) {
+		segments.addElement(data);
+		length += data.length;
+	}
+
 	/**
 	 * <p>
 	 * Returns the part boundary.
@@ -157,6 +299,16 @@ public final class MultipartBody implements Payload {
 		return "----------NetworkingMEBoundary_" + String.valueOf(hashCode());
 	}
 	
+	/**
+	 * <p>
+	 * Returns the part trailer.
+	 * </p>
+	 * @return Trailer.
+	 */
+	private String getTrailer() {
+		return "\n--" + getBoundary() + "--";
+	}
+	
 	/**
 	 * <p>
 	 * Creates a part header.
@@ -0,0 +1,645 @@
+/* Pipeline.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.emobtech.networkingme.Request;
+import com.emobtech.networkingme.RequestException;
+import com.emobtech.networkingme.RequestTimeoutException;
+import com.emobtech.networkingme.RequestOperation.Listener;
+import com.emobtech.networkingme.Response;
+import com.emobtech.networkingme.StreamListener;
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This class implements a pipeline of idempotent HTTP requests, i.e. GET and
+ * HEAD. Requests to a same host are written back to back over one persistent
+ * connection and their responses are read in order, so they share the round
+ * trips. Each response is delivered to its own listener.
+ * </p>
+ * <p>
+ * In case the server closes the connection before answering all requests,
+ * the unanswered ones are sent again over a new connection.
+ * </p>
+ * <p>
+ * Pipelining requires the client to use a {@link SocketTransport}, e.g. by
+ * setting a connection pool. Otherwise, the requests are started one by
+ * one, as usual.
+ * </p>
+ * <p>
+ * The requests to a host share a connection, so the smallest timeout and
+ * idle timeout among them apply to all of them, which fail together once
+ * either is exceeded.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see HttpClient#pipeline()
+ * @see HttpClient#setConnectionPool(ConnectionPool)
+ */
+public final class Pipeline {
+	/**
+	 * <p>
+	 * This class implements the request that runs the pipelined requests to
+	 * a same host.
+	 * </p>
+	 */
+	private static final class Batch extends Request {
+		/**
+		 * <p>
+		 * Transport.
+		 * </p>
+		 */
+		private SocketTransport transport;
+
+		/**
+		 * <p>
+		 * Pool.
+		 * </p>
+		 */
+		private ConnectionPool pool;
+
+		/**
+		 * <p>
+		 * URL of the first request.
+		 * </p>
+		 */
+		private URL url;
+
+		/**
+		 * <p>
+		 * Pending requests.
+		 * </p>
+		 */
+		private Vector requests = new Vector(8);
+
+		/**
+		 * <p>
+		 * Listeners of the pending requests.
+		 * </p>
+		 */
+		private Vector listeners = new Vector(8);
+
+		/**
+		 * <p>
+		 * Socket in use.
+		 * </p>
+		 */
+		private HttpSocket socket;
+
+		/**
+		 * <p>
+		 * Aborted flag.
+		 * </p>
+		 */
+		private boolean aborted;
+
+		/**
+		 * <p>
+		 * Creates a Batch.
+		 * </p>
+		 * @param transport Transport.
+		 * @param url URL of the first request.
+		 */
+		private Batch(SocketTransport transport, URL url) {
+			this.transport = transport;
+			this.url = url;
+			//
+			pool = transport.getConnectionPool();
+		}
+
+		/**
+		 * @see com.emobtech.networkingme.Request#getAuthority()
+		 */
+		protected String getAuthority() {
+			return url.getAuthority();
+		}
+
+		/**
+		 * <p>
+		 * Sends the pending requests, round after round, until all of them
+		 * are answered. A round over a new connection that gets no response
+		 * at all, or any other failure, e.g. an abort, fails the pending
+		 * requests, whose listeners are notified.
+		 * </p>
+		 * @see com.emobtech.networkingme.Request#send()
+		 */
+		protected Response send() throws IOException {
+			final Watchdog.Deadline deadline = watch();
+			//
+			try {
+				return sendRounds(deadline);
+			} catch (IOException e) {
+				if (deadline != null && deadline.isExpired()) {
+					e = new RequestTimeoutException("Request timed out!");
+				}
+				//
+				fail(e);
+				//
+				throw e;
+			} catch (RuntimeException e) {
+				fail(e);
+				//
+				throw e;
+			} finally {
+				Watchdog.getInstance().unwatch(deadline);
+			}
+		}
+
+		/**
+		 * <p>
+		 * Sends the pending requests, round after round, until all of them
+		 * are answered.
+		 * </p>
+		 * @param deadline Deadline. It can be <code>null</code>.
+		 * @return Last response.
+		 * @throws IOException If any I/O error occurs.
+		 */
+		private Response sendRounds(Watchdog.Deadline deadline)
+			throws IOException {
+			Response last = null;
+			//
+			while (!requests.isEmpty()) {
+				SocketHttpConnection[] conns =
+					new SocketHttpConnection[requests.size()];
+				//
+				for (int i = 0; i < conns.length; i++) {
+					HttpRequest request = (HttpRequest)requests.elementAt(i);
+					//
+					conns[i] =
+						new SocketHttpConnection(transport, request.getURL());
+					request.writeRequest(conns[i]);
+				}
+				//
+				HttpSocket socket = pool.acquire(conns[0].getKey());
+				final boolean reused = socket != null;
+				//
+				if (socket == null) {
+					socket = transport.openSocket(conns[0].getKey(), url);
+				}
+				//
+				setSocket(socket);
+				socket.setDeadline(deadline);
+				//
+				IOException failure = null;
+				boolean keptAlive = true;
+				boolean broken = false;
+				int written = 0;
+				int answered = 0;
+				//
+				try {
+					if (deadline != null && deadline.isExpired()) {
+						throw new RequestTimeoutException("Request timed out!");
+					}
+					//
+					OutputStream out = socket.getOutputStream();
+					//
+					if (deadline != null) {
+						out = deadline.watch(out);
+					}
+					//
+					try {
+						while (written < conns.length) {
+							conns[written].writeRequest(out);
+							conns[written].countRequest(socket);
+							written++;
+						}
+						//
+						out.flush();
+					} catch (IOException e) {
+						// the server may have closed the connection after some
+						// requests, whose responses can still be read.
+						failure = e;
+						broken = true;
+					}
+					//
+					while (keptAlive && answered < written) {
+						SocketHttpConnection conn = conns[answered];
+						//
+						conn.receive(socket);
+						//
+						HttpResponse response =
+							new HttpResponse(
+								conn,
+								conn.openInputStream(),
+								(HttpRequest)requests.elementAt(answered));
+						//
+						keptAlive = conn.isKeptAlive();
+						last = response;
+						//
+						deliver(answered++, response);
+					}
+				} catch (IOException e) {
+					failure = e;
+					keptAlive = false;
+				}
+				//
+				for (int i = 0; i < answered; i++) {
+					requests.removeElementAt(0);
+					listeners.removeElementAt(0);
+				}
+				//
+				releaseSocket(keptAlive && !broken && requests.isEmpty());
+				//
+				if (isAborted()) {
+					throw new InterruptedIOException("Request interrupted!");
+				}
+				if (deadline != null && deadline.isExpired()) {
+					throw new RequestTimeoutException("Request timed out!");
+				}
+				//
+				if (answered == 0 && !reused) {
+					if (failure == null) {
+						failure =
+							new IOException("Connection closed by server!");
+					}
+					//
+					throw failure;
+				}
+			}
+			//
+			return last;
+		}
+
+		/**
+		 * @see com.emobtech.networkingme.Request#abort()
+		 */
+		protected void abort() {
+			synchronized (this) {
+				aborted = true;
+			}
+			//
+			closeSocket();
+		}
+
+		/**
+		 * <p>
+		 * Starts watching the deadline of the pending requests, with their
+		 * smallest timeout and idle timeout.
+		 * </p>
+		 * @return Deadline or <code>null</code> if there is no timeout.
+		 */
+		private Watchdog.Deadline watch() {
+			long timeout = 0;
+			long idleTimeout = 0;
+			//
+			for (int i = 0; i < requests.size(); i++) {
+				HttpRequest request = (HttpRequest)requests.elementAt(i);
+				//
+				timeout = min(timeout, request.getTimeout());
+				idleTimeout = min(idleTimeout, request.getIdleTimeout());
+			}
+			//
+			return Watchdog.getInstance().watch(new Runnable() {
+				public void run() {
+					closeSocket();
+				}
+			}, timeout, idleTimeout);
+		}
+
+		/**
+		 * <p>
+		 * Closes the socket in use, which makes the sending fail. It is
+		 * called by a thread other than the one sending the requests.
+		 * </p>
+		 */
+		private void closeSocket() {
+			HttpSocket socket;
+			//
+			synchronized (this) {
+				socket = this.socket;
+			}
+			//
+			if (socket != null) {
+				socket.close();
+			}
+		}
+
+		/**
+		 * <p>
+		 * Notifies the listener of a pending request of its response. The
+		 * content is buffered, since the next responses follow it on the
+		 * socket, and handed over to a stream listener as such.
+		 * </p>
+		 * @param index Index of the request.
+		 * @param response Response.
+		 */
+		private void deliver(int index, Response response) {
+			Request request = (Request)requests.elementAt(index);
+			Listener listener = (Listener)listeners.elementAt(index);
+			//
+			try {
+				if (listener instanceof StreamListener
+						&& response.getCode() >= HttpRequest.Code.OK
+						&& response.getCode()
+							< HttpRequest.Code.MULTIPLE_CHOICES) {
+					((StreamListener)listener).onStream(
+						request,
+						response,
+						new ByteArrayInputStream(
+							response.getPayload().getBytes()));
+				}
+				//
+				listener.onComplete(request, response);
+				//
+				if (response.wasSuccessful()) {
+					listener.onSuccess(request, response);
+				} else {
+					listener.onFailure(
+						request, new RequestException(response));
+				}
+			} catch (Exception e) {
+				listener.onFailure(request, new RequestException(e));
+			}
+		}
+
+		/**
+		 * <p>
+		 * Notifies the listener of a pending request of its failure.
+		 * </p>
+		 * @param index Index of the request.
+		 * @param exception Exception.
+		 */
+		private void deliver(int index, Exception exception) {
+			((Listener)listeners.elementAt(index)).onFailure(
+				(Request)requests.elementAt(index),
+				new RequestException(exception));
+		}
+
+		/**
+		 * <p>
+		 * Notifies the listeners of all pending requests of a given failure,
+		 * removing them.
+		 * </p>
+		 * @param exception Exception.
+		 */
+		private void fail(Exception exception) {
+			for (int i = 0; i < requests.size(); i++) {
+				deliver(i, exception);
+			}
+			//
+			requests.removeAllElements();
+			listeners.removeAllElements();
+		}
+
+		/**
+		 * <p>
+		 * Sets the socket in use, so it can be aborted.
+		 * </p>
+		 * @param socket Socket.
+		 * @throws IOException If the batch was aborted.
+		 */
+		private void setSocket(HttpSocket socket) throws IOException {
+			synchronized (this) {
+				if (!aborted) {
+					this.socket = socket;
+					//
+					return;
+				}
+			}
+			//
+			pool.release(socket);
+			//
+			throw new InterruptedIOException("Request interrupted!");
+		}
+
+		/**
+		 * <p>
+		 * Lets go of the socket in use, giving it back to the pool or
+		 * closing it.
+		 * </p>
+		 * @param reusable Reusable socket (true).
+		 */
+		private void releaseSocket(boolean reusable) {
+			HttpSocket socket;
+			//
+			synchronized (this) {
+				socket = this.socket;
+				this.socket = null;
+				//
+				if (aborted) {
+					reusable = false;
+				}
+			}
+			//
+			socket.setDeadline(null);
+			//
+			if (reusable) {
+				pool.release(socket);
+			} else {
+				socket.close();
+			}
+		}
+
+		/**
+		 * <p>
+		 * Returns the smallest of two timeouts, where zero means none.
+		 * </p>
+		 * @param a Timeout.
+		 * @param b Timeout.
+		 * @return Smallest timeout.
+		 */
+		private static long min(long a, long b) {
+			return a > 0 && (b <= 0 || a < b) ? a : b;
+		}
+
+		/**
+		 * <p>
+		 * Returns whether the batch was aborted.
+		 * </p>
+		 * @return Aborted (true).
+		 */
+		private synchronized boolean isAborted() {
+			return aborted;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Client.
+	 * </p>
+	 */
+	private HttpClient client;
+
+	/**
+	 * <p>
+	 * Requests.
+	 * </p>
+	 */
+	private Vector requests = new Vector(8);
+
+	/**
+	 * <p>
+	 * Listeners.
+	 * </p>
+	 */
+	private Vector listeners = new Vector(8);
+
+	/**
+	 * <p>
+	 * Creates a Pipeline for a given client.
+	 * </p>
+	 * @param client Client.
+	 */
+	Pipeline(HttpClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * <p>
+	 * Adds a GET HTTP request for a given path.
+	 * </p>
+	 * @param path Path.
+	 * @param listener Request event listener.
+	 * @throws IllegalArgumentException Path null or empty!
+	 */
+	public void get(String path, Listener listener) {
+		get(path, null, listener);
+	}
+
+	/**
+	 * <p>
+	 * Adds a GET HTTP request for a given path with some parameters.
+	 * </p>
+	 * @param path Path.
+	 * @param parameters Parameters.
+	 * @param listener Request event listener.
+	 * @throws IllegalArgumentException Path null or empty!
+	 */
+	public void get(String path, Hashtable parameters, Listener listener) {
+		client.checkPath(path);
+		//
+		add(
+			new HttpRequest(new URL(client.getBaseURL(), path, parameters)),
+			listener);
+	}
+
+	/**
+	 * <p>
+	 * Adds a HEAD HTTP request for a given path.
+	 * </p>
+	 * @param path Path.
+	 * @param listener Request event listener.
+	 * @throws IllegalArgumentException Path null or empty!
+	 */
+	public void head(String path, Listener listener) {
+		head(path, null, listener);
+	}
+
+	/**
+	 * <p>
+	 * Adds a HEAD HTTP request for a given path with some parameters.
+	 * </p>
+	 * @param path Path.
+	 * @param parameters Parameters.
+	 * @param listener Request event listener.
+	 * @throws IllegalArgumentException Path null or empty!
+	 */
+	public void head(String path, Hashtable parameters, Listener listener) {
+		client.checkPath(path);
+		//
+		add(
+			new HttpRequest(
+				new URL(client.getBaseURL(), path, parameters),
+				HttpRequest.Method.HEAD),
+			listener);
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of requests added.
+	 * </p>
+	 * @return Size.
+	 */
+	public int size() {
+		return requests.size();
+	}
+
+	/**
+	 * <p>
+	 * Starts all requests added, which are removed from the pipeline. The
+	 * requests to each host run as a single operation.
+	 * </p>
+	 */
+	public void start() {
+		Transport transport = client.getTransport();
+		Hashtable batches = new Hashtable(4);
+		Vector order = new Vector(4);
+		//
+		for (int i = 0; i < requests.size(); i++) {
+			HttpRequest request = (HttpRequest)requests.elementAt(i);
+			Listener listener = (Listener)listeners.elementAt(i);
+			//
+			if (!(transport instanceof SocketTransport)) {
+				client.start(request, listener);
+				//
+				continue;
+			}
+			//
+			client.prepare(request);
+			//
+			URL url = request.getURL();
+			String key =
+				url.getScheme().toLowerCase() + "://" + url.getAuthority();
+			Batch batch = (Batch)batches.get(key);
+			//
+			if (batch == null) {
+				batch = new Batch((SocketTransport)transport, url);
+				batch.setPriority(request.getPriority());
+				//
+				batches.put(key, batch);
+				order.addElement(batch);
+			}
+			//
+			batch.requests.addElement(request);
+			batch.listeners.addElement(client.wrap(listener));
+		}
+		//
+		requests.removeAllElements();
+		listeners.removeAllElements();
+		//
+		for (int i = 0; i < order.size(); i++) {
+			client.newOperation((Batch)order.elementAt(i)).start(null);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds a request.
+	 * </p>
+	 * @param request Request.
+	 * @param listener Request event listener.
+	 */
+	private void add(HttpRequest request, Listener listener) {
+		requests.addElement(request);
+		listeners.addElement(listener);
+	}
+}
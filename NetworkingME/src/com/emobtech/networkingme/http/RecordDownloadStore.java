@@ -0,0 +1,455 @@
+/* RecordDownloadStore.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotFoundException;
+
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a download store kept in a record store (RMS). The
+ * first record holds the validator and the length, and the next ones hold
+ * the bytes, in order, in records of up to 4 KB. The length is updated as
+ * each record is added, so at most one record is lost in case the
+ * application is killed during a download. Such a record, beyond the
+ * length, is deleted when the store is opened.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class RecordDownloadStore implements DownloadStore {
+	/**
+	 * <p>
+	 * Maximum size of a record of bytes.
+	 * </p>
+	 */
+	private static final int RECORD_SIZE = 4096;
+
+	/**
+	 * <p>
+	 * Id of the record with the validator and length.
+	 * </p>
+	 */
+	private static final int STATE_RECORD_ID = 1;
+
+	/**
+	 * <p>
+	 * Name of the record store.
+	 * </p>
+	 */
+	private String name;
+
+	/**
+	 * <p>
+	 * Validator.
+	 * </p>
+	 */
+	private String validator;
+
+	/**
+	 * <p>
+	 * Length.
+	 * </p>
+	 */
+	private long length;
+
+	/**
+	 * <p>
+	 * Creates a RecordDownloadStore.
+	 * </p>
+	 * @param name Name of the record store.
+	 * @throws IllegalArgumentException Name null or empty!
+	 */
+	public RecordDownloadStore(String name) {
+		if (Util.isEmptyString(name)) {
+			throw new IllegalArgumentException("Name null or empty!");
+		}
+		//
+		this.name = name;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#getLength()
+	 */
+	public synchronized long getLength() throws IOException {
+		close(open());
+		//
+		return length;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#getValidator()
+	 */
+	public synchronized String getValidator() throws IOException {
+		close(open());
+		//
+		return validator;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#reset(java.lang.String)
+	 */
+	public synchronized void reset(String validator) throws IOException {
+		delete();
+		//
+		RecordStore store = open();
+		//
+		try {
+			this.validator = validator;
+			//
+			writeState(store);
+		} finally {
+			close(store);
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#openOutputStream()
+	 */
+	public OutputStream openOutputStream() throws IOException {
+		final RecordStore store;
+		//
+		synchronized (this) {
+			store = open();
+		}
+		//
+		return new OutputStream() {
+			private byte[] buffer = new byte[RECORD_SIZE];
+			private int count;
+
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			public void write(byte[] b, int off, int len)
+				throws IOException {
+				int n;
+				//
+				while (len > 0) {
+					n = Math.min(len, buffer.length - count);
+					//
+					System.arraycopy(b, off, buffer, count, n);
+					count += n;
+					off += n;
+					len -= n;
+					//
+					if (count == buffer.length) {
+						flush();
+					}
+				}
+			}
+
+			public void flush() throws IOException {
+				if (count > 0) {
+					addRecord(store, buffer, count);
+					//
+					count = 0;
+				}
+			}
+
+			public void close() throws IOException {
+				try {
+					flush();
+				} finally {
+					RecordDownloadStore.this.close(store);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#openInputStream()
+	 */
+	public InputStream openInputStream() throws IOException {
+		final RecordStore store;
+		final int last;
+		final long total;
+		//
+		synchronized (this) {
+			store = open();
+			total = length;
+			//
+			try {
+				last = store.getNextRecordID() -1;
+			} catch (RecordStoreException e) {
+				close(store);
+				//
+				throw new IOException(e.getMessage());
+			}
+		}
+		//
+		return new InputStream() {
+			private byte[] record = new byte[0];
+			private int position;
+			private int id = STATE_RECORD_ID;
+			private long remaining = total;
+
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				//
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining == 0) {
+					return -1;
+				}
+				//
+				while (position == record.length) {
+					if (id == last) {
+						return -1;
+					}
+					//
+					try {
+						record = store.getRecord(++id);
+					} catch (InvalidRecordIDException e) {
+						record = null; // deleted when trimmed.
+					} catch (RecordStoreException e) {
+						throw new IOException(e.getMessage());
+					}
+					//
+					if (record == null) {
+						record = new byte[0];
+					}
+					//
+					position = 0;
+				}
+				//
+				final int n =
+					(int)Math.min(Math.min(len, record.length - position),
+						remaining);
+				//
+				System.arraycopy(record, position, b, off, n);
+				position += n;
+				remaining -= n;
+				//
+				return n;
+			}
+
+			public int available() {
+				return (int)Math.min(record.length - position, remaining);
+			}
+
+			public void close() throws IOException {
+				RecordDownloadStore.this.close(store);
+			}
+		};
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.DownloadStore#delete()
+	 */
+	public synchronized void delete() throws IOException {
+		try {
+			RecordStore.deleteRecordStore(name);
+		} catch (RecordStoreNotFoundException e) {
+			// nothing to delete.
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+		//
+		validator = null;
+		length = 0;
+	}
+
+	/**
+	 * <p>
+	 * Opens the record store, creating it if necessary, and reads its
+	 * state.
+	 * </p>
+	 * @return Record store.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private RecordStore open() throws IOException {
+		try {
+			RecordStore store = RecordStore.openRecordStore(name, true);
+			//
+			try {
+				if (store.getNumRecords() == 0) {
+					validator = null;
+					length = 0;
+					//
+					writeState(store);
+				} else {
+					readState(store);
+					trim(store);
+				}
+			} catch (IOException e) {
+				close(store);
+				//
+				throw e;
+			}
+			//
+			return store;
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes a given record store.
+	 * </p>
+	 * @param store Record store.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void close(RecordStore store) throws IOException {
+		try {
+			store.closeRecordStore();
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds a record of bytes to a given record store and updates its length.
+	 * </p>
+	 * @param store Record store.
+	 * @param data Bytes.
+	 * @param count Number of bytes.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private synchronized void addRecord(RecordStore store, byte[] data,
+		int count) throws IOException {
+		try {
+			store.addRecord(data, 0, count);
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+		//
+		length += count;
+		//
+		writeState(store);
+	}
+
+	/**
+	 * <p>
+	 * Deletes the records of bytes beyond the length of a given record
+	 * store, added before the application was killed and the length could
+	 * be updated. The length is reduced in case records are missing.
+	 * </p>
+	 * @param store Record store.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void trim(RecordStore store) throws IOException {
+		try {
+			final int last = store.getNextRecordID() -1;
+			long kept = 0;
+			boolean beyond = false;
+			int size;
+			//
+			for (int id = STATE_RECORD_ID +1; id <= last; id++) {
+				try {
+					size = store.getRecordSize(id);
+				} catch (InvalidRecordIDException e) {
+					continue; // deleted before.
+				}
+				//
+				if (!beyond && kept + size <= length) {
+					kept += size;
+				} else {
+					beyond = true;
+					//
+					store.deleteRecord(id);
+				}
+			}
+			//
+			if (kept < length) {
+				length = kept;
+				//
+				writeState(store);
+			}
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the validator and length from a given record store.
+	 * </p>
+	 * @param store Record store.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readState(RecordStore store) throws IOException {
+		byte[] state;
+		//
+		try {
+			state = store.getRecord(STATE_RECORD_ID);
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+		//
+		DataInputStream in =
+			new DataInputStream(new ByteArrayInputStream(state));
+		//
+		validator = in.readUTF();
+		length = in.readLong();
+		//
+		if (validator.length() == 0) {
+			validator = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes the validator and length to a given record store.
+	 * </p>
+	 * @param store Record store.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void writeState(RecordStore store) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		//
+		out.writeUTF(validator != null ? validator : "");
+		out.writeLong(length);
+		//
+		final byte[] state = bytes.toByteArray();
+		//
+		try {
+			if (store.getNumRecords() == 0) {
+				store.addRecord(state, 0, state.length);
+			} else {
+				store.setRecord(STATE_RECORD_ID, state, 0, state.length);
+			}
+		} catch (RecordStoreException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,447 @@
+/* ResumableDownload.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import com.emobtech.networkingme.Request;
+import com.emobtech.networkingme.RequestException;
+import com.emobtech.networkingme.Response;
+import com.emobtech.networkingme.StreamListener;
+import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a download that resumes where it stopped. The
+ * content is written to a {@link DownloadStore} as it is received, along
+ * with its validator, i.e. its ETag or last modification date. Once sent
+ * again, e.g. after the connection dropped, only the missing bytes are
+ * requested, with the Range header.
+ * </p>
+ * <p>
+ * The If-Range header makes the server send the whole content again in case
+ * the entity changed in the meantime, which restarts the download. The
+ * validator and the range of the partial response are checked too. A
+ * download is only resumed in case the server provided a strong validator.
+ * </p>
+ * <p>
+ * It is run as any request, with a
+ * {@link com.emobtech.networkingme.RequestOperation}. Its response has no
+ * payload, since the content is in the store.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class ResumableDownload extends Request {
+	/**
+	 * <p>
+	 * URL.
+	 * </p>
+	 */
+	private URL url;
+
+	/**
+	 * <p>
+	 * Store.
+	 * </p>
+	 */
+	private DownloadStore store;
+
+	/**
+	 * <p>
+	 * Header.
+	 * </p>
+	 */
+	private Hashtable header = new Hashtable(4);
+
+	/**
+	 * <p>
+	 * Idle timeout.
+	 * </p>
+	 */
+	private long idleTimeout;
+
+	/**
+	 * <p>
+	 * Transport.
+	 * </p>
+	 */
+	private Transport transport;
+
+	/**
+	 * <p>
+	 * Length of the whole content. -1 means unknown.
+	 * </p>
+	 */
+	private long totalLength = -1;
+
+	/**
+	 * <p>
+	 * Request being sent.
+	 * </p>
+	 */
+	private HttpRequest request;
+
+	/**
+	 * <p>
+	 * Aborted flag.
+	 * </p>
+	 */
+	private boolean aborted;
+
+	/**
+	 * <p>
+	 * Creates a ResumableDownload.
+	 * </p>
+	 * @param url URL.
+	 * @param store Store.
+	 * @throws IllegalArgumentException URL or store null!
+	 */
+	public ResumableDownload(URL url, DownloadStore store) {
+		if (url == null || store == null) {
+			throw new IllegalArgumentException("URL or store null!");
+		}
+		//
+		this.url = url;
+		this.store = store;
+	}
+
+	/**
+	 * <p>
+	 * Returns the URL.
+	 * </p>
+	 * @return URL.
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * <p>
+	 * Returns the store.
+	 * </p>
+	 * @return Store.
+	 */
+	public DownloadStore getStore() {
+		return store;
+	}
+
+	/**
+	 * <p>
+	 * Sets a header field, e.g. an authorization.
+	 * </p>
+	 * @param key Field key.
+	 * @param value Value.
+	 * @throws IllegalArgumentException Key/Value null or empty!
+	 * @see HttpRequest#setHeader(String, String)
+	 */
+	public void setHeader(String key, String value) {
+		if (Util.isEmptyString(key) || Util.isEmptyString(value)) {
+			throw new IllegalArgumentException("Key/Value null or empty!");
+		}
+		//
+		header.put(key, value);
+	}
+
+	/**
+	 * <p>
+	 * Sets the maximum time, in milliseconds, the download can wait for the
+	 * connection or between two received bytes. Zero means no limit, which
+	 * is the default.
+	 * </p>
+	 * @param idleTimeout Idle timeout.
+	 * @throws IllegalArgumentException Idle timeout must not be negative!
+	 * @see HttpRequest#setIdleTimeout(long)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException(
+				"Idle timeout must not be negative!");
+		}
+		//
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * <p>
+	 * Sets the transport the download is sent through. <code>null</code>,
+	 * the default, means the default transport.
+	 * </p>
+	 * @param transport Transport.
+	 * @see HttpRequest#setTransport(Transport)
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * <p>
+	 * Returns the length of the whole content, as informed by the server on
+	 * the last sending. -1 is returned in case it is unknown.
+	 * </p>
+	 * @return Length.
+	 */
+	public long getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the whole content is in the store.
+	 * </p>
+	 * @return Complete (true).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	public boolean isComplete() throws IOException {
+		return totalLength >= 0 && store.getLength() == totalLength;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.Request#getAuthority()
+	 */
+	protected String getAuthority() {
+		return url.getAuthority();
+	}
+
+	/**
+	 * <p>
+	 * Requests the bytes missing in the store and appends them to it. The
+	 * last stored byte is requested again, so a complete download still
+	 * gets a partial response instead of an error.
+	 * </p>
+	 * @see com.emobtech.networkingme.Request#send()
+	 */
+	protected Response send() throws IOException {
+		final long offset = store.getLength();
+		final String validator = store.getValidator();
+		final boolean resuming = offset > 0 && validator != null;
+		//
+		HttpRequest request = new HttpRequest(url);
+		Enumeration keys = header.keys();
+		String key;
+		//
+		while (keys.hasMoreElements()) {
+			key = (String)keys.nextElement();
+			//
+			request.setHeader(key, (String)header.get(key));
+		}
+		//
+		request.setHeader(HttpRequest.Header.ACCEPT_ENCODING, "identity");
+		request.setIdleTimeout(idleTimeout);
+		request.setTransport(transport);
+		//
+		if (resuming) {
+			request.setHeader(
+				HttpRequest.Header.RANGE, "bytes=" + (offset -1) + "-");
+			request.setHeader(HttpRequest.Header.IF_RANGE, validator);
+		}
+		//
+		synchronized (this) {
+			if (aborted) {
+				throw new InterruptedIOException("Request interrupted!");
+			}
+			//
+			this.request = request;
+		}
+		//
+		try {
+			Response response = request.send(new StreamListener() {
+				public void onStream(Request request, Response response,
+					InputStream in) throws IOException {
+					receive(
+						(HttpResponse)response, in, resuming ? offset : 0,
+						validator);
+				}
+
+				public void onFailure(Request request,
+					RequestException exception) {
+				}
+			});
+			//
+			if (response.getCode()
+					== HttpRequest.Code.REQUESTED_RANGE_NOT_SATISFIABLE) {
+				store.reset(null);
+			}
+			//
+			return response;
+		} finally {
+			synchronized (this) {
+				this.request = null;
+			}
+		}
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.Request#abort()
+	 */
+	protected void abort() {
+		HttpRequest request;
+		//
+		synchronized (this) {
+			aborted = true;
+			request = this.request;
+		}
+		//
+		if (request != null) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes the content of a given response to the store. A partial
+	 * response is appended, once its range and validator are checked, and
+	 * any other one replaces the bytes stored.
+	 * </p>
+	 * @param response Response.
+	 * @param in Content.
+	 * @param offset Number of bytes stored, which were not requested.
+	 * @param validator Validator of the bytes stored.
+	 * @throws IOException If any I/O error occurs or the response does not
+	 *         match the bytes stored.
+	 */
+	private void receive(HttpResponse response, InputStream in, long offset,
+		String validator) throws IOException {
+		if (response.getCode() == HttpRequest.Code.PARTIAL_CONTENT) {
+			final long[] range =
+				parseContentRange(
+					response.getHeader(HttpRequest.Header.CONTENT_RANGE));
+			final String current = getValidator(response);
+			//
+			if (offset == 0
+					|| range == null
+					|| range[0] != offset -1
+					|| (current != null && !current.equals(validator))) {
+				store.reset(null);
+				//
+				throw new IOException("Partial content does not match!");
+			}
+			//
+			if (in.read() == -1) {
+				throw new IOException("Unexpected end of stream!");
+			}
+			//
+			totalLength = range[1];
+		} else {
+			offset = 0;
+			totalLength =
+				parseLength(
+					response.getHeader(HttpRequest.Header.CONTENT_LENGTH));
+			//
+			store.reset(getValidator(response));
+		}
+		//
+		OutputStream out = store.openOutputStream();
+		//
+		try {
+			Util.copyBytes(
+				in, out, totalLength >= 0 ? totalLength - offset : -1);
+		} finally {
+			out.close();
+		}
+		//
+		if (totalLength < 0) {
+			totalLength = store.getLength();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the validator of a given response, i.e. its ETag or, in case
+	 * it is weak or missing, its last modification date. <code>null</code>
+	 * is returned in case there is none.
+	 * </p>
+	 * @param response Response.
+	 * @return Validator.
+	 */
+	private static String getValidator(HttpResponse response) {
+		String validator = response.getHeader(HttpRequest.Header.ETAG);
+		//
+		if (validator == null || validator.startsWith("W/")) {
+			validator = response.getHeader(HttpRequest.Header.LAST_MODIFIED);
+		}
+		//
+		return validator;
+	}
+
+	/**
+	 * <p>
+	 * Parses a given Content-Range value, e.g. "bytes 100-199/200", into
+	 * its first byte and total length. The total length is -1 in case it is
+	 * unknown.
+	 * </p>
+	 * @param value Value.
+	 * @return First byte and total length. <code>null</code> if invalid.
+	 */
+	private static long[] parseContentRange(String value) {
+		if (value == null) {
+			return null;
+		}
+		//
+		value = value.trim();
+		//
+		final int dash = value.indexOf('-');
+		final int slash = value.indexOf('/');
+		//
+		if (!value.startsWith("bytes ") || dash == -1 || slash < dash) {
+			return null;
+		}
+		//
+		try {
+			final String total = value.substring(slash +1).trim();
+			//
+			return new long[] {
+				Long.parseLong(value.substring(6, dash).trim()),
+				total.equals("*") ? -1 : Long.parseLong(total)};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Parses a given Content-Length value.
+	 * </p>
+	 * @param value Value.
+	 * @return Length. -1 if missing or invalid.
+	 */
+	private static long parseLength(String value) {
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				// length unknown.
+			}
+		}
+		//
+		return -1;
+	}
+}
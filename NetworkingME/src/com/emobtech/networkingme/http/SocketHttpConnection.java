@@ -0,0 +1,1472 @@
+/* SocketHttpConnection.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class implements a HTTP connection that speaks HTTP/1.1 straight over
+ * a socket, taken from the connection pool of its transport. Once the
+ * response body is fully read, the socket is given back to the pool, unless
+ * the server asked to close it.
+ * </p>
+ * <p>
+ * A large request body whose length is set is written straight to a new
+ * socket, as is a body whose length is not set, with chunked encoding.
+ * Otherwise, it is buffered and sent along with the header, when the
+ * response is first asked for. Responses are delimited by their length,
+ * chunked encoding or the end of the stream.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see SocketTransport
+ */
+final class SocketHttpConnection implements HttpConnection {
+	/**
+	 * <p>
+	 * Line terminator.
+	 * </p>
+	 */
+	private static final String CRLF = "\r\n";
+
+	/**
+	 * <p>
+	 * Maximum length of a request body that is buffered.
+	 * </p>
+	 */
+	private static final long MAX_BUFFERED_LENGTH = 8 * 1024;
+
+	/**
+	 * <p>
+	 * Maximum size of a request body chunk.
+	 * </p>
+	 */
+	private static final int CHUNK_SIZE = 2048;
+
+	/**
+	 * <p>
+	 * Transport.
+	 * </p>
+	 */
+	private SocketTransport transport;
+
+	/**
+	 * <p>
+	 * Pool.
+	 * </p>
+	 */
+	private ConnectionPool pool;
+
+	/**
+	 * <p>
+	 * URL.
+	 * </p>
+	 */
+	private URL url;
+
+	/**
+	 * <p>
+	 * Method.
+	 * </p>
+	 */
+	private String method = GET;
+
+	/**
+	 * <p>
+	 * Request header field keys, in the order they were set.
+	 * </p>
+	 */
+	private Vector requestKeys = new Vector(8);
+
+	/**
+	 * <p>
+	 * Request header fields, by lower case key.
+	 * </p>
+	 */
+	private Hashtable requestHeader = new Hashtable(8);
+
+	/**
+	 * <p>
+	 * Request body.
+	 * </p>
+	 */
+	private ByteArrayOutputStream requestBody;
+
+	/**
+	 * <p>
+	 * Stream that writes the request body straight to the socket.
+	 * </p>
+	 */
+	private OutputStream requestStream;
+
+	/**
+	 * <p>
+	 * Whether the request body is sent with chunked encoding.
+	 * </p>
+	 */
+	private boolean chunked;
+
+	/**
+	 * <p>
+	 * Socket. <code>null</code> before connecting and once it is given back
+	 * to the pool.
+	 * </p>
+	 */
+	private HttpSocket socket;
+
+	/**
+	 * <p>
+	 * Connected flag.
+	 * </p>
+	 */
+	private boolean connected;
+
+	/**
+	 * <p>
+	 * Whether the request was sent over a reused socket.
+	 * </p>
+	 */
+	private boolean socketReused;
+
+	/**
+	 * <p>
+	 * Closed flag.
+	 * </p>
+	 */
+	private boolean closed;
+
+	/**
+	 * <p>
+	 * Response code.
+	 * </p>
+	 */
+	private int responseCode = -1;
+
+	/**
+	 * <p>
+	 * Response message.
+	 * </p>
+	 */
+	private String responseMessage;
+
+	/**
+	 * <p>
+	 * Response header field keys, in the order they were received.
+	 * </p>
+	 */
+	private Vector responseKeys = new Vector(10);
+
+	/**
+	 * <p>
+	 * Response header field values, in the order they were received.
+	 * </p>
+	 */
+	private Vector responseValues = new Vector(10);
+
+	/**
+	 * <p>
+	 * Response body.
+	 * </p>
+	 */
+	private Body responseBody;
+
+	/**
+	 * <p>
+	 * Pipelined flag. The socket of a pipelined connection belongs to the
+	 * pipeline, so it is never given back to the pool nor closed by it.
+	 * </p>
+	 */
+	private boolean pipelined;
+
+	/**
+	 * <p>
+	 * Whether the socket can be kept open after the response.
+	 * </p>
+	 */
+	private boolean keptAlive;
+
+	/**
+	 * <p>
+	 * This class implements the input stream of the response body. It reads
+	 * the socket up to the end of the body and then gives the socket back
+	 * to the pool.
+	 * </p>
+	 */
+	private final class Body extends InputStream {
+		/**
+		 * <p>
+		 * Number of body bytes left, or of the current chunk's bytes left.
+		 * -1 means up to the end of the stream.
+		 * </p>
+		 */
+		private long remaining;
+
+		/**
+		 * <p>
+		 * Chunked flag.
+		 * </p>
+		 */
+		private boolean chunked;
+
+		/**
+		 * <p>
+		 * Reusable socket flag.
+		 * </p>
+		 */
+		private boolean reusable;
+
+		/**
+		 * <p>
+		 * End of body flag.
+		 * </p>
+		 */
+		private boolean finished;
+
+		/**
+		 * <p>
+		 * Creates a Body.
+		 * </p>
+		 * @param length Length, -1 if unknown.
+		 * @param chunked Chunked (true).
+		 * @param reusable Reusable socket (true).
+		 */
+		private Body(long length, boolean chunked, boolean reusable) {
+			this.chunked = chunked;
+			this.reusable = reusable && (chunked || length >= 0);
+			//
+			remaining = chunked ? 0 : length;
+			//
+			if (remaining == 0 && !chunked) {
+				finish();
+			}
+		}
+
+		/**
+		 * @see java.io.InputStream#read()
+		 */
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			//
+			return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+		}
+
+		/**
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		public int read(byte[] b, int off, int len) throws IOException {
+			HttpSocket socket = getSocket();
+			//
+			if (finished) {
+				return -1;
+			}
+			if (chunked && remaining == 0 && !nextChunk(socket)) {
+				return -1;
+			}
+			//
+			if (remaining > 0 && len > remaining) {
+				len = (int)remaining;
+			}
+			//
+			int n = socket.read(b, off, len);
+			//
+			if (n == -1) {
+				if (remaining > 0) {
+					throw new IOException("Unexpected end of response!");
+				}
+				//
+				reusable = false;
+				finish();
+			} else if (remaining > 0) {
+				remaining -= n;
+				//
+				if (remaining == 0 && !chunked) {
+					finish();
+				}
+			}
+			//
+			return n;
+		}
+
+		/**
+		 * @see java.io.InputStream#available()
+		 */
+		public int available() throws IOException {
+			if (finished || remaining == 0) {
+				return 0;
+			}
+			//
+			int n = getSocket().available();
+			//
+			return remaining > 0 && n > remaining ? (int)remaining : n;
+		}
+
+		/**
+		 * <p>
+		 * Closes the body. In case it was not fully read, the socket is
+		 * closed.
+		 * </p>
+		 * @see java.io.InputStream#close()
+		 */
+		public void close() throws IOException {
+			if (!finished) {
+				reusable = false;
+				//
+				finish();
+			}
+		}
+
+		/**
+		 * <p>
+		 * Moves to the next chunk.
+		 * </p>
+		 * @param socket Socket.
+		 * @return Moved (true) or last chunk (false).
+		 * @throws IOException If any I/O error occurs.
+		 */
+		private boolean nextChunk(HttpSocket socket) throws IOException {
+			String line = socket.readLine();
+			//
+			if (line != null && line.length() == 0) {
+				line = socket.readLine();
+			}
+			if (line == null) {
+				throw new IOException("Unexpected end of response!");
+			}
+			//
+			int end = line.indexOf(';');
+			//
+			try {
+				remaining =
+					Long.parseLong(
+						(end != -1 ? line.substring(0, end) : line).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size!");
+			}
+			//
+			if (remaining == 0) {
+				while ((line = socket.readLine()) != null
+						&& line.length() > 0) {
+					// skips trailer fields.
+				}
+				//
+				finish();
+				//
+				return false;
+			}
+			//
+			return true;
+		}
+
+		/**
+		 * <p>
+		 * Ends the body, giving the socket back to the pool or closing it.
+		 * </p>
+		 */
+		private void finish() {
+			finished = true;
+			//
+			release(reusable);
+		}
+	}
+
+	/**
+	 * <p>
+	 * This class implements the output stream of a request body sent with
+	 * chunked encoding. The bytes are buffered up to a chunk's size, so a
+	 * chunk is written per buffer instead of per write. Closing it writes
+	 * the last chunk.
+	 * </p>
+	 */
+	private static final class ChunkedStream extends OutputStream {
+		/**
+		 * <p>
+		 * Stream of the socket.
+		 * </p>
+		 */
+		private OutputStream out;
+
+		/**
+		 * <p>
+		 * Buffer.
+		 * </p>
+		 */
+		private byte[] buffer = new byte[CHUNK_SIZE];
+
+		/**
+		 * <p>
+		 * Number of buffered bytes.
+		 * </p>
+		 */
+		private int count;
+
+		/**
+		 * <p>
+		 * Closed flag.
+		 * </p>
+		 */
+		private boolean closed;
+
+		/**
+		 * <p>
+		 * Creates a ChunkedStream.
+		 * </p>
+		 * @param out Stream of the socket.
+		 */
+		private ChunkedStream(OutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * @see java.io.OutputStream#write(int)
+		 */
+		public void write(int b) throws IOException {
+			checkOpen();
+			//
+			buffer[count++] = (byte)b;
+			//
+			if (count == buffer.length) {
+				writeBuffer();
+			}
+		}
+
+		/**
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkOpen();
+			//
+			if (len >= buffer.length) {
+				writeBuffer();
+				writeChunk(b, off, len);
+				//
+				return;
+			}
+			//
+			int n;
+			//
+			while (len > 0) {
+				n = Math.min(len, buffer.length - count);
+				//
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+				//
+				if (count == buffer.length) {
+					writeBuffer();
+				}
+			}
+		}
+
+		/**
+		 * @see java.io.OutputStream#flush()
+		 */
+		public void flush() throws IOException {
+			if (!closed) {
+				writeBuffer();
+			}
+			//
+			out.flush();
+		}
+
+		/**
+		 * <p>
+		 * Writes the buffered bytes and the last chunk. The socket is not
+		 * closed.
+		 * </p>
+		 * @see java.io.OutputStream#close()
+		 */
+		public void close() throws IOException {
+			if (!closed) {
+				writeBuffer();
+				//
+				closed = true;
+				//
+				out.write(Util.toBytes("0" + CRLF + CRLF));
+				out.flush();
+			}
+		}
+
+		/**
+		 * <p>
+		 * Writes the buffered bytes as a chunk, if any.
+		 * </p>
+		 * @throws IOException If any I/O error occurs.
+		 */
+		private void writeBuffer() throws IOException {
+			if (count > 0) {
+				writeChunk(buffer, 0, count);
+				//
+				count = 0;
+			}
+		}
+
+		/**
+		 * <p>
+		 * Writes a chunk.
+		 * </p>
+		 * @param b Bytes.
+		 * @param off Offset.
+		 * @param len Length.
+		 * @throws IOException If any I/O error occurs.
+		 */
+		private void writeChunk(byte[] b, int off, int len)
+			throws IOException {
+			out.write(Util.toBytes(Integer.toHexString(len) + CRLF));
+			out.write(b, off, len);
+			out.write('\r');
+			out.write('\n');
+		}
+
+		/**
+		 * <p>
+		 * Checks whether it is still open.
+		 * </p>
+		 * @throws IOException If it is closed.
+		 */
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed!");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Creates a SocketHttpConnection to a given URL.
+	 * </p>
+	 * @param transport Transport.
+	 * @param url URL.
+	 */
+	SocketHttpConnection(SocketTransport transport, URL url) {
+		this.transport = transport;
+		this.url = url;
+		//
+		pool = transport.getConnectionPool();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getURL()
+	 */
+	public String getURL() {
+		return url.toEncodedString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getProtocol()
+	 */
+	public String getProtocol() {
+		return url.getScheme().toLowerCase();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHost()
+	 */
+	public String getHost() {
+		return url.getDomain();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getFile()
+	 */
+	public String getFile() {
+		return url.getPath();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRef()
+	 */
+	public String getRef() {
+		return url.getFragment();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getQuery()
+	 */
+	public String getQuery() {
+		return url.getQueryString();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getPort()
+	 */
+	public int getPort() {
+		return url.getPort();
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestMethod()
+	 */
+	public String getRequestMethod() {
+		return method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestMethod(java.lang.String)
+	 */
+	public void setRequestMethod(String method) throws IOException {
+		checkSetup();
+		//
+		this.method = method;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getRequestProperty(java.lang.String)
+	 */
+	public String getRequestProperty(String key) {
+		return (String)requestHeader.get(key.toLowerCase());
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#setRequestProperty(java.lang.String, java.lang.String)
+	 */
+	public void setRequestProperty(String key, String value)
+		throws IOException {
+		checkSetup();
+		//
+		String lowerKey = key.toLowerCase();
+		//
+		if (!requestHeader.containsKey(lowerKey)) {
+			requestKeys.addElement(key);
+		}
+		//
+		requestHeader.put(lowerKey, value);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getResponseCode()
+	 */
+	public int getResponseCode() throws IOException {
+		connect();
+		//
+		return responseCode;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getResponseMessage()
+	 */
+	public String getResponseMessage() throws IOException {
+		connect();
+		//
+		return responseMessage;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getExpiration()
+	 */
+	public long getExpiration() throws IOException {
+		return getHeaderFieldDate("expires", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getDate()
+	 */
+	public long getDate() throws IOException {
+		return getHeaderFieldDate("date", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getLastModified()
+	 */
+	public long getLastModified() throws IOException {
+		return getHeaderFieldDate("last-modified", 0);
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(java.lang.String)
+	 */
+	public String getHeaderField(String name) throws IOException {
+		connect();
+		//
+		for (int i = 0; i < responseKeys.size(); i++) {
+			if (name.toLowerCase().equals(
+					((String)responseKeys.elementAt(i)).toLowerCase())) {
+				return (String)responseValues.elementAt(i);
+			}
+		}
+		//
+		return null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldInt(java.lang.String, int)
+	 */
+	public int getHeaderFieldInt(String name, int def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		try {
+			return value != null ? Integer.parseInt(value.trim()) : def;
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldDate(java.lang.String, long)
+	 */
+	public long getHeaderFieldDate(String name, long def) throws IOException {
+		String value = getHeaderField(name);
+		//
+		return value != null ? parseDate(value, def) : def;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderField(int)
+	 */
+	public String getHeaderField(int n) throws IOException {
+		connect();
+		//
+		return n >= 0 && n < responseValues.size()
+			? (String)responseValues.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.HttpConnection#getHeaderFieldKey(int)
+	 */
+	public String getHeaderFieldKey(int n) throws IOException {
+		connect();
+		//
+		return n >= 0 && n < responseKeys.size()
+			? (String)responseKeys.elementAt(n) : null;
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getType()
+	 */
+	public String getType() {
+		try {
+			return getHeaderField("content-type");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getEncoding()
+	 */
+	public String getEncoding() {
+		try {
+			return getHeaderField("content-encoding");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.ContentConnection#getLength()
+	 */
+	public long getLength() {
+		try {
+			String value = getHeaderField("content-length");
+			//
+			return value != null ? Long.parseLong(value.trim()) : -1;
+		} catch (IOException e) {
+			return -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openInputStream()
+	 */
+	public InputStream openInputStream() throws IOException {
+		connect();
+		//
+		return responseBody;
+	}
+
+	/**
+	 * @see javax.microedition.io.InputConnection#openDataInputStream()
+	 */
+	public DataInputStream openDataInputStream() throws IOException {
+		return new DataInputStream(openInputStream());
+	}
+
+	/**
+	 * <p>
+	 * Returns a stream that writes the request body straight to the socket,
+	 * in case its length is large or not set, when chunked encoding is used.
+	 * Otherwise, the stream buffers it and it is sent along with the header,
+	 * which keeps a small request retriable on a reused socket.
+	 * </p>
+	 * @see javax.microedition.io.OutputConnection#openOutputStream()
+	 */
+	public OutputStream openOutputStream() throws IOException {
+		if (requestStream != null) {
+			return requestStream;
+		}
+		//
+		checkSetup();
+		//
+		if (requestBody == null) {
+			final long length = getRequestLength();
+			//
+			if (length < 0 || length > MAX_BUFFERED_LENGTH) {
+				chunked = length < 0;
+				requestStream = openRequestStream();
+				//
+				return requestStream;
+			}
+			//
+			requestBody = new ByteArrayOutputStream();
+		}
+		//
+		return requestBody;
+	}
+
+	/**
+	 * @see javax.microedition.io.OutputConnection#openDataOutputStream()
+	 */
+	public DataOutputStream openDataOutputStream() throws IOException {
+		return new DataOutputStream(openOutputStream());
+	}
+
+	/**
+	 * <p>
+	 * Closes the connection. The socket is closed too, unless it was already
+	 * given back to the pool. It can be called by another thread to abort
+	 * the request.
+	 * </p>
+	 * @see javax.microedition.io.Connection#close()
+	 */
+	public void close() throws IOException {
+		HttpSocket socket;
+		//
+		synchronized (this) {
+			closed = true;
+			socket = this.socket;
+			this.socket = null;
+		}
+		//
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends the request and reads the response header, in case it was not
+	 * done yet. A failure on a reused socket, which the server may have
+	 * closed meanwhile, is retried on a new one, as long as the request
+	 * was not sent yet or it is a GET or HEAD, which can be sent again.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		//
+		if (requestStream != null) {
+			receiveStreamed();
+			//
+			return;
+		}
+		//
+		final String key = getKey();
+		final boolean idempotent = GET.equals(method) || HEAD.equals(method);
+		//
+		while (true) {
+			HttpSocket socket = pool.acquire(key);
+			final boolean reused = socket != null;
+			//
+			if (socket == null) {
+				socket = transport.openSocket(key, url);
+			}
+			//
+			setSocket(socket);
+			//
+			String statusLine;
+			boolean sent = false;
+			//
+			try {
+				OutputStream out = socket.getOutputStream();
+				//
+				writeRequest(out);
+				out.flush();
+				sent = true;
+				countRequest(socket);
+				//
+				statusLine = socket.readLine();
+				//
+				if (statusLine == null) {
+					throw new IOException("Connection closed by server!");
+				}
+			} catch (IOException e) {
+				release(false);
+				//
+				if (reused && !isClosed() && (!sent || idempotent)) {
+					continue;
+				}
+				//
+				throw e;
+			}
+			//
+			try {
+				readResponse(socket, statusLine);
+			} catch (IOException e) {
+				release(false);
+				//
+				throw e;
+			}
+			//
+			connected = true;
+			//
+			return;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens a new socket and writes the request head to it, returning a
+	 * stream that writes the body straight to the socket, with chunked
+	 * encoding if so. A reused socket is
+	 * not taken from the pool, since the body could not be sent again in
+	 * case the server had closed it meanwhile.
+	 * </p>
+	 * @return Stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private OutputStream openRequestStream() throws IOException {
+		HttpSocket socket = transport.openSocket(getKey(), url);
+		//
+		setSocket(socket);
+		//
+		final OutputStream out = socket.getOutputStream();
+		//
+		try {
+			out.write(Util.toBytes(getRequestHead()));
+		} catch (IOException e) {
+			release(false);
+			//
+			throw e;
+		}
+		//
+		if (chunked) {
+			return new ChunkedStream(out);
+		}
+		//
+		return new OutputStream() {
+			public void write(int b) throws IOException {
+				out.write(b);
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			public void close() throws IOException {
+				out.flush();
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * Reads the response of a request whose body was written straight to the
+	 * socket.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void receiveStreamed() throws IOException {
+		HttpSocket socket;
+		//
+		synchronized (this) {
+			socket = this.socket;
+		}
+		//
+		if (socket == null) {
+			throw new InterruptedIOException("Connection closed!");
+		}
+		//
+		try {
+			requestStream.close();
+			countRequest(socket);
+			//
+			String statusLine = socket.readLine();
+			//
+			if (statusLine == null) {
+				throw new IOException("Connection closed by server!");
+			}
+			//
+			readResponse(socket, statusLine);
+		} catch (IOException e) {
+			release(false);
+			//
+			throw e;
+		}
+		//
+		connected = true;
+	}
+
+	/**
+	 * <p>
+	 * Returns the length of the request body, as set in its header.
+	 * </p>
+	 * @return Length or -1 if unknown.
+	 */
+	private long getRequestLength() {
+		String length = getRequestProperty("content-length");
+		//
+		try {
+			return length != null ? Long.parseLong(length.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the pool key, e.g. "http://www.emobtech.com:80".
+	 * </p>
+	 * @return Key.
+	 */
+	String getKey() {
+		return getProtocol() + "://" + url.getAuthority();
+	}
+
+	/**
+	 * <p>
+	 * Writes the request header and body to a given stream, without
+	 * flushing it.
+	 * </p>
+	 * @param out Output stream.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	void writeRequest(OutputStream out) throws IOException {
+		out.write(Util.toBytes(getRequestHead()));
+		//
+		if (requestBody != null) {
+			out.write(requestBody.toByteArray());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the response of a request written to a pipelined socket, whose
+	 * previous responses were fully read.
+	 * </p>
+	 * @param socket Socket.
+	 * @throws IOException If any I/O error occurs.
+	 * @see SocketHttpConnection#writeRequest(OutputStream)
+	 */
+	void receive(HttpSocket socket) throws IOException {
+		synchronized (this) {
+			pipelined = true;
+			this.socket = socket;
+		}
+		//
+		String statusLine = socket.readLine();
+		//
+		if (statusLine == null) {
+			throw new IOException("Connection closed by server!");
+		}
+		//
+		readResponse(socket, statusLine);
+		//
+		connected = true;
+	}
+
+	/**
+	 * <p>
+	 * Counts the request as sent over a given socket, which was reused in
+	 * case former requests were sent over it.
+	 * </p>
+	 * @param socket Socket.
+	 */
+	void countRequest(HttpSocket socket) {
+		socket.countRequest();
+		//
+		synchronized (this) {
+			socketReused = socket.getRequestCount() > 1;
+		}
+		//
+		transport.countRequest(url, socketReused);
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the request was sent over a socket reused from former
+	 * requests, so it took no new connection, nor TLS handshake.
+	 * </p>
+	 * @return Reused (true).
+	 */
+	synchronized boolean isSocketReused() {
+		return socketReused;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the socket can be kept open after the response, which
+	 * is known once its body is fully read.
+	 * </p>
+	 * @return Kept alive (true).
+	 */
+	synchronized boolean isKeptAlive() {
+		return keptAlive;
+	}
+
+	/**
+	 * <p>
+	 * Reads the status line and header of the response, skipping interim
+	 * responses, and prepares its body.
+	 * </p>
+	 * @param socket Socket.
+	 * @param statusLine First status line.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readResponse(HttpSocket socket, String statusLine)
+		throws IOException {
+		while (true) {
+			parseStatusLine(statusLine);
+			readHeader(socket);
+			//
+			if (responseCode < 100 || responseCode >= 200) {
+				break;
+			}
+			//
+			responseKeys.removeAllElements();
+			responseValues.removeAllElements();
+			//
+			statusLine = socket.readLine();
+			//
+			if (statusLine == null) {
+				throw new IOException("Connection closed by server!");
+			}
+		}
+		//
+		String connection = getHeaderValue("connection");
+		boolean reusable;
+		//
+		if (statusLine.startsWith("HTTP/1.0")) {
+			reusable =
+				connection != null
+					&& connection.toLowerCase().indexOf("keep-alive") != -1;
+		} else {
+			reusable =
+				connection == null
+					|| connection.toLowerCase().indexOf("close") == -1;
+		}
+		//
+		String requestConnection = getRequestProperty("connection");
+		//
+		if (requestConnection != null
+				&& requestConnection.toLowerCase().indexOf("close") != -1) {
+			reusable = false;
+		}
+		//
+		String encoding = getHeaderValue("transfer-encoding");
+		String length = getHeaderValue("content-length");
+		//
+		if (HEAD.equals(method) || responseCode == 204
+				|| responseCode == 304) {
+			responseBody = new Body(0, false, reusable);
+		} else if (encoding != null
+				&& encoding.toLowerCase().indexOf("chunked") != -1) {
+			responseBody = new Body(-1, true, reusable);
+		} else if (length != null) {
+			try {
+				responseBody =
+					new Body(Long.parseLong(length.trim()), false, reusable);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid content length!");
+			}
+		} else {
+			responseBody = new Body(-1, false, false);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Parses the response status line, e.g. "HTTP/1.1 200 OK".
+	 * </p>
+	 * @param line Status line.
+	 * @throws IOException If the line is invalid.
+	 */
+	private void parseStatusLine(String line) throws IOException {
+		if (!line.startsWith("HTTP/")) {
+			throw new IOException("Invalid status line: " + line);
+		}
+		//
+		int start = line.indexOf(' ');
+		int end = start != -1 ? line.indexOf(' ', start +1) : -1;
+		//
+		try {
+			responseCode =
+				Integer.parseInt(
+					end != -1
+						? line.substring(start +1, end)
+						: line.substring(start +1));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: " + line);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Invalid status line: " + line);
+		}
+		//
+		responseMessage = end != -1 ? line.substring(end +1) : "";
+	}
+
+	/**
+	 * <p>
+	 * Reads the response header fields, up to the empty line.
+	 * </p>
+	 * @param socket Socket.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readHeader(HttpSocket socket) throws IOException {
+		String line;
+		int index;
+		//
+		while ((line = socket.readLine()) != null && line.length() > 0) {
+			index = line.indexOf(':');
+			//
+			if (index > 0) {
+				responseKeys.addElement(line.substring(0, index).trim());
+				responseValues.addElement(line.substring(index +1).trim());
+			}
+		}
+		//
+		if (line == null) {
+			throw new IOException("Unexpected end of response!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the value of a response header field, without connecting.
+	 * </p>
+	 * @param name Lower case name.
+	 * @return Value.
+	 */
+	private String getHeaderValue(String name) {
+		for (int i = 0; i < responseKeys.size(); i++) {
+			if (name.equals(
+					((String)responseKeys.elementAt(i)).toLowerCase())) {
+				return (String)responseValues.elementAt(i);
+			}
+		}
+		//
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Returns the request line and header fields.
+	 * </p>
+	 * @return Request head.
+	 */
+	private String getRequestHead() {
+		StringBuffer head = new StringBuffer(256);
+		//
+		head.append(method).append(' ');
+		head.append(url.getPath() != null ? url.getPath() : "/");
+		//
+		String query = url.getQueryString();
+		//
+		if (query != null) {
+			head.append('?').append(Util.encodeQueryString(query));
+		}
+		//
+		head.append(" HTTP/1.1").append(CRLF);
+		//
+		if (getRequestProperty("host") == null) {
+			head.append("Host: ").append(url.getDomain());
+			//
+			int port = url.getPort();
+			//
+			if (port != getDefaultPort()) {
+				head.append(':').append(port);
+			}
+			//
+			head.append(CRLF);
+		}
+		//
+		String key;
+		//
+		for (int i = 0; i < requestKeys.size(); i++) {
+			key = (String)requestKeys.elementAt(i);
+			//
+			head.append(key).append(": ");
+			head.append(getRequestProperty(key)).append(CRLF);
+		}
+		//
+		if (chunked) {
+			head.append("Transfer-Encoding: chunked").append(CRLF);
+		} else if (getRequestProperty("content-length") == null
+				&& (requestBody != null || POST.equals(method))) {
+			head.append("Content-Length: ");
+			head.append(requestBody != null ? requestBody.size() : 0);
+			head.append(CRLF);
+		}
+		//
+		head.append(CRLF);
+		//
+		return head.toString();
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the URL is secure, i.e. HTTPS.
+	 * </p>
+	 * @return Secure (true).
+	 */
+	private boolean isSecure() {
+		return "https".equals(getProtocol());
+	}
+
+	/**
+	 * <p>
+	 * Returns the default port of the URL's scheme.
+	 * </p>
+	 * @return Port.
+	 */
+	private int getDefaultPort() {
+		return isSecure() ? 443 : 80;
+	}
+
+	/**
+	 * <p>
+	 * Sets the socket of the ongoing sending.
+	 * </p>
+	 * @param socket Socket.
+	 * @throws IOException If the connection was closed meanwhile.
+	 */
+	private void setSocket(HttpSocket socket) throws IOException {
+		synchronized (this) {
+			if (!closed) {
+				this.socket = socket;
+				//
+				return;
+			}
+		}
+		//
+		pool.release(socket);
+		//
+		throw new InterruptedIOException("Connection closed!");
+	}
+
+	/**
+	 * <p>
+	 * Returns the socket of the ongoing sending.
+	 * </p>
+	 * @return Socket.
+	 * @throws IOException If the connection is closed.
+	 */
+	private synchronized HttpSocket getSocket() throws IOException {
+		if (socket == null && !responseBody.finished) {
+			throw new InterruptedIOException("Connection closed!");
+		}
+		//
+		return socket;
+	}
+
+	/**
+	 * <p>
+	 * Lets go of the socket, giving it back to the pool or closing it.
+	 * </p>
+	 * @param reusable Reusable socket (true).
+	 */
+	private void release(boolean reusable) {
+		HttpSocket socket;
+		//
+		synchronized (this) {
+			socket = this.socket;
+			this.socket = null;
+			keptAlive = reusable;
+			//
+			if (pipelined) {
+				return;
+			}
+		}
+		//
+		if (socket != null) {
+			if (reusable) {
+				pool.release(socket);
+			} else {
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the connection was closed.
+	 * </p>
+	 * @return Closed (true).
+	 */
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the request can still be set up.
+	 * </p>
+	 * @throws IOException If it was already sent.
+	 */
+	private void checkSetup() throws IOException {
+		if (connected || requestStream != null) {
+			throw new IOException("Already connected!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Parses a HTTP date, e.g. "Sun, 06 Nov 1994 08:49:37 GMT".
+	 * </p>
+	 * @param value Date.
+	 * @param def Value returned in case the date is invalid.
+	 * @return Time in milliseconds.
+	 */
+	private static long parseDate(String value, long def) {
+		try {
+			Date date = Util.parseCookieDate(value);
+			//
+			return date != null ? date.getTime() : def;
+		} catch (RuntimeException e) {
+			return def;
+		}
+	}
+}
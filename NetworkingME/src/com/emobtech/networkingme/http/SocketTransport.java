@@ -0,0 +1,352 @@
+/* SocketTransport.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+import javax.microedition.io.SocketConnection;
+import javax.microedition.io.StreamConnection;
+
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This class implements a transport that speaks HTTP/1.1 straight over
+ * sockets, which are kept open in a connection pool and reused by the next
+ * requests to the same host.
+ * </p>
+ * <p>
+ * Sockets are opened through {@link Connector}, with "socket://" and
+ * "ssl://" addresses, unless a socket factory is set, e.g. one backed by
+ * another network stack.
+ * </p>
+ * <p>
+ * Secure sockets are kept in the pool per host and port like any other, so
+ * the next HTTPS requests to them reuse their TLS session with no handshake
+ * at all. Whether a new socket resumes a former session is up to the
+ * platform, which does not tell.
+ * </p>
+ * <p>
+ * With a DNS cache, plain sockets are opened straight to the address of the
+ * host, once known. Secure ones are always opened to the host name, which
+ * their certificate is checked against.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see ConnectionPool
+ */
+public final class SocketTransport implements Transport {
+	/**
+	 * <p>
+	 * This interface represents a factory of socket connections.
+	 * </p>
+	 */
+	public static interface SocketFactory {
+		/**
+		 * <p>
+		 * Opens a socket connection to a given host.
+		 * </p>
+		 * @param host Host name.
+		 * @param port Port.
+		 * @param secure Secure (true), i.e. over TLS.
+		 * @return Connection.
+		 * @throws IOException If any I/O error occurs.
+		 */
+		StreamConnection open(String host, int port, boolean secure)
+			throws IOException;
+	}
+
+	/**
+	 * <p>
+	 * Pool.
+	 * </p>
+	 */
+	private ConnectionPool pool;
+
+	/**
+	 * <p>
+	 * Socket factory.
+	 * </p>
+	 */
+	private SocketFactory factory;
+
+	/**
+	 * <p>
+	 * DNS cache.
+	 * </p>
+	 */
+	private DnsCache dnsCache;
+
+	/**
+	 * <p>
+	 * Number of secure sockets opened.
+	 * </p>
+	 */
+	private int secureSocketCount;
+
+	/**
+	 * <p>
+	 * Number of secure requests sent over reused sockets.
+	 * </p>
+	 */
+	private int reuseCount;
+
+	/**
+	 * <p>
+	 * Creates a SocketTransport with a new connection pool.
+	 * </p>
+	 */
+	public SocketTransport() {
+		this(new ConnectionPool());
+	}
+
+	/**
+	 * <p>
+	 * Creates a SocketTransport with a given connection pool.
+	 * </p>
+	 * @param pool Pool.
+	 * @throws IllegalArgumentException Pool null!
+	 */
+	public SocketTransport(ConnectionPool pool) {
+		this(pool, null);
+	}
+
+	/**
+	 * <p>
+	 * Creates a SocketTransport with a given connection pool and socket
+	 * factory.
+	 * </p>
+	 * @param pool Pool.
+	 * @param factory Factory. <code>null</code> means {@link Connector}.
+	 * @throws IllegalArgumentException Pool null!
+	 */
+	public SocketTransport(ConnectionPool pool, SocketFactory factory) {
+		if (pool == null) {
+			throw new IllegalArgumentException("Pool null!");
+		}
+		//
+		this.pool = pool;
+		this.factory = factory;
+	}
+
+	/**
+	 * <p>
+	 * Returns the connection pool.
+	 * </p>
+	 * @return Pool.
+	 */
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+
+	/**
+	 * <p>
+	 * Returns the DNS cache.
+	 * </p>
+	 * @return Cache.
+	 */
+	public DnsCache getDnsCache() {
+		return dnsCache;
+	}
+
+	/**
+	 * <p>
+	 * Sets the DNS cache. <code>null</code>, the default, means every socket
+	 * is opened to the host name.
+	 * </p>
+	 * @param dnsCache Cache.
+	 */
+	public void setDnsCache(DnsCache dnsCache) {
+		this.dnsCache = dnsCache;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of secure sockets opened so far. Each one takes a
+	 * TLS handshake, which may or may not resume a former session.
+	 * </p>
+	 * @return Count.
+	 */
+	public synchronized int getSecureSocketCount() {
+		return secureSocketCount;
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of secure requests sent over a socket kept open
+	 * from former requests, whose TLS session was then reused with no
+	 * handshake at all.
+	 * </p>
+	 * @return Count.
+	 * @see HttpResponse#isConnectionReused()
+	 */
+	public synchronized int getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * <p>
+	 * Resolves the host of a given URL ahead of the requests to it. In case
+	 * the DNS cache has a resolver, the host is just resolved. Otherwise,
+	 * since MIDP can only resolve a host by connecting to it, a socket is
+	 * opened, which teaches the cache the address, and kept in the pool for
+	 * the next request. It blocks until done.
+	 * </p>
+	 * @param url URL.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	public void preresolve(URL url) throws IOException {
+		final DnsCache cache = dnsCache;
+		//
+		if (cache != null && cache.getResolver() != null && !isSecure(url)) {
+			cache.lookup(url.getDomain());
+			//
+			return;
+		}
+		//
+		final String key = new SocketHttpConnection(this, url).getKey();
+		HttpSocket socket = pool.acquire(key);
+		//
+		if (socket == null) {
+			socket = openSocket(key, url);
+		}
+		//
+		pool.release(socket);
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.http.Transport#open(com.emobtech.networkingme.URL)
+	 */
+	public HttpConnection open(URL url) {
+		return new SocketHttpConnection(this, url);
+	}
+
+	/**
+	 * <p>
+	 * Opens a new socket to the host of a given URL.
+	 * </p>
+	 * @param key Pool key.
+	 * @param url URL.
+	 * @return Socket.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	HttpSocket openSocket(String key, URL url) throws IOException {
+		final boolean secure = isSecure(url);
+		final String host = url.getDomain();
+		final DnsCache cache = !secure ? dnsCache : null;
+		String address = cache != null ? cache.lookup(host) : null;
+		StreamConnection conn;
+		//
+		try {
+			conn = connect(address != null ? address : host, url.getPort(),
+				secure);
+		} catch (IOException e) {
+			if (address == null) {
+				throw e;
+			}
+			// the cached address may have changed.
+			cache.remove(host);
+			address = null;
+			//
+			conn = connect(host, url.getPort(), secure);
+		}
+		//
+		if (cache != null && address == null
+				&& conn instanceof SocketConnection) {
+			try {
+				cache.put(host, ((SocketConnection)conn).getAddress());
+			} catch (IOException e) {}
+		}
+		//
+		HttpSocket socket;
+		//
+		try {
+			socket = new HttpSocket(key, conn);
+		} catch (IOException e) {
+			conn.close();
+			//
+			throw e;
+		}
+		//
+		if (secure) {
+			synchronized (this) {
+				secureSocketCount++;
+			}
+		}
+		//
+		return socket;
+	}
+
+	/**
+	 * <p>
+	 * Counts a request sent to a given URL.
+	 * </p>
+	 * @param url URL.
+	 * @param reused Sent over a reused socket (true).
+	 */
+	void countRequest(URL url, boolean reused) {
+		if (reused && isSecure(url)) {
+			synchronized (this) {
+				reuseCount++;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens a socket connection to a given host.
+	 * </p>
+	 * @param host Host name or address.
+	 * @param port Port.
+	 * @param secure Secure (true), i.e. over TLS.
+	 * @return Connection.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private StreamConnection connect(String host, int port, boolean secure)
+		throws IOException {
+		if (factory != null) {
+			return factory.open(host, port, secure);
+		} else {
+			return
+				(StreamConnection)Connector.open(
+					(secure ? "ssl://" : "socket://") + host + ':' + port,
+					Connector.READ_WRITE,
+					true);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns whether a given URL is secure, i.e. HTTPS.
+	 * </p>
+	 * @param url URL.
+	 * @return Secure (true).
+	 */
+	private static boolean isSecure(URL url) {
+		return "https".equals(url.getScheme().toLowerCase());
+	}
+}
@@ -0,0 +1,125 @@
+/* StreamBody.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.emobtech.networkingme.StreamingPayload;
+import com.emobtech.networkingme.util.Util;
+
+/**
+ * <p>
+ * This class represents a body whose data is read from a stream, e.g. a
+ * file. It is used in a POST HTTP request to send large content, which is
+ * copied to the connection through a small buffer.
+ * </p>
+ * <p>
+ * The stream is read only once, so the body cannot be sent again.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class StreamBody implements StreamingPayload {
+	/**
+	 * <p>
+	 * Type.
+	 * </p>
+	 */
+	private String type;
+
+	/**
+	 * <p>
+	 * Stream.
+	 * </p>
+	 */
+	private InputStream stream;
+
+	/**
+	 * <p>
+	 * Length.
+	 * </p>
+	 */
+	private long length;
+
+	/**
+	 * <p>
+	 * Creates a StreamBody.
+	 * </p>
+	 * @param type Content type, e.g. "image/png".
+	 * @param stream Stream.
+	 * @param length Length. -1 means unknown, i.e. up to the end of the
+	 *        stream.
+	 * @throws IllegalArgumentException Type/Stream null or empty!
+	 */
+	public StreamBody(String type, InputStream stream, long length) {
+		if (Util.isEmptyString(type) || stream == null) {
+			throw new IllegalArgumentException("Type/Stream null or empty!");
+		}
+		//
+		this.type = type;
+		this.stream = stream;
+		this.length = length < 0 ? -1 : length;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.Payload#getType()
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.Payload#getLength()
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.Payload#getBytes()
+	 */
+	public byte[] getBytes() {
+		ByteArrayOutputStream out =
+			new ByteArrayOutputStream(length > 0 ? (int)length : 1024);
+		//
+		try {
+			writeTo(out);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error by reading stream!");
+		}
+		//
+		return out.toByteArray();
+	}
+
+	/**
+	 * @see com.emobtech.networkingme.StreamingPayload#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		Util.copyBytes(stream, out, length);
+	}
+}
@@ -0,0 +1,65 @@
+/* Transport.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+
+import javax.microedition.io.HttpConnection;
+
+import com.emobtech.networkingme.URL;
+
+/**
+ * <p>
+ * This interface represents the network stack HTTP requests are sent
+ * through. It opens a connection to a URL, which the request sets up, writes
+ * and reads as any HTTP connection.
+ * </p>
+ * <p>
+ * The following transports are available:<br/>
+ * <br/>- {@link ConnectorTransport}: the platform's HTTP connection, which is
+ * the default;
+ * <br/>- {@link SocketTransport}: HTTP/1.1 over pooled persistent sockets;
+ * <br/>- {@link Http2Transport}: HTTP/2 with a multiplexed session per host;
+ * <br/>- {@link LoopbackTransport}: in-memory exchanges, handy for tests.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see HttpRequest#setTransport(Transport)
+ * @see HttpRequest#setDefaultTransport(Transport)
+ */
+public interface Transport {
+	/**
+	 * <p>
+	 * Opens a connection to a given URL. Implementations may delay any
+	 * network activity until the request is written or its response is
+	 * read.
+	 * </p>
+	 * @param url URL.
+	 * @return Connection.
+	 * @throws IOException If any I/O error occurs.
+	 * @throws SecurityException If any security violation occurs.
+	 */
+	HttpConnection open(URL url) throws IOException, SecurityException;
+}
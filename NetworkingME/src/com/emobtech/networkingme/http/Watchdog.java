@@ -0,0 +1,371 @@
+/* Watchdog.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+
+/**
+ * <p>
+ * This class implements a watchdog that enforces the deadlines of the HTTP
+ * requests being sent, single or pipelined. A single timer checks all of
+ * them periodically and closes the connection of those that expired, which
+ * frees the blocked thread right away.
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+final class Watchdog {
+	/**
+	 * <p>
+	 * This class represents the deadline of a request being sent. It expires
+	 * when either the total time or the idle time between two transferred
+	 * bytes is exceeded.
+	 * </p>
+	 */
+	static final class Deadline {
+		/**
+		 * <p>
+		 * Action that closes the connection once it expires.
+		 * </p>
+		 */
+		private Runnable closer;
+
+		/**
+		 * <p>
+		 * Time the sending started.
+		 * </p>
+		 */
+		private long start;
+
+		/**
+		 * <p>
+		 * Time of the last transferred byte.
+		 * </p>
+		 */
+		private long lastActivity;
+
+		/**
+		 * <p>
+		 * Total timeout.
+		 * </p>
+		 */
+		private long timeout;
+
+		/**
+		 * <p>
+		 * Idle timeout.
+		 * </p>
+		 */
+		private long idleTimeout;
+
+		/**
+		 * <p>
+		 * Expired flag.
+		 * </p>
+		 */
+		private boolean expired;
+
+		/**
+		 * <p>
+		 * Creates a Deadline.
+		 * </p>
+		 * @param closer Action that closes the connection.
+		 * @param timeout Total timeout. Zero means none.
+		 * @param idleTimeout Idle timeout. Zero means none.
+		 */
+		private Deadline(Runnable closer, long timeout, long idleTimeout) {
+			this.closer = closer;
+			this.timeout = timeout;
+			this.idleTimeout = idleTimeout;
+			//
+			start = System.currentTimeMillis();
+			lastActivity = start;
+		}
+
+		/**
+		 * <p>
+		 * Returns whether it expired.
+		 * </p>
+		 * @return Expired (true).
+		 */
+		synchronized boolean isExpired() {
+			return expired;
+		}
+
+		/**
+		 * <p>
+		 * Returns an input stream that reports every read byte as activity.
+		 * </p>
+		 * @param in Input stream.
+		 * @return Watched input stream.
+		 */
+		InputStream watch(final InputStream in) {
+			return new InputStream() {
+				public int read() throws IOException {
+					int b = in.read();
+					//
+					touch();
+					//
+					return b;
+				}
+
+				public int read(byte[] b, int off, int len)
+					throws IOException {
+					int n = in.read(b, off, len);
+					//
+					touch();
+					//
+					return n;
+				}
+
+				public int available() throws IOException {
+					return in.available();
+				}
+
+				public void close() throws IOException {
+					in.close();
+				}
+			};
+		}
+
+		/**
+		 * <p>
+		 * Returns an output stream that reports every written byte as
+		 * activity.
+		 * </p>
+		 * @param out Output stream.
+		 * @return Watched output stream.
+		 */
+		OutputStream watch(final OutputStream out) {
+			return new OutputStream() {
+				public void write(int b) throws IOException {
+					out.write(b);
+					//
+					touch();
+				}
+
+				public void write(byte[] b, int off, int len)
+					throws IOException {
+					out.write(b, off, len);
+					//
+					touch();
+				}
+
+				public void flush() throws IOException {
+					out.flush();
+				}
+
+				public void close() throws IOException {
+					out.close();
+				}
+			};
+		}
+
+		/**
+		 * <p>
+		 * Registers activity at the current time.
+		 * </p>
+		 */
+		synchronized void touch() {
+			lastActivity = System.currentTimeMillis();
+		}
+
+		/**
+		 * <p>
+		 * Checks whether it expired at a given time, marking it as expired.
+		 * </p>
+		 * @param now Current time.
+		 * @return Expired (true).
+		 */
+		private synchronized boolean check(long now) {
+			if (!expired) {
+				expired =
+					(timeout > 0 && now - start >= timeout)
+					|| (idleTimeout > 0 && now - lastActivity >= idleTimeout);
+			}
+			//
+			return expired;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Interval between two checks.
+	 * </p>
+	 */
+	private static final long TICK = 250;
+
+	/**
+	 * <p>
+	 * Singleton instance.
+	 * </p>
+	 */
+	private static Watchdog singleton;
+
+	/**
+	 * <p>
+	 * Deadlines being watched.
+	 * </p>
+	 */
+	private Vector deadlines = new Vector(4);
+
+	/**
+	 * <p>
+	 * Timer.
+	 * </p>
+	 */
+	private Timer timer;
+
+	/**
+	 * <p>
+	 * Returns the Watchdog singleton instance.
+	 * </p>
+	 * @return Single instance.
+	 */
+	static synchronized Watchdog getInstance() {
+		if (singleton == null) {
+			singleton = new Watchdog();
+		}
+		//
+		return singleton;
+	}
+
+	/**
+	 * <p>
+	 * Starts watching the deadline of a request. <code>null</code> is
+	 * returned in case there is no timeout to enforce.
+	 * </p>
+	 * @param request Request.
+	 * @param timeout Total timeout. Zero means none.
+	 * @param idleTimeout Idle timeout. Zero means none.
+	 * @return Deadline.
+	 */
+	Deadline watch(final HttpRequest request, long timeout, long idleTimeout) {
+		return watch(new Runnable() {
+			public void run() {
+				request.closeConnection();
+			}
+		}, timeout, idleTimeout);
+	}
+
+	/**
+	 * <p>
+	 * Starts watching a deadline, which runs a given action that closes the
+	 * connection once it expires. <code>null</code> is returned in case
+	 * there is no timeout to enforce.
+	 * </p>
+	 * @param closer Action that closes the connection.
+	 * @param timeout Total timeout. Zero means none.
+	 * @param idleTimeout Idle timeout. Zero means none.
+	 * @return Deadline.
+	 */
+	Deadline watch(Runnable closer, long timeout, long idleTimeout) {
+		if (timeout <= 0 && idleTimeout <= 0) {
+			return null;
+		}
+		//
+		Deadline deadline = new Deadline(closer, timeout, idleTimeout);
+		//
+		synchronized (deadlines) {
+			deadlines.addElement(deadline);
+			//
+			if (timer == null) {
+				timer = new Timer();
+				timer.schedule(new TimerTask() {
+					public void run() {
+						check();
+					}
+				}, TICK, TICK);
+			}
+		}
+		//
+		return deadline;
+	}
+
+	/**
+	 * <p>
+	 * Stops watching a given deadline.
+	 * </p>
+	 * @param deadline Deadline. It can be <code>null</code>.
+	 */
+	void unwatch(Deadline deadline) {
+		if (deadline != null) {
+			synchronized (deadlines) {
+				deadlines.removeElement(deadline);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checks all deadlines, closing the connection of the expired ones. The
+	 * timer is stopped once there is nothing to watch.
+	 * </p>
+	 */
+	private void check() {
+		final long now = System.currentTimeMillis();
+		Vector expired = null;
+		Deadline deadline;
+		//
+		synchronized (deadlines) {
+			for (int i = deadlines.size() -1; i >= 0; i--) {
+				deadline = (Deadline)deadlines.elementAt(i);
+				//
+				if (deadline.check(now)) {
+					if (expired == null) {
+						expired = new Vector(2);
+					}
+					//
+					expired.addElement(deadline);
+					deadlines.removeElementAt(i);
+				}
+			}
+			//
+			if (deadlines.isEmpty() && timer != null) {
+				timer.cancel();
+				timer = null;
+			}
+		}
+		//
+		if (expired != null) {
+			for (int i = 0; i < expired.size(); i++) {
+				((Deadline)expired.elementAt(i)).closer.run();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Private constructor to avoid object instantiation.
+	 * </p>
+	 */
+	private Watchdog() {
+	}
+}
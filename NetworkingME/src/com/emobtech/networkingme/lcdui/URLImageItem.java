@@ -38,7 +38,7 @@ import com.emobtech.networkingme.http.HttpRequest;
  * This class implements a Custom Item that loads and displays an image from an
  * URL.
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public final class URLImageItem extends CustomItem {
@@ -76,6 +76,13 @@ public final class URLImageItem extends CustomItem {
 	 * </p>
 	 */
 	private String altText;
+	
+	/**
+	 * <p>
+	 * Handle of the ongoing image request.
+	 * </p>
+	 */
+	private RequestOperation.Handle imageRequest;
 
 	/**
 	 * <p>
@@ -140,11 +147,21 @@ public final class URLImageItem extends CustomItem {
 	 * @see javax.microedition.lcdui.CustomItem#showNotify()
 	 */
 	protected void showNotify() {
-		if (image == null) {
+		if (image == null && imageRequest == null) {
 			requestImage();
 		}
 	}	
 
+	/**
+	 * @see javax.microedition.lcdui.CustomItem#hideNotify()
+	 */
+	protected void hideNotify() {
+		if (imageRequest != null) {
+			imageRequest.cancel();
+			imageRequest = null;
+		}
+	}
+
 	/**
 	 * @see javax.microedition.lcdui.CustomItem#getMinContentHeight()
 	 */
@@ -213,16 +230,23 @@ public final class URLImageItem extends CustomItem {
 	 * Request the image.
 	 */
 	private void requestImage() {
-		RequestOperation oper = new RequestOperation(new HttpRequest(url));
-		oper.start(new ImageListener() {
+		HttpRequest req = new HttpRequest(url);
+		req.setPriority(Request.Priority.BACKGROUND);
+		//
+		RequestOperation oper = new RequestOperation(req);
+		oper.setCoalesce(true);
+		imageRequest = oper.start(new ImageListener() {
 			public void onImage(Image image) {
 				URLImageItem.this.image = image;
+				imageRequest = null;
 				//
 				invalidate();
 				repaint();
 			}
 
 			public void onFailure(Request request, RequestException exception) {
+				imageRequest = null;
+				//
 				invalidate();
 				repaint();
 			}
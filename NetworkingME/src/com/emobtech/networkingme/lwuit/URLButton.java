@@ -34,7 +34,7 @@ import com.sun.lwuit.Image;
 /**
  * This class implements a Button that loads and displays an icon from an URL.
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.0
+ * @version 1.2
  * @since 1.1
  */
 public final class URLButton extends Button {
@@ -44,6 +44,13 @@ public final class URLButton extends Button {
 	 * </p>
 	 */
 	private URL iconUrl;
+	
+	/**
+	 * <p>
+	 * Handle of the ongoing icon request.
+	 * </p>
+	 */
+	private RequestOperation.Handle iconRequest;
 
 	/**
 	 * <p>
@@ -97,17 +104,36 @@ public final class URLButton extends Button {
 		requestIcon();
 	}
 	
+	/**
+	 * @see com.sun.lwuit.Component#deinitialize()
+	 */
+	protected void deinitialize() {
+		if (iconRequest != null) {
+			iconRequest.cancel();
+			iconRequest = null;
+		}
+		//
+		super.deinitialize();
+	}
+	
 	/**
 	 * Request the icon.
 	 */
 	private void requestIcon() {
-		RequestOperation oper = new RequestOperation(new HttpRequest(iconUrl));
-		oper.start(new ImageListener() {
+		HttpRequest req = new HttpRequest(iconUrl);
+		req.setPriority(Request.Priority.BACKGROUND);
+		//
+		RequestOperation oper = new RequestOperation(req);
+		oper.setCoalesce(true);
+		iconRequest = oper.start(new ImageListener() {
 			public void onImage(Image image) {
+				iconRequest = null;
+				//
 				setIcon(image);
 			}
 
 			public void onFailure(Request request, RequestException exception) {
+				iconRequest = null;
 			}
 		});
 	}
@@ -0,0 +1,96 @@
+/* CRC32.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.util;
+
+/**
+ * <p>
+ * This class implements the CRC-32 checksum used by the gzip format.
+ * </p>
+ * <p>
+ * Reference: <br />
+ * <a href="http://www.ietf.org/rfc/rfc1952.txt" target="_blank">
+ *     http://www.ietf.org/rfc/rfc1952.txt
+ * </a>
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+final class CRC32 {
+	/**
+	 * <p>
+	 * Table of the CRCs of all bytes.
+	 * </p>
+	 */
+	private static final int[] TABLE = new int[256];
+
+	static {
+		int c;
+		//
+		for (int n = 0; n < TABLE.length; n++) {
+			c = n;
+			//
+			for (int k = 0; k < 8; k++) {
+				c = (c & 1) != 0 ? 0xedb88320 ^ (c >>> 1) : c >>> 1;
+			}
+			//
+			TABLE[n] = c;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checksum.
+	 * </p>
+	 */
+	private int crc;
+
+	/**
+	 * <p>
+	 * Updates the checksum with given bytes.
+	 * </p>
+	 * @param b Bytes.
+	 * @param off Offset.
+	 * @param len Length.
+	 */
+	void update(byte[] b, int off, int len) {
+		int c = ~crc;
+		//
+		for (int end = off + len; off < end; off++) {
+			c = TABLE[(c ^ b[off]) & 0xff] ^ (c >>> 8);
+		}
+		//
+		crc = ~c;
+	}
+
+	/**
+	 * <p>
+	 * Returns the checksum.
+	 * </p>
+	 * @return Checksum.
+	 */
+	int getValue() {
+		return crc;
+	}
+}
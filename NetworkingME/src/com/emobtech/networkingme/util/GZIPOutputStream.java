@@ -0,0 +1,552 @@
+/* GZIPOutputStream.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * This class implements an output stream that compresses data in the gzip
+ * format, as it is written. It is written in plain Java, so it runs where
+ * <code>java.util.zip</code> is not available, e.g. CLDC.
+ * </p>
+ * <p>
+ * Repeated strings are found in a 16 KB window and the data is encoded with
+ * the fixed Huffman codes, which trades some compression ratio for less
+ * memory and processing.
+ * </p>
+ * <p>
+ * Reference: <br />
+ * <a href="http://www.ietf.org/rfc/rfc1952.txt" target="_blank">
+ *     http://www.ietf.org/rfc/rfc1952.txt
+ * </a>
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ * @see InflaterInputStream
+ */
+public final class GZIPOutputStream extends OutputStream {
+	/**
+	 * <p>
+	 * Size of the sliding window.
+	 * </p>
+	 */
+	private static final int WINDOW_SIZE = 16384;
+
+	/**
+	 * <p>
+	 * Number of bits of the hash of a string.
+	 * </p>
+	 */
+	private static final int HASH_BITS = 12;
+
+	/**
+	 * <p>
+	 * Minimum length of a match.
+	 * </p>
+	 */
+	private static final int MIN_MATCH = 3;
+
+	/**
+	 * <p>
+	 * Maximum length of a match.
+	 * </p>
+	 */
+	private static final int MAX_MATCH = 258;
+
+	/**
+	 * <p>
+	 * Maximum number of matches tried for a string.
+	 * </p>
+	 */
+	private static final int MAX_CHAIN = 32;
+
+	/**
+	 * <p>
+	 * Fixed literal/length codes, bit-reversed to be written from the least
+	 * significant bit.
+	 * </p>
+	 */
+	private static final short[] LITERAL_CODES = new short[288];
+
+	/**
+	 * <p>
+	 * Lengths of the fixed literal/length codes.
+	 * </p>
+	 */
+	private static final byte[] LITERAL_BITS = new byte[288];
+
+	/**
+	 * <p>
+	 * Length symbols of the match lengths, from the minimum one.
+	 * </p>
+	 */
+	private static final byte[] LENGTH_SYMBOLS = new byte[256];
+
+	static {
+		int code;
+		int bits;
+		//
+		for (int s = 0; s < LITERAL_CODES.length; s++) {
+			if (s < 144) {
+				code = 0x30 + s;
+				bits = 8;
+			} else if (s < 256) {
+				code = 0x190 + s -144;
+				bits = 9;
+			} else if (s < 280) {
+				code = s -256;
+				bits = 7;
+			} else {
+				code = 0xc0 + s -280;
+				bits = 8;
+			}
+			//
+			LITERAL_CODES[s] = (short)reverse(code, bits);
+			LITERAL_BITS[s] = (byte)bits;
+		}
+		//
+		for (int len = MIN_MATCH, s = 0; len <= MAX_MATCH; len++) {
+			while (s < InflaterInputStream.LENGTH_BASE.length -1
+					&& InflaterInputStream.LENGTH_BASE[s +1] <= len) {
+				s++;
+			}
+			//
+			LENGTH_SYMBOLS[len - MIN_MATCH] = (byte)s;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compressed stream.
+	 * </p>
+	 */
+	private OutputStream out;
+
+	/**
+	 * <p>
+	 * Buffer of data, with the window and the data to compress.
+	 * </p>
+	 */
+	private byte[] window = new byte[WINDOW_SIZE * 2];
+
+	/**
+	 * <p>
+	 * Position of the next byte to compress.
+	 * </p>
+	 */
+	private int position;
+
+	/**
+	 * <p>
+	 * Number of bytes in the buffer.
+	 * </p>
+	 */
+	private int end;
+
+	/**
+	 * <p>
+	 * Most recent position of each hash. Zero means none.
+	 * </p>
+	 */
+	private char[] head = new char[1 << HASH_BITS];
+
+	/**
+	 * <p>
+	 * Previous position of a same hash, of the positions in the window.
+	 * </p>
+	 */
+	private char[] previous = new char[WINDOW_SIZE];
+
+	/**
+	 * <p>
+	 * Position of the last match found.
+	 * </p>
+	 */
+	private int matchPosition;
+
+	/**
+	 * <p>
+	 * Buffer of compressed bytes.
+	 * </p>
+	 */
+	private byte[] output = new byte[1024];
+
+	/**
+	 * <p>
+	 * Number of compressed bytes in the buffer.
+	 * </p>
+	 */
+	private int outputLength;
+
+	/**
+	 * <p>
+	 * Bits not written yet, from the least significant one.
+	 * </p>
+	 */
+	private int bitBuffer;
+
+	/**
+	 * <p>
+	 * Number of bits not written yet.
+	 * </p>
+	 */
+	private int bitCount;
+
+	/**
+	 * <p>
+	 * CRC-32 checksum.
+	 * </p>
+	 */
+	private CRC32 crc = new CRC32();
+
+	/**
+	 * <p>
+	 * Number of uncompressed bytes.
+	 * </p>
+	 */
+	private int total;
+
+	/**
+	 * <p>
+	 * Finished flag.
+	 * </p>
+	 */
+	private boolean finished;
+
+	/**
+	 * <p>
+	 * Creates a GZIPOutputStream. The gzip header is written right away.
+	 * </p>
+	 * @param out Compressed stream.
+	 * @throws IOException If any I/O error occurs.
+	 * @throws IllegalArgumentException Stream null!
+	 */
+	public GZIPOutputStream(OutputStream out) throws IOException {
+		if (out == null) {
+			throw new IllegalArgumentException("Stream null!");
+		}
+		//
+		this.out = out;
+		//
+		final int[] header = {0x1f, 0x8b, 8, 0, 0, 0, 0, 0, 0, 0xff};
+		//
+		for (int i = 0; i < header.length; i++) {
+			putBits(header[i], 8);
+		}
+		//
+		putBits(1, 1);
+		putBits(1, 2);
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(int)
+	 */
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte)b}, 0, 1);
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("Stream finished!");
+		}
+		//
+		crc.update(b, off, len);
+		total += len;
+		//
+		int n;
+		//
+		while (len > 0) {
+			n = Math.min(len, window.length - end);
+			//
+			System.arraycopy(b, off, window, end, n);
+			end += n;
+			off += n;
+			len -= n;
+			//
+			if (end == window.length) {
+				deflate(false);
+				slide();
+			}
+		}
+	}
+
+	/**
+	 * @see java.io.OutputStream#flush()
+	 */
+	public void flush() throws IOException {
+		out.write(output, 0, outputLength);
+		out.flush();
+		//
+		outputLength = 0;
+	}
+
+	/**
+	 * <p>
+	 * Finishes the compression, writing the rest of the data and the gzip
+	 * trailer, without closing the compressed stream.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		//
+		finished = true;
+		//
+		deflate(true);
+		putBits(LITERAL_CODES[256], LITERAL_BITS[256]);
+		//
+		if (bitCount > 0) {
+			putBits(0, 8 - bitCount);
+		}
+		//
+		final int checksum = crc.getValue();
+		//
+		putBits(checksum & 0xffff, 16);
+		putBits(checksum >>> 16, 16);
+		putBits(total & 0xffff, 16);
+		putBits(total >>> 16, 16);
+		//
+		flush();
+	}
+
+	/**
+	 * @see java.io.OutputStream#close()
+	 */
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compresses the data in the buffer. Unless it is the last time, the
+	 * bytes that could still start a longer match are kept.
+	 * </p>
+	 * @param last Last time (true).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void deflate(boolean last) throws IOException {
+		final int limit = last ? end : end - MAX_MATCH;
+		int length;
+		int hash;
+		//
+		while (position < limit) {
+			length = 0;
+			//
+			if (end - position >= MIN_MATCH) {
+				hash = hash(position);
+				length = match(head[hash]);
+				//
+				insert(position, hash);
+			}
+			//
+			if (length >= MIN_MATCH) {
+				putMatch(length, position - matchPosition);
+				//
+				for (int i = 1; i < length; i++) {
+					if (end - (position + i) >= MIN_MATCH) {
+						insert(position + i, hash(position + i));
+					}
+				}
+				//
+				position += length;
+			} else {
+				final int literal = window[position++] & 0xff;
+				//
+				putBits(LITERAL_CODES[literal], LITERAL_BITS[literal]);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Finds the longest match of the current position, along the chain of
+	 * a given position of a same hash.
+	 * </p>
+	 * @param candidate Most recent position of a same hash.
+	 * @return Length of the match. Its position is kept.
+	 */
+	private int match(int candidate) {
+		final int min = Math.max(position - WINDOW_SIZE, 0);
+		final int max = Math.min(MAX_MATCH, end - position);
+		int best = 0;
+		int length;
+		//
+		for (int chain = MAX_CHAIN; candidate > min && chain > 0; chain--) {
+			if (window[candidate + best] == window[position + best]) {
+				length = 0;
+				//
+				while (length < max
+						&& window[candidate + length]
+							== window[position + length]) {
+					length++;
+				}
+				//
+				if (length > best) {
+					best = length;
+					matchPosition = candidate;
+					//
+					if (length == max) {
+						break;
+					}
+				}
+			}
+			//
+			candidate = previous[candidate & (WINDOW_SIZE -1)];
+		}
+		//
+		return best;
+	}
+
+	/**
+	 * <p>
+	 * Inserts a given position in the chain of its hash.
+	 * </p>
+	 * @param pos Position.
+	 * @param hash Hash.
+	 */
+	private void insert(int pos, int hash) {
+		previous[pos & (WINDOW_SIZE -1)] = head[hash];
+		head[hash] = (char)pos;
+	}
+
+	/**
+	 * <p>
+	 * Returns the hash of the string at a given position.
+	 * </p>
+	 * @param pos Position.
+	 * @return Hash.
+	 */
+	private int hash(int pos) {
+		final int value =
+			((window[pos] & 0xff) << 16)
+			| ((window[pos +1] & 0xff) << 8)
+			| (window[pos +2] & 0xff);
+		//
+		return (value * 0x9e3779b1) >>> (32 - HASH_BITS);
+	}
+
+	/**
+	 * <p>
+	 * Slides the window, discarding its older half.
+	 * </p>
+	 */
+	private void slide() {
+		System.arraycopy(window, WINDOW_SIZE, window, 0, WINDOW_SIZE);
+		position -= WINDOW_SIZE;
+		end -= WINDOW_SIZE;
+		//
+		for (int i = 0; i < head.length; i++) {
+			head[i] = head[i] > WINDOW_SIZE ? (char)(head[i] - WINDOW_SIZE) : 0;
+		}
+		//
+		for (int i = 0; i < previous.length; i++) {
+			previous[i] =
+				previous[i] > WINDOW_SIZE
+					? (char)(previous[i] - WINDOW_SIZE) : 0;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes the codes of a given match.
+	 * </p>
+	 * @param length Length.
+	 * @param distance Distance.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void putMatch(int length, int distance) throws IOException {
+		int symbol = LENGTH_SYMBOLS[length - MIN_MATCH];
+		//
+		putBits(LITERAL_CODES[symbol +257], LITERAL_BITS[symbol +257]);
+		putBits(
+			length - InflaterInputStream.LENGTH_BASE[symbol],
+			InflaterInputStream.LENGTH_EXTRA[symbol]);
+		//
+		symbol = InflaterInputStream.DISTANCE_BASE.length -1;
+		//
+		while (InflaterInputStream.DISTANCE_BASE[symbol] > distance) {
+			symbol--;
+		}
+		//
+		putBits(reverse(symbol, 5), 5);
+		putBits(
+			distance - InflaterInputStream.DISTANCE_BASE[symbol],
+			InflaterInputStream.DISTANCE_EXTRA[symbol]);
+	}
+
+	/**
+	 * <p>
+	 * Writes a given number of bits, from the least significant one.
+	 * </p>
+	 * @param value Bits.
+	 * @param n Number of bits, up to 16.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void putBits(int value, int n) throws IOException {
+		bitBuffer |= (value & ((1 << n) -1)) << bitCount;
+		bitCount += n;
+		//
+		while (bitCount >= 8) {
+			if (outputLength == output.length) {
+				out.write(output, 0, outputLength);
+				outputLength = 0;
+			}
+			//
+			output[outputLength++] = (byte)bitBuffer;
+			bitBuffer >>>= 8;
+			bitCount -= 8;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reverses the bits of a given code.
+	 * </p>
+	 * @param code Code.
+	 * @param n Number of bits.
+	 * @return Reversed code.
+	 */
+	private static int reverse(int code, int n) {
+		int reversed = 0;
+		//
+		for (int i = 0; i < n; i++) {
+			reversed = (reversed << 1) | (code & 1);
+			code >>>= 1;
+		}
+		//
+		return reversed;
+	}
+}
@@ -0,0 +1,1029 @@
+/* InflaterInputStream.java
+ * 
+ * Networking ME
+ * Copyright (c) 2013 eMob Tech (http://www.emobtech.com/)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.emobtech.networkingme.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * This class implements an input stream that decompresses data in the
+ * deflate format, as it is read. It is written in plain Java, so it runs
+ * where <code>java.util.zip</code> is not available, e.g. CLDC. Data
+ * wrapped in the zlib or gzip formats is supported too, and checked against
+ * its checksum.
+ * </p>
+ * <p>
+ * Reference: <br />
+ * <a href="http://www.ietf.org/rfc/rfc1951.txt" target="_blank">
+ *     http://www.ietf.org/rfc/rfc1951.txt
+ * </a>
+ * </p>
+ * @author Ernandes Jr. (ernandes@emobtech.com)
+ * @version 1.0
+ * @since 1.2
+ */
+public final class InflaterInputStream extends InputStream {
+	/**
+	 * <p>
+	 * This class defines a list of formats of compressed data.
+	 * </p>
+	 */
+	public static final class Format {
+		/**
+		 * <p>
+		 * Raw deflate data.
+		 * </p>
+		 */
+		public static final int RAW = 0;
+
+		/**
+		 * <p>
+		 * Deflate data wrapped in the zlib format. Raw deflate data, which
+		 * some servers send instead, is detected and accepted too.
+		 * </p>
+		 */
+		public static final int ZLIB = 1;
+
+		/**
+		 * <p>
+		 * Deflate data wrapped in the gzip format.
+		 * </p>
+		 */
+		public static final int GZIP = 2;
+
+		/**
+		 * <p>
+		 * Private constructor to avoid object instantiation.
+		 * </p>
+		 */
+		private Format() {}
+	}
+
+	/**
+	 * <p>
+	 * This class represents a canonical Huffman code, as the number of codes
+	 * of each length and the symbols ordered by code.
+	 * </p>
+	 */
+	private static final class Huffman {
+		/**
+		 * <p>
+		 * Number of codes of each length.
+		 * </p>
+		 */
+		private short[] count = new short[MAX_BITS +1];
+
+		/**
+		 * <p>
+		 * Symbols ordered by code.
+		 * </p>
+		 */
+		private short[] symbol;
+
+		/**
+		 * <p>
+		 * Creates a Huffman for a given maximum number of symbols.
+		 * </p>
+		 * @param n Number of symbols.
+		 */
+		private Huffman(int n) {
+			symbol = new short[n];
+		}
+
+		/**
+		 * <p>
+		 * Builds the code from the code lengths of the symbols.
+		 * </p>
+		 * @param lengths Code lengths.
+		 * @param off Offset of the first symbol's length.
+		 * @param n Number of symbols.
+		 * @return Zero if complete, positive if incomplete or negative if
+		 *         over-subscribed.
+		 */
+		private int build(short[] lengths, int off, int n) {
+			for (int len = 0; len <= MAX_BITS; len++) {
+				count[len] = 0;
+			}
+			//
+			for (int s = 0; s < n; s++) {
+				count[lengths[off + s]]++;
+			}
+			//
+			if (count[0] == n) {
+				return 0;
+			}
+			//
+			int left = 1;
+			//
+			for (int len = 1; len <= MAX_BITS; len++) {
+				left <<= 1;
+				left -= count[len];
+				//
+				if (left < 0) {
+					return left;
+				}
+			}
+			//
+			short[] offsets = new short[MAX_BITS +1];
+			//
+			for (int len = 1; len < MAX_BITS; len++) {
+				offsets[len +1] = (short)(offsets[len] + count[len]);
+			}
+			//
+			for (int s = 0; s < n; s++) {
+				if (lengths[off + s] != 0) {
+					symbol[offsets[lengths[off + s]]++] = (short)s;
+				}
+			}
+			//
+			return left;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Size of the sliding window.
+	 * </p>
+	 */
+	private static final int WINDOW_SIZE = 32768;
+
+	/**
+	 * <p>
+	 * Maximum length of a code.
+	 * </p>
+	 */
+	private static final int MAX_BITS = 15;
+
+	/**
+	 * <p>
+	 * Base lengths of the length symbols.
+	 * </p>
+	 */
+	static final short[] LENGTH_BASE = {
+		3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+		59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+
+	/**
+	 * <p>
+	 * Extra bits of the length symbols.
+	 * </p>
+	 */
+	static final short[] LENGTH_EXTRA = {
+		0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+		4, 5, 5, 5, 5, 0};
+
+	/**
+	 * <p>
+	 * Base distances of the distance symbols.
+	 * </p>
+	 */
+	static final short[] DISTANCE_BASE = {
+		1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+		513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385,
+		24577};
+
+	/**
+	 * <p>
+	 * Extra bits of the distance symbols.
+	 * </p>
+	 */
+	static final short[] DISTANCE_EXTRA = {
+		0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+		10, 11, 11, 12, 12, 13, 13};
+
+	/**
+	 * <p>
+	 * Order of the code length code lengths.
+	 * </p>
+	 */
+	private static final short[] ORDER = {
+		16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+	/**
+	 * <p>
+	 * Fixed literal/length code.
+	 * </p>
+	 */
+	private static final Huffman FIXED_LENGTHS = new Huffman(288);
+
+	/**
+	 * <p>
+	 * Fixed distance code.
+	 * </p>
+	 */
+	private static final Huffman FIXED_DISTANCES = new Huffman(30);
+
+	static {
+		short[] lengths = new short[288];
+		//
+		for (int s = 0; s < lengths.length; s++) {
+			lengths[s] = (short)(s < 144 ? 8 : s < 256 ? 9 : s < 280 ? 7 : 8);
+		}
+		//
+		FIXED_LENGTHS.build(lengths, 0, 288);
+		//
+		for (int s = 0; s < 30; s++) {
+			lengths[s] = 5;
+		}
+		//
+		FIXED_DISTANCES.build(lengths, 0, 30);
+	}
+
+	/**
+	 * <p>
+	 * Compressed stream.
+	 * </p>
+	 */
+	private InputStream in;
+
+	/**
+	 * <p>
+	 * Format.
+	 * </p>
+	 */
+	private int format;
+
+	/**
+	 * <p>
+	 * Buffer of compressed bytes.
+	 * </p>
+	 */
+	private byte[] input = new byte[1024];
+
+	/**
+	 * <p>
+	 * Position of the next compressed byte in the buffer.
+	 * </p>
+	 */
+	private int inputPos;
+
+	/**
+	 * <p>
+	 * Number of compressed bytes in the buffer.
+	 * </p>
+	 */
+	private int inputLength;
+
+	/**
+	 * <p>
+	 * Bits not consumed yet, from the least significant one.
+	 * </p>
+	 */
+	private int bitBuffer;
+
+	/**
+	 * <p>
+	 * Number of bits not consumed yet.
+	 * </p>
+	 */
+	private int bitCount;
+
+	/**
+	 * <p>
+	 * Sliding window of decompressed bytes.
+	 * </p>
+	 */
+	private byte[] window = new byte[WINDOW_SIZE];
+
+	/**
+	 * <p>
+	 * Position of the next decompressed byte in the window.
+	 * </p>
+	 */
+	private int windowPos;
+
+	/**
+	 * <p>
+	 * Number of decompressed bytes not read yet.
+	 * </p>
+	 */
+	private int pending;
+
+	/**
+	 * <p>
+	 * Number of decompressed bytes.
+	 * </p>
+	 */
+	private long total;
+
+	/**
+	 * <p>
+	 * Started flag.
+	 * </p>
+	 */
+	private boolean started;
+
+	/**
+	 * <p>
+	 * Finished flag, set once the trailer is read.
+	 * </p>
+	 */
+	private boolean finished;
+
+	/**
+	 * <p>
+	 * Checked flag, set once the checksum is checked.
+	 * </p>
+	 */
+	private boolean checked;
+
+	/**
+	 * <p>
+	 * Whether the current block is the last one.
+	 * </p>
+	 */
+	private boolean lastBlock;
+
+	/**
+	 * <p>
+	 * Type of the current block. -1 means between blocks.
+	 * </p>
+	 */
+	private int blockType = -1;
+
+	/**
+	 * <p>
+	 * Number of bytes left in the current stored block.
+	 * </p>
+	 */
+	private int storedLength;
+
+	/**
+	 * <p>
+	 * Literal/length code of the current block.
+	 * </p>
+	 */
+	private Huffman lengthCode;
+
+	/**
+	 * <p>
+	 * Distance code of the current block.
+	 * </p>
+	 */
+	private Huffman distanceCode;
+
+	/**
+	 * <p>
+	 * Dynamic literal/length code.
+	 * </p>
+	 */
+	private Huffman dynamicLengths;
+
+	/**
+	 * <p>
+	 * Dynamic distance code.
+	 * </p>
+	 */
+	private Huffman dynamicDistances;
+
+	/**
+	 * <p>
+	 * Number of bytes left to copy from the window.
+	 * </p>
+	 */
+	private int copyLength;
+
+	/**
+	 * <p>
+	 * Distance of the bytes to copy from the window.
+	 * </p>
+	 */
+	private int copyDistance;
+
+	/**
+	 * <p>
+	 * CRC-32 checksum of the gzip format.
+	 * </p>
+	 */
+	private CRC32 crc;
+
+	/**
+	 * <p>
+	 * Adler-32 checksum of the zlib format. -1 means raw data.
+	 * </p>
+	 */
+	private long adler = 1;
+
+	/**
+	 * <p>
+	 * Checksum read from the trailer.
+	 * </p>
+	 */
+	private int expectedChecksum;
+
+	/**
+	 * <p>
+	 * Length read from the gzip trailer.
+	 * </p>
+	 */
+	private int expectedLength;
+
+	/**
+	 * <p>
+	 * Creates an InflaterInputStream.
+	 * </p>
+	 * @param in Compressed stream.
+	 * @param format Format.
+	 * @throws IllegalArgumentException Stream null or format invalid!
+	 * @see Format
+	 */
+	public InflaterInputStream(InputStream in, int format) {
+		if (in == null || format < Format.RAW || format > Format.GZIP) {
+			throw new IllegalArgumentException(
+				"Stream null or format invalid!");
+		}
+		//
+		this.in = in;
+		this.format = format;
+		//
+		if (format == Format.GZIP) {
+			crc = new CRC32();
+		} else if (format == Format.RAW) {
+			adler = -1;
+		}
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		//
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		//
+		if (pending == 0) {
+			if (!finished) {
+				inflate();
+			}
+			//
+			if (pending == 0) {
+				check();
+				//
+				return -1;
+			}
+		}
+		//
+		final int n = Math.min(len, pending);
+		final int start = (windowPos - pending) & (WINDOW_SIZE -1);
+		final int first = Math.min(n, WINDOW_SIZE - start);
+		//
+		System.arraycopy(window, start, b, off, first);
+		System.arraycopy(window, 0, b, off + first, n - first);
+		pending -= n;
+		//
+		if (crc != null) {
+			crc.update(b, off, n);
+		} else if (adler != -1) {
+			updateAdler(b, off, n);
+		}
+		//
+		return n;
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	public int available() {
+		return pending;
+	}
+
+	/**
+	 * @see java.io.InputStream#close()
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * <p>
+	 * Decompresses data into the window, up to its size or the end of the
+	 * data.
+	 * </p>
+	 * @throws IOException If any I/O error occurs or the data is invalid.
+	 */
+	private void inflate() throws IOException {
+		if (!started) {
+			started = true;
+			//
+			if (!readHeader()) {
+				finished = true;
+				checked = true;
+				//
+				return;
+			}
+		}
+		//
+		while (pending < WINDOW_SIZE && !finished) {
+			if (copyLength > 0) {
+				copy();
+			} else if (blockType == -1) {
+				if (lastBlock) {
+					readTrailer();
+					//
+					finished = true;
+				} else {
+					readBlockHeader();
+				}
+			} else if (blockType == 0) {
+				readStored();
+			} else {
+				int symbol = decode(lengthCode);
+				//
+				if (symbol < 256) {
+					put((byte)symbol);
+				} else if (symbol == 256) {
+					blockType = -1;
+				} else {
+					readMatch(symbol -257);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the header of the format, if any. An empty stream, e.g. the
+	 * body of a HEAD response, is accepted as empty data.
+	 * </p>
+	 * @return Data follows (true) or empty stream (false).
+	 * @throws IOException If any I/O error occurs or the header is invalid.
+	 */
+	private boolean readHeader() throws IOException {
+		if (inputPos == inputLength && !fill()) {
+			return false;
+		}
+		//
+		if (format == Format.ZLIB) {
+			int cmf = bits(8);
+			int flg = bits(8);
+			//
+			if ((cmf & 0x0f) != 8
+					|| ((cmf << 8) | flg) % 31 != 0
+					|| (flg & 0x20) != 0) {
+				bitBuffer = cmf | (flg << 8);
+				bitCount = 16;
+				adler = -1;
+			}
+		} else if (format == Format.GZIP) {
+			if (bits(8) != 0x1f || bits(8) != 0x8b || bits(8) != 8) {
+				throw new IOException("Invalid gzip header!");
+			}
+			//
+			int flags = bits(8);
+			//
+			skip(6);
+			//
+			if ((flags & 0x04) != 0) {
+				skip(bits(16));
+			}
+			//
+			if ((flags & 0x08) != 0) {
+				while (bits(8) != 0) {
+					// skips file name.
+				}
+			}
+			//
+			if ((flags & 0x10) != 0) {
+				while (bits(8) != 0) {
+					// skips comment.
+				}
+			}
+			//
+			if ((flags & 0x02) != 0) {
+				skip(2);
+			}
+		}
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Reads the trailer of the format, if any.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readTrailer() throws IOException {
+		bits(bitCount & 7);
+		//
+		if (format == Format.GZIP) {
+			expectedChecksum = bits(16) | (bits(16) << 16);
+			expectedLength = bits(16) | (bits(16) << 16);
+		} else if (adler != -1) {
+			expectedChecksum = (bits(8) << 24) | (bits(8) << 16);
+			expectedChecksum |= (bits(8) << 8) | bits(8);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checks the decompressed data against the checksum of the trailer.
+	 * </p>
+	 * @throws IOException If the checksum does not match.
+	 */
+	private void check() throws IOException {
+		if (checked) {
+			return;
+		}
+		//
+		checked = true;
+		//
+		if (format == Format.GZIP) {
+			if (crc.getValue() != expectedChecksum
+					|| (int)total != expectedLength) {
+				throw new IOException("Invalid gzip checksum!");
+			}
+		} else if (adler != -1) {
+			if ((int)adler != expectedChecksum) {
+				throw new IOException("Invalid zlib checksum!");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the header of a block and prepares its codes.
+	 * </p>
+	 * @throws IOException If any I/O error occurs or the block is invalid.
+	 */
+	private void readBlockHeader() throws IOException {
+		lastBlock = bits(1) == 1;
+		blockType = bits(2);
+		//
+		if (blockType == 0) {
+			bits(bitCount & 7);
+			//
+			storedLength = bits(16);
+			//
+			if (bits(16) != (~storedLength & 0xffff)) {
+				throw new IOException("Invalid stored block length!");
+			}
+		} else if (blockType == 1) {
+			lengthCode = FIXED_LENGTHS;
+			distanceCode = FIXED_DISTANCES;
+		} else if (blockType == 2) {
+			readDynamicCodes();
+		} else {
+			throw new IOException("Invalid block type!");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the dynamic codes of a block.
+	 * </p>
+	 * @throws IOException If any I/O error occurs or the codes are invalid.
+	 */
+	private void readDynamicCodes() throws IOException {
+		final int nlen = bits(5) +257;
+		final int ndist = bits(5) +1;
+		final int ncode = bits(4) +4;
+		//
+		if (nlen > 286 || ndist > 30) {
+			throw new IOException("Invalid code lengths!");
+		}
+		//
+		short[] lengths = new short[nlen + ndist];
+		//
+		for (int i = 0; i < ncode; i++) {
+			lengths[ORDER[i]] = (short)bits(3);
+		}
+		//
+		Huffman code = new Huffman(19);
+		//
+		if (code.build(lengths, 0, 19) != 0) {
+			throw new IOException("Invalid code lengths!");
+		}
+		//
+		for (int i = 0; i < 19; i++) {
+			lengths[i] = 0;
+		}
+		//
+		int symbol;
+		int length;
+		int repeat;
+		//
+		for (int i = 0; i < nlen + ndist;) {
+			symbol = decode(code);
+			//
+			if (symbol < 16) {
+				lengths[i++] = (short)symbol;
+			} else {
+				length = 0;
+				//
+				if (symbol == 16) {
+					if (i == 0) {
+						throw new IOException("Invalid code lengths!");
+					}
+					//
+					length = lengths[i -1];
+					repeat = 3 + bits(2);
+				} else if (symbol == 17) {
+					repeat = 3 + bits(3);
+				} else {
+					repeat = 11 + bits(7);
+				}
+				//
+				if (i + repeat > nlen + ndist) {
+					throw new IOException("Invalid code lengths!");
+				}
+				//
+				while (repeat-- > 0) {
+					lengths[i++] = (short)length;
+				}
+			}
+		}
+		//
+		if (lengths[256] == 0) {
+			throw new IOException("Invalid code lengths!");
+		}
+		//
+		if (dynamicLengths == null) {
+			dynamicLengths = new Huffman(286);
+			dynamicDistances = new Huffman(30);
+		}
+		//
+		int left = dynamicLengths.build(lengths, 0, nlen);
+		//
+		if (left < 0 || (left > 0 && nlen - dynamicLengths.count[0] != 1)) {
+			throw new IOException("Invalid literal/length code!");
+		}
+		//
+		left = dynamicDistances.build(lengths, nlen, ndist);
+		//
+		if (left < 0
+				|| (left > 0 && ndist - dynamicDistances.count[0] != 1)) {
+			throw new IOException("Invalid distance code!");
+		}
+		//
+		lengthCode = dynamicLengths;
+		distanceCode = dynamicDistances;
+	}
+
+	/**
+	 * <p>
+	 * Copies bytes of a stored block into the window.
+	 * </p>
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void readStored() throws IOException {
+		if (storedLength == 0) {
+			blockType = -1;
+			//
+			return;
+		}
+		//
+		if (bitCount >= 8) {
+			put((byte)bits(8));
+			storedLength--;
+			//
+			return;
+		}
+		//
+		if (inputPos == inputLength && !fill()) {
+			throw new IOException("Unexpected end of compressed data!");
+		}
+		//
+		int n = Math.min(storedLength, inputLength - inputPos);
+		n = Math.min(n, WINDOW_SIZE - pending);
+		n = Math.min(n, WINDOW_SIZE - windowPos);
+		//
+		System.arraycopy(input, inputPos, window, windowPos, n);
+		inputPos += n;
+		windowPos = (windowPos + n) & (WINDOW_SIZE -1);
+		pending += n;
+		total += n;
+		storedLength -= n;
+	}
+
+	/**
+	 * <p>
+	 * Reads the length and distance of a match, to be copied.
+	 * </p>
+	 * @param symbol Length symbol, from zero.
+	 * @throws IOException If any I/O error occurs or the match is invalid.
+	 */
+	private void readMatch(int symbol) throws IOException {
+		if (symbol >= LENGTH_BASE.length) {
+			throw new IOException("Invalid length symbol!");
+		}
+		//
+		final int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+		//
+		symbol = decode(distanceCode);
+		//
+		if (symbol >= DISTANCE_BASE.length) {
+			throw new IOException("Invalid distance symbol!");
+		}
+		//
+		copyDistance = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+		//
+		if (copyDistance > total) {
+			throw new IOException("Invalid distance!");
+		}
+		//
+		copyLength = length;
+	}
+
+	/**
+	 * <p>
+	 * Copies the bytes of the current match from the window, as many as
+	 * fit.
+	 * </p>
+	 */
+	private void copy() {
+		final int mask = WINDOW_SIZE -1;
+		int from = (windowPos - copyDistance) & mask;
+		//
+		while (copyLength > 0 && pending < WINDOW_SIZE) {
+			window[windowPos] = window[from];
+			windowPos = (windowPos +1) & mask;
+			from = (from +1) & mask;
+			pending++;
+			total++;
+			copyLength--;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Puts a decompressed byte into the window.
+	 * </p>
+	 * @param b Byte.
+	 */
+	private void put(byte b) {
+		window[windowPos] = b;
+		windowPos = (windowPos +1) & (WINDOW_SIZE -1);
+		pending++;
+		total++;
+	}
+
+	/**
+	 * <p>
+	 * Decodes a symbol with a given code.
+	 * </p>
+	 * @param h Code.
+	 * @return Symbol.
+	 * @throws IOException If any I/O error occurs or the code is invalid.
+	 */
+	private int decode(Huffman h) throws IOException {
+		int code = 0;
+		int first = 0;
+		int index = 0;
+		int count;
+		//
+		for (int len = 1; len <= MAX_BITS; len++) {
+			if (bitCount == 0) {
+				bitBuffer = nextByte();
+				bitCount = 8;
+			}
+			//
+			code |= bitBuffer & 1;
+			bitBuffer >>>= 1;
+			bitCount--;
+			//
+			count = h.count[len];
+			//
+			if (code - count < first) {
+				return h.symbol[index + (code - first)];
+			}
+			//
+			index += count;
+			first += count;
+			first <<= 1;
+			code <<= 1;
+		}
+		//
+		throw new IOException("Invalid code!");
+	}
+
+	/**
+	 * <p>
+	 * Reads a given number of bits, from the least significant one.
+	 * </p>
+	 * @param n Number of bits, up to 16.
+	 * @return Bits.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private int bits(int n) throws IOException {
+		while (bitCount < n) {
+			bitBuffer |= nextByte() << bitCount;
+			bitCount += 8;
+		}
+		//
+		final int value = bitBuffer & ((1 << n) -1);
+		//
+		bitBuffer >>>= n;
+		bitCount -= n;
+		//
+		return value;
+	}
+
+	/**
+	 * <p>
+	 * Skips a given number of bytes.
+	 * </p>
+	 * @param n Number of bytes.
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private void skip(int n) throws IOException {
+		while (n-- > 0) {
+			bits(8);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the next compressed byte.
+	 * </p>
+	 * @return Byte.
+	 * @throws IOException If any I/O error occurs or the data ended.
+	 */
+	private int nextByte() throws IOException {
+		if (inputPos == inputLength && !fill()) {
+			throw new IOException("Unexpected end of compressed data!");
+		}
+		//
+		return input[inputPos++] & 0xff;
+	}
+
+	/**
+	 * <p>
+	 * Fills the buffer of compressed bytes.
+	 * </p>
+	 * @return Filled (true) or end of stream (false).
+	 * @throws IOException If any I/O error occurs.
+	 */
+	private boolean fill() throws IOException {
+		final int n = in.read(input, 0, input.length);
+		//
+		if (n <= 0) {
+			return false;
+		}
+		//
+		inputPos = 0;
+		inputLength = n;
+		//
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Updates the Adler-32 checksum with given bytes.
+	 * </p>
+	 * @param b Bytes.
+	 * @param off Offset.
+	 * @param len Length.
+	 */
+	private void updateAdler(byte[] b, int off, int len) {
+		long s1 = adler & 0xffff;
+		long s2 = adler >>> 16;
+		int n;
+		//
+		while (len > 0) {
+			n = Math.min(len, 5552);
+			len -= n;
+			//
+			while (n-- > 0) {
+				s1 += b[off++] & 0xff;
+				s2 += s1;
+			}
+			//
+			s1 %= 65521;
+			s2 %= 65521;
+		}
+		//
+		adler = (s2 << 16) | s1;
+	}
+}
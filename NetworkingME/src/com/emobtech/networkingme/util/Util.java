@@ -41,7 +41,7 @@ import java.util.Vector;
  * This class implements a series of utility methods.
  * </p>
  * @author Ernandes Jr. (ernandes@emobtech.com)
- * @version 1.1
+ * @version 1.2
  * @since 1.0
  */
 public final class Util {
@@ -130,6 +130,58 @@ public final class Util {
 		return out.toByteArray();
 	}
 	
+	/**
+	 * <p>
+	 * Reads all bytes from a given stream, whose expected length is known.
+	 * An array of that length is allocated once and filled straight from the
+	 * stream. In case the stream ends before, the bytes read are returned.
+	 * In case it goes on after, the rest is read as for an unknown length.
+	 * </p>
+	 * @param in Stream.
+	 * @param length Expected length. -1 means unknown.
+	 * @return Bytes.
+	 * @throws IOException If any I/O error occurs.
+	 * @see Util#readBytes(InputStream)
+	 */
+	public static byte[] readBytes(InputStream in, long length)
+		throws IOException {
+		if (in == null) {
+			return new byte[0];
+		}
+		//
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			return readBytes(in);
+		}
+		//
+		byte[] data = new byte[(int)length];
+		int count = 0;
+		//
+		for (int n; count < data.length; count += n) {
+			n = in.read(data, count, data.length - count);
+			//
+			if (n == -1) {
+				byte[] read = new byte[count];
+				System.arraycopy(data, 0, read, 0, count);
+				//
+				return read;
+			}
+		}
+		//
+		int b = in.read();
+		//
+		if (b == -1) {
+			return data;
+		}
+		//
+		ByteArrayOutputStream out =
+			new ByteArrayOutputStream(data.length + 1024);
+		out.write(data, 0, data.length);
+		out.write(b);
+		copyBytes(in, out, -1);
+		//
+		return out.toByteArray();
+	}
+	
 	/**
 	 * <p>
 	 * Writes a given bytes to a stream.
@@ -140,12 +192,69 @@ public final class Util {
 	 */
 	public static void writeBytes(byte[] data, OutputStream out)
 		throws IOException {
-		ByteArrayInputStream in = new ByteArrayInputStream(data);
-		byte[] buffer = new byte[1024];
-		//
-		for (int n; (n = in.read(buffer)) > 0;) {
+		for (int off = 0; off < data.length; off += 1024) {
+			out.write(data, off, Math.min(1024, data.length - off));
+		}
+	}
+	
+	/**
+	 * <p>
+	 * Copies the bytes of a given stream to another one, through a small
+	 * buffer.
+	 * </p>
+	 * @param in Input stream.
+	 * @param out Output stream.
+	 * @param length Number of bytes to copy. -1 means up to the end of the
+	 *        input stream.
+	 * @return Number of bytes copied.
+	 * @throws IOException If any I/O error occurs or the input stream ends
+	 *         before the given length.
+	 */
+	public static long copyBytes(InputStream in, OutputStream out,
+		long length) throws IOException {
+		return copyBytes(in, out, length, new byte[1024]);
+	}
+	
+	/**
+	 * <p>
+	 * Copies the bytes of a given stream to another one, through a given
+	 * buffer, which can be reused across copies.
+	 * </p>
+	 * @param in Input stream.
+	 * @param out Output stream.
+	 * @param length Number of bytes to copy. -1 means up to the end of the
+	 *        input stream.
+	 * @param buffer Buffer.
+	 * @return Number of bytes copied.
+	 * @throws IOException If any I/O error occurs or the input stream ends
+	 *         before the given length.
+	 */
+	public static long copyBytes(InputStream in, OutputStream out,
+		long length, byte[] buffer) throws IOException {
+		long count = 0;
+		//
+		while (length < 0 || count < length) {
+			int n =
+				in.read(
+					buffer,
+					0,
+					length < 0
+						? buffer.length
+						: (int)Math.min(buffer.length, length - count));
+			//
+			if (n == -1) {
+				if (length < 0) {
+					break;
+				}
+				//
+				throw new IOException("Unexpected end of stream!");
+			}
+			//
 			out.write(buffer, 0, n);
+			count += n;
 		}
+		//
+		return count;
 	}
 	
 	/**